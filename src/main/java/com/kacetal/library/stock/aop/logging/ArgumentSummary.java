@@ -0,0 +1,63 @@
+package com.kacetal.library.stock.aop.logging;
+
+/**
+ * Size-capped, lazily rendered view of call arguments or of a call result.
+ * <p>
+ * Nothing is rendered until the logging framework calls {@link #toString()}, that is only
+ * when the message is actually written.
+ */
+final class ArgumentSummary {
+
+    private static final String ELLIPSIS = "...";
+
+    private final Object value;
+
+    private final boolean arguments;
+
+    private final int maxLength;
+
+    private ArgumentSummary(Object value, boolean arguments, int maxLength) {
+        this.value = value;
+        this.arguments = arguments;
+        this.maxLength = maxLength;
+    }
+
+    static ArgumentSummary ofArguments(Object[] args, int maxLength) {
+        return new ArgumentSummary(args, true, maxLength);
+    }
+
+    static ArgumentSummary ofResult(Object result, int maxLength) {
+        return new ArgumentSummary(result, false, maxLength);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        if (!arguments) {
+            append(builder, value);
+        } else if (value == null) {
+            builder.append("null");
+        } else {
+            Object[] args = (Object[]) value;
+            builder.append('[');
+            for (int i = 0; i < args.length && builder.length() <= maxLength; i++) {
+                if (i > 0) {
+                    builder.append(", ");
+                }
+                append(builder, args[i]);
+            }
+            builder.append(']');
+        }
+        if (builder.length() > maxLength) {
+            builder.setLength(maxLength);
+            builder.append(ELLIPSIS);
+        }
+        return builder.toString();
+    }
+
+    private void append(StringBuilder builder, Object object) {
+        String rendered = String.valueOf(object);
+        int remaining = maxLength - builder.length() + 1;
+        builder.append(rendered, 0, Math.min(rendered.length(), Math.max(remaining, 0)));
+    }
+}
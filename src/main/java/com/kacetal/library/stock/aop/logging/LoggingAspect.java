@@ -1,5 +1,7 @@
 package com.kacetal.library.stock.aop.logging;
 
+import com.kacetal.library.stock.config.ApplicationProperties;
+import com.kacetal.library.stock.repository.search.InvalidSearchException;
 import io.github.jhipster.config.JHipsterConstants;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
@@ -7,17 +9,34 @@ import org.aspectj.lang.annotation.AfterThrowing;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.Profiles;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.zalando.problem.Problem;
+import org.zalando.problem.StatusType;
 
-import java.util.Arrays;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Aspect for logging execution of service and repository Spring components.
  * <p>
- * By default, it only runs with the "dev" profile.
+ * It is registered when {@code application.logging-aspect.enabled} is set, which is the case with the
+ * "dev" and "prod" profiles. What gets logged follows the level of this class logger, which can be
+ * changed at runtime through the {@code loggers} management endpoint:
+ * <ul>
+ * <li>{@code TRACE}: every call is logged;</li>
+ * <li>{@code DEBUG}: calls are sampled with the configured per-method rates;</li>
+ * <li>above {@code DEBUG}: calls are not logged and the advice only delegates.</li>
+ * </ul>
+ * Exceptions are logged at {@code ERROR} whatever the level, but for those answered with a client error (4xx),
+ * which are expected and only logged at {@code DEBUG}.
+ * Arguments and results are rendered lazily and capped to {@code application.logging-aspect.max-argument-length}.
  */
 @Aspect
 public class LoggingAspect {
@@ -26,8 +45,13 @@ public class LoggingAspect {
 
     private final Environment env;
 
-    public LoggingAspect(Environment env) {
+    private final ApplicationProperties.LoggingAspect properties;
+
+    private final Map<Method, Double> sampleRates = new ConcurrentHashMap<>();
+
+    public LoggingAspect(Environment env, ApplicationProperties applicationProperties) {
         this.env = env;
+        this.properties = applicationProperties.getLoggingAspect();
     }
 
     /**
@@ -58,7 +82,10 @@ public class LoggingAspect {
      */
     @AfterThrowing(pointcut = "applicationPackagePointcut() && springBeanPointcut()", throwing = "e")
     public void logAfterThrowing(JoinPoint joinPoint, Throwable e) {
-        if (env.acceptsProfiles(Profiles.of(JHipsterConstants.SPRING_PROFILE_DEVELOPMENT))) {
+        if (isClientError(e)) {
+            log.debug("Exception in {}.{}() answered with a client error: {}", joinPoint.getSignature().getDeclaringTypeName(),
+                joinPoint.getSignature().getName(), e.toString());
+        } else if (env.acceptsProfiles(Profiles.of(JHipsterConstants.SPRING_PROFILE_DEVELOPMENT))) {
             log.error("Exception in {}.{}() with cause = '{}' and exception = '{}'", joinPoint.getSignature().getDeclaringTypeName(),
                 joinPoint.getSignature().getName(), e.getCause() != null ? e.getCause() : "NULL", e.getMessage(), e);
 
@@ -68,6 +95,18 @@ public class LoggingAspect {
         }
     }
 
+    /**
+     * @return whether the exception is answered with a client error (4xx) by the resources or the
+     * {@link com.kacetal.library.stock.web.rest.errors.ExceptionTranslator}.
+     */
+    private static boolean isClientError(Throwable e) {
+        if (e instanceof Problem) {
+            final StatusType status = ((Problem) e).getStatus();
+            return status != null && status.getStatusCode() >= 400 && status.getStatusCode() < 500;
+        }
+        return e instanceof IllegalArgumentException || e instanceof InvalidSearchException || e instanceof ConcurrencyFailureException;
+    }
+
     /**
      * Advice that logs when a method is entered and exited.
      *
@@ -77,22 +116,38 @@ public class LoggingAspect {
      */
     @Around("applicationPackagePointcut() && springBeanPointcut()")
     public Object logAround(ProceedingJoinPoint joinPoint) throws Throwable {
-        if (log.isDebugEnabled()) {
+        final boolean traced = log.isDebugEnabled()
+            && (log.isTraceEnabled() || isSampled(((MethodSignature) joinPoint.getSignature()).getMethod()));
+        final int maxLength = properties.getMaxArgumentLength();
+        if (traced) {
             log.debug("Enter: {}.{}() with argument[s] = {}", joinPoint.getSignature().getDeclaringTypeName(),
-                joinPoint.getSignature().getName(), Arrays.toString(joinPoint.getArgs()));
+                joinPoint.getSignature().getName(), ArgumentSummary.ofArguments(joinPoint.getArgs(), maxLength));
         }
         try {
             Object result = joinPoint.proceed();
-            if (log.isDebugEnabled()) {
+            if (traced) {
                 log.debug("Exit: {}.{}() with result = {}", joinPoint.getSignature().getDeclaringTypeName(),
-                    joinPoint.getSignature().getName(), result);
+                    joinPoint.getSignature().getName(), ArgumentSummary.ofResult(result, maxLength));
             }
             return result;
         } catch (IllegalArgumentException e) {
-            log.error("Illegal argument: {} in {}.{}()", Arrays.toString(joinPoint.getArgs()),
+            log.error("Illegal argument: {} in {}.{}()", ArgumentSummary.ofArguments(joinPoint.getArgs(), maxLength),
                 joinPoint.getSignature().getDeclaringTypeName(), joinPoint.getSignature().getName());
 
             throw e;
         }
     }
+
+    /**
+     * Decide whether a call to a method is traced, with the sample rate of the method.
+     */
+    boolean isSampled(Method method) {
+        final double rate = sampleRates.computeIfAbsent(method, this::sampleRate);
+        return rate >= 1.0 || (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    private double sampleRate(Method method) {
+        final String key = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        return properties.getSampleRates().getOrDefault(key, properties.getSampleRate());
+    }
 }
@@ -0,0 +1,142 @@
+package com.kacetal.library.stock.aop.timing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aspect timing each call of the services and the Spring Data (JPA and Elasticsearch) repositories.
+ * <p>
+ * Calls are recorded in the {@value #METRIC_NAME} timer, tagged with the layer (the first package under the
+ * application one, e.g. "service" or "repository"), the class, the method and the exception thrown, if any.
+ * Percentiles and histograms follow the {@code management.metrics.distribution} configuration, like every other
+ * meter exported through the {@code prometheus} endpoint.
+ */
+@Aspect
+public class TimingAspect {
+
+    public static final String METRIC_NAME = "application.method.calls";
+
+    private static final String APPLICATION_PACKAGE = "com.kacetal.library.stock.";
+
+    private static final String NO_EXCEPTION = "none";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Class<?>, Map<Method, MethodTimers>> timers = new ConcurrentHashMap<>();
+
+    public TimingAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Pointcut that matches all Spring beans in the application's service package.
+     */
+    @Pointcut("within(com.kacetal.library.stock.service..*) && within(@org.springframework.stereotype.Service *)")
+    public void servicePointcut() {
+        // Method is empty as this is just a Pointcut, the implementations are in the advices.
+    }
+
+    /**
+     * Pointcut that matches all Spring Data repositories, whatever the store.
+     */
+    @Pointcut("execution(public * org.springframework.data.repository.Repository+.*(..))")
+    public void repositoryPointcut() {
+        // Method is empty as this is just a Pointcut, the implementations are in the advices.
+    }
+
+    /**
+     * Advice that times a call.
+     *
+     * @param joinPoint join point for advice.
+     * @return result.
+     * @throws Throwable the exception thrown by the call.
+     */
+    @Around("servicePointcut() || repositoryPointcut()")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        final long start = System.nanoTime();
+        try {
+            Object result = joinPoint.proceed();
+            timers(joinPoint).success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable e) {
+            timers(joinPoint).failure(e.getClass()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private MethodTimers timers(ProceedingJoinPoint joinPoint) {
+        final Class<?> type = joinPoint.getThis().getClass();
+        final Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        return timers.computeIfAbsent(type, key -> new ConcurrentHashMap<>())
+            .computeIfAbsent(method, key -> new MethodTimers(applicationType(type), key));
+    }
+
+    /**
+     * The layer of a class: the first package under the application one, or the whole package of the
+     * classes outside of the application.
+     */
+    static String layer(Class<?> type) {
+        if (!type.getName().startsWith(APPLICATION_PACKAGE)) {
+            return type.getPackageName();
+        }
+        final String packageName = type.getPackageName().substring(APPLICATION_PACKAGE.length());
+        final int dot = packageName.indexOf('.');
+        return dot < 0 ? packageName : packageName.substring(0, dot);
+    }
+
+    /**
+     * Find the application class or interface behind a proxy: Spring Data repositories are JDK proxies of
+     * the repository interface, services are CGLIB subclasses of their implementation.
+     */
+    private static Class<?> applicationType(Class<?> proxyType) {
+        final Class<?> userType = ClassUtils.getUserClass(proxyType);
+        if (Proxy.isProxyClass(userType)) {
+            for (Class<?> type : ClassUtils.getAllInterfacesForClassAsSet(userType)) {
+                if (type.getName().startsWith(APPLICATION_PACKAGE)) {
+                    return type;
+                }
+            }
+        }
+        return userType.getName().startsWith(APPLICATION_PACKAGE) ? userType : proxyType;
+    }
+
+    /**
+     * The timers of a method, registered once: the successful calls, and the failed ones by exception.
+     */
+    private final class MethodTimers {
+
+        private final Timer success;
+
+        private final Map<Class<?>, Timer> failures = new ConcurrentHashMap<>();
+
+        MethodTimers(Class<?> type, Method method) {
+            this.success = Timer.builder(METRIC_NAME)
+                .description("Time spent in service and repository methods")
+                .tag("layer", layer(type))
+                .tag("class", type.getSimpleName())
+                .tag("method", method.getName())
+                .tag("exception", NO_EXCEPTION)
+                .register(meterRegistry);
+        }
+
+        Timer failure(Class<?> exception) {
+            return failures.computeIfAbsent(exception, key -> Timer.builder(METRIC_NAME)
+                .description(success.getId().getDescription())
+                .tags(success.getId().getTags())
+                .tag("exception", key.getSimpleName())
+                .register(meterRegistry));
+        }
+    }
+}
@@ -1,6 +1,15 @@
 package com.kacetal.library.stock.config;
 
+import lombok.Getter;
+import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Properties specific to Kacetal Library Stock.
@@ -8,7 +17,297 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  * Properties are configured in the {@code application.yml} file.
  * See {@link io.github.jhipster.config.JHipsterProperties} for a good example.
  */
+@Getter
+@Setter
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
 
+    private final LoggingAspect loggingAspect = new LoggingAspect();
+
+    private final TimingAspect timingAspect = new TimingAspect();
+
+    private final Jfr jfr = new Jfr();
+
+    private final Datasource datasource = new Datasource();
+
+    private final SearchCache searchCache = new SearchCache();
+
+    private final Suggest suggest = new Suggest();
+
+    private final Stats stats = new Stats();
+
+    private final Reconciler reconciler = new Reconciler();
+
+    private final Audit audit = new Audit();
+
+    @Getter
+    @Setter
+    public static class LoggingAspect {
+
+        /**
+         * Register the {@link com.kacetal.library.stock.aop.logging.LoggingAspect}.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Share of calls traced when the aspect logger is at DEBUG, between 0 and 1.
+         */
+        private double sampleRate = 1.0;
+
+        /**
+         * Sample rates overriding {@code sampleRate}, keyed by {@code SimpleClassName.methodName}.
+         */
+        private Map<String, Double> sampleRates = new HashMap<>();
+
+        /**
+         * Maximum number of characters rendered for the arguments or the result of a call.
+         */
+        private int maxArgumentLength = 512;
+    }
+
+    @Getter
+    @Setter
+    public static class TimingAspect {
+
+        /**
+         * Register the {@link com.kacetal.library.stock.aop.timing.TimingAspect}.
+         */
+        private boolean enabled = true;
+    }
+
+    @Getter
+    @Setter
+    public static class Jfr {
+
+        /**
+         * Flight Recorder settings used when none is given: "default" or "profile".
+         */
+        private String settings = "profile";
+
+        /**
+         * Maximum age of the data kept by the recording.
+         */
+        private Duration maxAge = Duration.ofMinutes(10);
+
+        /**
+         * Maximum size of the data kept by the recording.
+         */
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+
+        /**
+         * Duration after which the recording stops by itself.
+         */
+        private Duration duration = Duration.ofHours(1);
+    }
+
+    @Getter
+    @Setter
+    public static class Datasource {
+
+        /**
+         * Replace the auto-configured data source by the routing one.
+         */
+        private boolean routingEnabled = false;
+
+        /**
+         * Read replicas receiving the read-only transactions.
+         */
+        private List<Replica> replicas = new ArrayList<>();
+
+        /**
+         * Interval between two health checks of the replicas.
+         */
+        private Duration healthCheckInterval = Duration.ofSeconds(5);
+
+        /**
+         * How long a client reads from the primary after a mutation; unset to disable.
+         */
+        private Duration readYourWritesWindow;
+
+        /**
+         * Pool used by {@link com.kacetal.library.stock.config.datasource.BatchWorkload} methods.
+         */
+        private final Pool batchPool = new Pool();
+    }
+
+    @Getter
+    @Setter
+    public static class Pool {
+
+        private boolean enabled = false;
+
+        private int maximumPoolSize = 4;
+
+        /**
+         * Maximum time to wait for a connection of this pool.
+         */
+        private Duration connectionTimeout = Duration.ofSeconds(60);
+    }
+
+    @Getter
+    @Setter
+    public static class Replica {
+
+        private String url;
+
+        private String username;
+
+        private String password;
+
+        private int maximumPoolSize = 10;
+
+        /**
+         * Maximum time to wait for a connection of this replica before falling back to the primary.
+         */
+        private Duration connectionTimeout = Duration.ofSeconds(1);
+    }
+
+    @Getter
+    @Setter
+    public static class SearchCache {
+
+        /**
+         * Cache the ids of the search results, and the stocks they are hydrated with.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Maximum number of cached result pages.
+         */
+        private long maximumSize = 10_000;
+
+        /**
+         * How long a result page is kept; it bounds the staleness seen from the other instances.
+         */
+        private Duration timeToLive = Duration.ofSeconds(30);
+
+        /**
+         * Maximum number of cached stocks.
+         */
+        private long stockMaximumSize = 10_000;
+
+        /**
+         * How long a stock is kept.
+         */
+        private Duration stockTimeToLive = Duration.ofSeconds(10);
+    }
+
+    @Getter
+    @Setter
+    public static class Suggest {
+
+        /**
+         * Interval between two rebuilds of the index of the stock names from the database, which bounds how
+         * long a name written on another instance is not suggested.
+         */
+        private Duration rebuildInterval = Duration.ofMinutes(10);
+    }
+
+    @Getter
+    @Setter
+    public static class Stats {
+
+        /**
+         * Interval between two reconciliations of the counts of stocks with the database.
+         */
+        private Duration reconcileInterval = Duration.ofMinutes(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Reconciler {
+
+        /**
+         * When to reconcile the stock index with the database; {@code -} never runs it.
+         */
+        private String cron = "-";
+
+        /**
+         * Number of ids of the ranges first compared.
+         */
+        private long rangeSize = 100_000;
+
+        /**
+         * Number of ids under which a mismatched range is compared stock by stock instead of split; at most
+         * the {@code index.max_result_window} of Elasticsearch.
+         */
+        private long leafSize = 1_000;
+
+        /**
+         * Number of parts a mismatched range is split into.
+         */
+        private int fanOut = 10;
+
+        /**
+         * Number of ranges compared in parallel.
+         */
+        private int parallelism = 4;
+
+        /**
+         * Maximum number of range checksums per second, on each store; 0 for no limit.
+         */
+        private int maxChecksumsPerSecond = 20;
+    }
+
+    @Getter
+    @Setter
+    public static class Audit {
+
+        /**
+         * Maximum number of audit events waiting to be written, rounded up to a power of two.
+         */
+        private int capacity = 8192;
+
+        /**
+         * Maximum number of audit events written in one JDBC batch.
+         */
+        private int batchSize = 256;
+
+        /**
+         * Maximum time an audit event waits before being written, when there are fewer than a batch.
+         */
+        private Duration flushInterval = Duration.ofMillis(500);
+
+        /**
+         * What to do with an audit event when too many are waiting.
+         */
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+        /**
+         * How long the {@code block} policy waits for room before dropping the event.
+         */
+        private Duration blockTimeout = Duration.ofMillis(50);
+
+        /**
+         * Cron of the retention job, which creates the partitions of the next days and removes the events
+         * older than the {@code jhipster.audit-events.retention-period}; "-" to disable it.
+         */
+        private String retentionCron = "0 30 0 * * *";
+
+        /**
+         * Number of days after the current one whose partitions are created ahead.
+         */
+        private int partitionsAhead = 7;
+
+        /**
+         * Export the events to a compressed NDJSON file per day before removing them.
+         */
+        private boolean archive = false;
+
+        /**
+         * Directory of the exported events.
+         */
+        private String archiveDirectory = "archive/audit";
+
+        public enum OverflowPolicy {
+            /**
+             * Drop the event, counted in the {@code audit.events.dropped} metric.
+             */
+            DROP,
+            /**
+             * Slow the producer down until there is room, up to the {@code blockTimeout}, then drop the event.
+             */
+            BLOCK
+        }
+    }
 }
@@ -0,0 +1,132 @@
+package com.kacetal.library.stock.config;
+
+import com.kacetal.library.stock.config.datasource.ReadYourWritesFilter;
+import com.kacetal.library.stock.config.datasource.ReplicaRoutingDataSource;
+import com.kacetal.library.stock.config.datasource.WorkloadRoutingAspect;
+import com.kacetal.library.stock.config.datasource.WorkloadRoutingDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replace the auto-configured {@link DataSource} by one routing read-only transactions to the replicas
+ * configured in {@code application.datasource.replicas}, and
+ * {@link com.kacetal.library.stock.config.datasource.BatchWorkload batch work} to its own pool when
+ * {@code application.datasource.batch-pool.enabled} is set.
+ * <p>
+ * The interactive pool is the primary one, configured with {@code spring.datasource.hikari}.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "application.datasource", name = "routing-enabled", havingValue = "true")
+public class DataSourceRoutingConfiguration {
+
+    /**
+     * Prefix of the names of the replica pools, followed by their index.
+     */
+    static final String REPLICA_POOL_NAME = "HikariReplica-";
+
+    static final String BATCH_POOL_NAME = "HikariBatch";
+
+    private final Logger log = LoggerFactory.getLogger(DataSourceRoutingConfiguration.class);
+
+    private final ApplicationProperties.Datasource properties;
+
+    public DataSourceRoutingConfiguration(ApplicationProperties applicationProperties) {
+        this.properties = applicationProperties.getDatasource();
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(@Qualifier("primaryDataSource") HikariDataSource primaryDataSource,
+                                                             ObjectProvider<MeterRegistry> meterRegistry) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        List<ApplicationProperties.Replica> replicaProperties = properties.getReplicas();
+        for (int i = 0; i < replicaProperties.size(); i++) {
+            ApplicationProperties.Replica replica = replicaProperties.get(i);
+            HikariConfig config = new HikariConfig();
+            config.setPoolName(REPLICA_POOL_NAME + i);
+            config.setJdbcUrl(replica.getUrl());
+            config.setUsername(replica.getUsername());
+            config.setPassword(replica.getPassword());
+            config.setMaximumPoolSize(replica.getMaximumPoolSize());
+            // Fail over to the primary quickly when the replica is down
+            config.setConnectionTimeout(replica.getConnectionTimeout().toMillis());
+            config.setValidationTimeout(Math.min(replica.getConnectionTimeout().toMillis(), config.getValidationTimeout()));
+            config.setAutoCommit(primaryDataSource.isAutoCommit());
+            config.setReadOnly(true);
+            // Don't fail the startup when a replica is down, the health check will bring it back
+            config.setInitializationFailTimeout(-1);
+            meterRegistry.ifAvailable(registry -> config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+            replicas.put(config.getPoolName(), new HikariDataSource(config));
+        }
+        log.debug("Routing read-only transactions to {} replica(s)", replicas.size());
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, properties.getHealthCheckInterval());
+    }
+
+    /**
+     * The batch pool, started on first use. It is a bean, so that its metrics are bound like the primary ones.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "application.datasource.batch-pool", name = "enabled", havingValue = "true")
+    public HikariDataSource batchDataSource(@Qualifier("primaryDataSource") HikariDataSource primaryDataSource) {
+        ApplicationProperties.Pool batchPool = properties.getBatchPool();
+        HikariDataSource batchDataSource = new HikariDataSource();
+        primaryDataSource.copyStateTo(batchDataSource);
+        batchDataSource.setPoolName(BATCH_POOL_NAME);
+        batchDataSource.setMaximumPoolSize(batchPool.getMaximumPoolSize());
+        batchDataSource.setMinimumIdle(0);
+        batchDataSource.setConnectionTimeout(batchPool.getConnectionTimeout().toMillis());
+        batchDataSource.setMetricRegistry(null);
+        batchDataSource.setMetricsTrackerFactory(null);
+        log.debug("Routing batch work to a pool of {} connection(s)", batchPool.getMaximumPoolSize());
+        return batchDataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource,
+                                 @Qualifier("batchDataSource") ObjectProvider<HikariDataSource> batchDataSource) {
+        DataSource batch = batchDataSource.getIfAvailable();
+        if (batch == null) {
+            return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+        }
+        return new LazyConnectionDataSourceProxy(new WorkloadRoutingDataSource(replicaRoutingDataSource, batch));
+    }
+
+    @Bean
+    public WorkloadRoutingAspect workloadRoutingAspect() {
+        return new WorkloadRoutingAspect();
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "application.datasource", name = "read-your-writes-window")
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter() {
+        FilterRegistrationBean<ReadYourWritesFilter> registration =
+            new FilterRegistrationBean<>(new ReadYourWritesFilter(properties.getReadYourWritesWindow()));
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+}
@@ -11,6 +11,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.BiConsumer;
 
 @Component
 public class AuditEventConverter {
@@ -72,19 +73,30 @@ public class AuditEventConverter {
      */
     public Map<String, String> convertDataToStrings(Map<String, Object> data) {
         Map<String, String> results = new HashMap<>();
+        forEachDataString(data, results::put);
+        return results;
+    }
 
+    /**
+     * Internal conversion, without copying the data: each name and value saved by
+     * {@link #convertDataToStrings(Map)} is given to the consumer instead. A name may be given more than once,
+     * the last value being the one saved.
+     *
+     * @param data     the data to convert.
+     * @param consumer the consumer of the names and values.
+     */
+    public void forEachDataString(Map<String, Object> data, BiConsumer<String, String> consumer) {
         if (data != null) {
             for (Map.Entry<String, Object> entry : data.entrySet()) {
                 // Extract the data that will be saved.
                 if (entry.getValue() instanceof WebAuthenticationDetails) {
                     WebAuthenticationDetails authenticationDetails = (WebAuthenticationDetails) entry.getValue();
-                    results.put("remoteAddress", authenticationDetails.getRemoteAddress());
-                    results.put("sessionId", authenticationDetails.getSessionId());
+                    consumer.accept("remoteAddress", authenticationDetails.getRemoteAddress());
+                    consumer.accept("sessionId", authenticationDetails.getSessionId());
                 } else {
-                    results.put(entry.getKey(), Objects.toString(entry.getValue()));
+                    consumer.accept(entry.getKey(), Objects.toString(entry.getValue()));
                 }
             }
         }
-        return results;
     }
 }
@@ -0,0 +1,18 @@
+package com.kacetal.library.stock.config.datasource;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Run the annotated method, or every method of the annotated class, on the {@link Workload#BATCH} connection pool.
+ * <p>
+ * Has no effect unless the data source routing and the batch pool are enabled.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface BatchWorkload {
+}
@@ -0,0 +1,45 @@
+package com.kacetal.library.stock.config.datasource;
+
+/**
+ * Thread-bound routing hints read by {@link ReplicaRoutingDataSource}.
+ */
+public final class DataSourceRoutingContext {
+
+    private static final ThreadLocal<Boolean> PRIMARY_PINNED = new ThreadLocal<>();
+
+    private static final ThreadLocal<Workload> WORKLOAD = new ThreadLocal<>();
+
+    private DataSourceRoutingContext() {
+    }
+
+    /**
+     * Send every transaction of the current thread to the primary, including read-only ones.
+     */
+    public static void pinToPrimary() {
+        PRIMARY_PINNED.set(Boolean.TRUE);
+    }
+
+    public static boolean isPinnedToPrimary() {
+        return PRIMARY_PINNED.get() != null;
+    }
+
+    public static void clear() {
+        PRIMARY_PINNED.remove();
+    }
+
+    /**
+     * @return the workload of the current thread, {@link Workload#INTERACTIVE} by default.
+     */
+    public static Workload getWorkload() {
+        final Workload workload = WORKLOAD.get();
+        return workload == null ? Workload.INTERACTIVE : workload;
+    }
+
+    public static void setWorkload(Workload workload) {
+        if (workload == null || workload == Workload.INTERACTIVE) {
+            WORKLOAD.remove();
+        } else {
+            WORKLOAD.set(workload);
+        }
+    }
+}
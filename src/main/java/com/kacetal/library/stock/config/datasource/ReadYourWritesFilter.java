@@ -0,0 +1,70 @@
+package com.kacetal.library.stock.config.datasource;
+
+import com.kacetal.library.stock.security.SecurityUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Filter pinning a client to the primary database for a short window after it changed something, so that
+ * it reads its own writes even when the replicas lag behind.
+ * <p>
+ * Clients are identified by their login, or by their remote address when not authenticated.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    private static final int CLEANUP_THRESHOLD = 10_000;
+
+    private final long windowNanos;
+
+    private final Map<String, Long> pinnedUntil = new ConcurrentHashMap<>();
+
+    public ReadYourWritesFilter(Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+        throws ServletException, IOException {
+        final String client = SecurityUtils.getCurrentUserLogin().orElse(request.getRemoteAddr());
+        final Long until = pinnedUntil.get(client);
+        if (until != null && until - System.nanoTime() > 0) {
+            DataSourceRoutingContext.pinToPrimary();
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            DataSourceRoutingContext.clear();
+            if (isMutation(request) && response.getStatus() < 400) {
+                pin(client);
+            }
+        }
+    }
+
+    private void pin(String client) {
+        final long now = System.nanoTime();
+        if (pinnedUntil.size() > CLEANUP_THRESHOLD) {
+            pinnedUntil.values().removeIf(until -> until - now <= 0);
+        }
+        pinnedUntil.put(client, now + windowNanos);
+    }
+
+    private static boolean isMutation(HttpServletRequest request) {
+        switch (request.getMethod()) {
+            case "POST":
+            case "PUT":
+            case "PATCH":
+            case "DELETE":
+                return true;
+            default:
+                return false;
+        }
+    }
+}
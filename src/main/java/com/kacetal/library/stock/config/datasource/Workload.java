@@ -0,0 +1,17 @@
+package com.kacetal.library.stock.config.datasource;
+
+/**
+ * Kind of work a connection is used for, each one getting its own connection pool.
+ */
+public enum Workload {
+
+    /**
+     * Request/response traffic: borrow, return, lookups and listings.
+     */
+    INTERACTIVE,
+
+    /**
+     * Long or bulk jobs: reindexing, imports, reports.
+     */
+    BATCH
+}
@@ -0,0 +1,29 @@
+package com.kacetal.library.stock.config.datasource;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+/**
+ * Aspect binding {@link BatchWorkload} methods to the batch connection pool.
+ * <p>
+ * It runs before the transaction interceptor, so the transaction opened by the method uses the batch pool.
+ */
+@Aspect
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class WorkloadRoutingAspect {
+
+    @Around("@annotation(com.kacetal.library.stock.config.datasource.BatchWorkload)" +
+        " || @within(com.kacetal.library.stock.config.datasource.BatchWorkload)")
+    public Object routeToBatchPool(ProceedingJoinPoint joinPoint) throws Throwable {
+        final Workload previous = DataSourceRoutingContext.getWorkload();
+        DataSourceRoutingContext.setWorkload(Workload.BATCH);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            DataSourceRoutingContext.setWorkload(previous);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.kacetal.library.stock.config.datasource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * {@link DataSource} giving {@link Workload#BATCH} work its own pool, so that bulk jobs can never take the
+ * connections needed by interactive requests.
+ */
+public class WorkloadRoutingDataSource extends AbstractDataSource {
+
+    private final DataSource interactive;
+
+    private final DataSource batch;
+
+    public WorkloadRoutingDataSource(DataSource interactive, DataSource batch) {
+        this.interactive = interactive;
+        this.batch = batch;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return current().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return current().getConnection(username, password);
+    }
+
+    private DataSource current() {
+        return DataSourceRoutingContext.getWorkload() == Workload.BATCH ? batch : interactive;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Routing of JDBC connections between the primary database, its read replicas and the workload pools.
+ */
+package com.kacetal.library.stock.config.datasource;
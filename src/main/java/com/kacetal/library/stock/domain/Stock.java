@@ -1,20 +1,26 @@
 package com.kacetal.library.stock.domain;
 
 import com.kacetal.library.stock.domain.enumeration.BookStockStatus;
+import com.kacetal.library.stock.domain.enumeration.BookStockStatusConverter;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.DynamicUpdate;
 import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
 
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
-import javax.persistence.EnumType;
-import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
@@ -27,6 +33,7 @@ import java.io.Serializable;
 @Setter
 @ToString
 @Entity
+@DynamicUpdate
 @Table(name = "stock")
 @Document(indexName = "stock")
 public class Stock implements Serializable {
@@ -38,8 +45,12 @@ public class Stock implements Serializable {
     @SequenceGenerator(name = "sequenceGenerator")
     private Long id;
 
+    /**
+     * Indexed as text, and as a keyword without {@code ignore_above}, which the checksums of the index read.
+     */
     @Size(min = 2, max = 50)
     @Column(name = "name", length = 50)
+    @MultiField(mainField = @Field(type = FieldType.Text), otherFields = @InnerField(suffix = "keyword", type = FieldType.Keyword))
     private String name;
 
     @NotNull
@@ -48,10 +59,18 @@ public class Stock implements Serializable {
     private Integer quantity;
 
     @NotNull
-    @Enumerated(EnumType.STRING)
+    @Convert(converter = BookStockStatusConverter.class)
     @Column(name = "book_stock_status", nullable = false)
+    @MultiField(mainField = @Field(type = FieldType.Text), otherFields = @InnerField(suffix = "keyword", type = FieldType.Keyword))
     private BookStockStatus bookStockStatus;
 
+    /**
+     * Row version, incremented on each update; it is the ETag of the stock.
+     */
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
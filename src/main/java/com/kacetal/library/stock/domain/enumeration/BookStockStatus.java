@@ -2,18 +2,36 @@ package com.kacetal.library.stock.domain.enumeration;
 
 /**
  * The BookStockStatus enumeration.
+ * <p>
+ * Each status is stored as its {@link #code()}: codes must never be reused nor changed.
  */
 public enum BookStockStatus {
 
-    AVAILABLE("available"), OUT_OF_STOCK("out_of_stock"), OUT_OF_BORROW("out_of_borrow");
+    AVAILABLE("available", (short) 1), OUT_OF_STOCK("out_of_stock", (short) 2), OUT_OF_BORROW("out_of_borrow", (short) 3);
 
     private final String errorKey;
 
-    BookStockStatus(final String errorKey) {
+    private final short code;
+
+    BookStockStatus(final String errorKey, final short code) {
         this.errorKey = errorKey;
+        this.code = code;
     }
 
     public String errorKey() {
         return errorKey;
     }
+
+    public short code() {
+        return code;
+    }
+
+    public static BookStockStatus fromCode(short code) {
+        for (BookStockStatus status : values()) {
+            if (status.code == code) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("Unknown book stock status code " + code);
+    }
 }
@@ -0,0 +1,21 @@
+package com.kacetal.library.stock.domain.enumeration;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+/**
+ * Stores a {@link BookStockStatus} as its {@code smallint} code instead of its name.
+ */
+@Converter
+public class BookStockStatusConverter implements AttributeConverter<BookStockStatus, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(BookStockStatus status) {
+        return status == null ? null : status.code();
+    }
+
+    @Override
+    public BookStockStatus convertToEntityAttribute(Short code) {
+        return code == null ? null : BookStockStatus.fromCode(code);
+    }
+}
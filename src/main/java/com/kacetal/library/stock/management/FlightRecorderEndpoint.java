@@ -0,0 +1,145 @@
+package com.kacetal.library.stock.management;
+
+import com.kacetal.library.stock.config.ApplicationProperties;
+import com.kacetal.library.stock.service.jfr.StockOperationEvent;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link Endpoint @Endpoint} to manage a bounded Java Flight Recorder recording.
+ * <ul>
+ * <li>{@code POST /management/jfr} starts a recording, with an optional {@code settings} ("default" or "profile"),
+ * unless one is running, and returns its status;</li>
+ * <li>{@code GET /management/jfr} streams the data recorded so far as a {@code .jfr} file;</li>
+ * <li>{@code DELETE /management/jfr} stops and discards the recording.</li>
+ * </ul>
+ * The recording is bounded by the {@code application.jfr} max age, max size and duration.
+ */
+@Component
+@Endpoint(id = "jfr")
+public class FlightRecorderEndpoint {
+
+    private static final String RECORDING_NAME = "kacetal-library-stock";
+
+    private final Logger log = LoggerFactory.getLogger(FlightRecorderEndpoint.class);
+
+    private final ApplicationProperties.Jfr properties;
+
+    private Recording recording;
+
+    public FlightRecorderEndpoint(ApplicationProperties applicationProperties) {
+        this.properties = applicationProperties.getJfr();
+    }
+
+    @WriteOperation
+    public synchronized Map<String, Object> start(@Nullable String settings) throws IOException, ParseException {
+        if (recording != null && isOver(recording)) {
+            // Stopped by its duration: replaced by a new one
+            recording.close();
+            recording = null;
+        }
+        if (recording == null) {
+            Configuration configuration = Configuration.getConfiguration(settings == null ? properties.getSettings() : settings);
+            recording = new Recording(configuration);
+            recording.setName(RECORDING_NAME);
+            recording.setToDisk(true);
+            recording.setMaxAge(properties.getMaxAge());
+            recording.setMaxSize(properties.getMaxSize().toBytes());
+            recording.setDuration(properties.getDuration());
+            recording.enable(StockOperationEvent.NAME);
+            recording.start();
+            log.info("Started Flight Recorder recording with '{}' settings", configuration.getName());
+        }
+        return status(recording);
+    }
+
+    @ReadOperation(produces = "application/octet-stream")
+    public synchronized WebEndpointResponse<Resource> dump() throws IOException {
+        if (recording == null) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        Path file = Files.createTempFile(RECORDING_NAME + "-", ".jfr");
+        recording.dump(file);
+        return new WebEndpointResponse<>(new TemporaryFileSystemResource(file));
+    }
+
+    @DeleteOperation
+    public synchronized Map<String, Object> stop() {
+        if (recording == null) {
+            return Map.of("state", "CLOSED");
+        }
+        Map<String, Object> status = status(recording);
+        recording.close();
+        recording = null;
+        log.info("Stopped Flight Recorder recording");
+        status.put("state", "CLOSED");
+        return status;
+    }
+
+    private static boolean isOver(Recording recording) {
+        return recording.getState() == RecordingState.STOPPED || recording.getState() == RecordingState.CLOSED;
+    }
+
+    private static Map<String, Object> status(Recording recording) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("name", recording.getName());
+        status.put("state", recording.getState().name());
+        status.put("startTime", recording.getStartTime());
+        status.put("maxAge", recording.getMaxAge());
+        status.put("maxSize", recording.getMaxSize());
+        status.put("duration", recording.getDuration());
+        status.put("size", recording.getSize());
+        return status;
+    }
+
+    /**
+     * A file resource deleted once it has been streamed.
+     */
+    private static final class TemporaryFileSystemResource extends FileSystemResource {
+
+        private TemporaryFileSystemResource(Path path) {
+            super(path);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(super.getInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        Files.deleteIfExists(getFile().toPath());
+                    }
+                }
+            };
+        }
+
+        @Override
+        public boolean isFile() {
+            // Prevent zero-copy so we can delete the file on close
+            return false;
+        }
+    }
+}
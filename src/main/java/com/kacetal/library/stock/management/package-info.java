@@ -0,0 +1,4 @@
+/**
+ * Custom Spring Boot Actuator endpoints, exposed under {@code /management}.
+ */
+package com.kacetal.library.stock.management;
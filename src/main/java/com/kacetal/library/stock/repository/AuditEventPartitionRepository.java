@@ -0,0 +1,205 @@
+package com.kacetal.library.stock.repository;
+
+import com.kacetal.library.stock.domain.PersistentAuditEvent;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Maintenance of the storage of the audit events, by day of {@code event_date} in UTC.
+ * <p>
+ * On PostgreSQL, {@code jhi_persistent_audit_event} and {@code jhi_persistent_audit_evt_data} are partitioned
+ * by day, with a {@code _yyyyMMdd} partition per day and a {@code _default} partition for the others, so that
+ * a day of events is removed by dropping its partitions. Elsewhere, a day is removed with a {@code delete}.
+ * <p>
+ * Statements altering the partitions must be run in a transaction.
+ */
+@Repository
+public class AuditEventPartitionRepository {
+
+    private static final String EVENT_TABLE = "jhi_persistent_audit_event";
+
+    private static final String DATA_TABLE = "jhi_persistent_audit_evt_data";
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private static final Pattern PARTITION = Pattern.compile(EVENT_TABLE + "_(\\d{8})");
+
+    private static final int FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Boolean partitioned;
+
+    public AuditEventPartitionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @return whether the audit tables are partitioned by day.
+     */
+    public boolean isPartitioned() {
+        if (partitioned == null) {
+            final String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+            partitioned = "PostgreSQL".equals(database) && jdbcTemplate.queryForObject(
+                "select count(*) from pg_partitioned_table t join pg_class c on c.oid = t.partrelid where c.relname = ?",
+                Integer.class, EVENT_TABLE) > 0;
+        }
+        return partitioned;
+    }
+
+    /**
+     * @return the days having their own partitions, in order.
+     */
+    public List<LocalDate> findPartitionDays() {
+        return jdbcTemplate.queryForList(
+            "select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid join pg_class p on p.oid = i.inhparent "
+                + "where p.relname = ?", String.class, EVENT_TABLE)
+            .stream()
+            .map(PARTITION::matcher)
+            .filter(Matcher::matches)
+            .map(matcher -> LocalDate.parse(matcher.group(1), SUFFIX))
+            .sorted()
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Create the partitions of a day, if they don't exist, moving to them the events of that day from the
+     * default partitions.
+     *
+     * @param day the day.
+     */
+    public void createPartition(LocalDate day) {
+        createPartition(EVENT_TABLE, day);
+        createPartition(DATA_TABLE, day);
+    }
+
+    /**
+     * Create a partition apart, fill it with the rows of its day from the default partition, then attach it.
+     * <p>
+     * Attaching scans the default partition under an exclusive lock, to check that it has no row of the day: it
+     * is then empty of them, and only holds the few events out of the created days. The check constraint spares
+     * the scan of the new partition.
+     */
+    private void createPartition(String table, LocalDate day) {
+        final String partition = partition(table, day);
+        if (jdbcTemplate.queryForObject("select count(*) from pg_class where relname = ?", Integer.class, partition) > 0) {
+            return;
+        }
+        final Timestamp start = Timestamp.valueOf(day.atStartOfDay());
+        final Timestamp end = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+        jdbcTemplate.execute("create table " + partition + " (like " + table + " including defaults including constraints)");
+        jdbcTemplate.execute("alter table " + partition + " add constraint " + partition + "_bounds check (event_date >= '"
+            + day + "' and event_date < '" + day.plusDays(1) + "')");
+        jdbcTemplate.update("with moved as (delete from " + table + "_default where event_date >= ? and event_date < ? returning *) "
+            + "insert into " + partition + " select * from moved", start, end);
+        jdbcTemplate.execute("alter table " + table + " attach partition " + partition
+            + " for values from ('" + day + "') to ('" + day.plusDays(1) + "')");
+    }
+
+    /**
+     * Drop the partitions of a day, with their events.
+     *
+     * @param day the day.
+     */
+    public void dropPartition(LocalDate day) {
+        jdbcTemplate.execute("drop table if exists " + partition(DATA_TABLE, day));
+        jdbcTemplate.execute("drop table if exists " + partition(EVENT_TABLE, day));
+    }
+
+    /**
+     * @return the day of the oldest event, if any.
+     */
+    public Optional<LocalDate> findOldestDay() {
+        final Timestamp oldest = jdbcTemplate.queryForObject("select min(event_date) from " + EVENT_TABLE, Timestamp.class);
+        return Optional.ofNullable(oldest).map(timestamp -> timestamp.toLocalDateTime().toLocalDate());
+    }
+
+    /**
+     * Delete the events of the days before the given one; when partitioned, only from the default partitions,
+     * the other days being dropped with their partitions.
+     *
+     * @param day the first day to keep.
+     * @return the number of deleted events.
+     */
+    public int deleteBefore(LocalDate day) {
+        final Timestamp end = Timestamp.valueOf(day.atStartOfDay());
+        final String suffix = isPartitioned() ? "_default" : "";
+        jdbcTemplate.update("delete from " + DATA_TABLE + suffix + " where event_date < ? or event_date is null", end);
+        return jdbcTemplate.update("delete from " + EVENT_TABLE + suffix + " where event_date < ? or event_date is null", end);
+    }
+
+    /**
+     * Read the events of a range of days with their data, in id order, without loading them all in memory.
+     * <p>
+     * Must be run in a transaction for the rows to be fetched by chunks on PostgreSQL.
+     *
+     * @param from     the first day, inclusive, or {@code null} for the events without date and the oldest ones,
+     *                 only of the default partitions when partitioned.
+     * @param to       the last day, exclusive.
+     * @param consumer the consumer of the events.
+     */
+    public void forEachEvent(LocalDate from, LocalDate to, Consumer<PersistentAuditEvent> consumer) {
+        final String columns = "select e.event_id, e.principal, e.event_date, e.event_type, d.name, d.value from ";
+        final String query;
+        final Timestamp[] parameters;
+        if (from == null) {
+            // The default partitions are read directly, as their events can't be told apart by date from the others
+            final String suffix = isPartitioned() ? "_default" : "";
+            query = columns + EVENT_TABLE + suffix + " e left join " + DATA_TABLE + suffix + " d on d.event_id = e.event_id "
+                + "where e.event_date is null or e.event_date < ? order by e.event_id";
+            parameters = new Timestamp[]{Timestamp.valueOf(to.atStartOfDay())};
+        } else {
+            // Both tables are bounded by the range, so that only its partitions are read
+            query = columns + EVENT_TABLE + " e left join " + DATA_TABLE + " d on d.event_id = e.event_id and d.event_date = e.event_date "
+                + "and d.event_date >= ? and d.event_date < ? where e.event_date >= ? and e.event_date < ? order by e.event_id";
+            final Timestamp start = Timestamp.valueOf(from.atStartOfDay());
+            final Timestamp end = Timestamp.valueOf(to.atStartOfDay());
+            parameters = new Timestamp[]{start, end, start, end};
+        }
+        final PersistentAuditEvent[] current = new PersistentAuditEvent[1];
+        jdbcTemplate.query(connection -> {
+            final PreparedStatement statement = connection.prepareStatement(query);
+            statement.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setTimestamp(i + 1, parameters[i]);
+            }
+            return statement;
+        }, rs -> {
+            final long id = rs.getLong(1);
+            if (current[0] == null || current[0].getId() != id) {
+                if (current[0] != null) {
+                    consumer.accept(current[0]);
+                }
+                current[0] = new PersistentAuditEvent();
+                current[0].setId(id);
+                current[0].setPrincipal(rs.getString(2));
+                current[0].setAuditEventDate(CustomAuditEventRepository.toInstant(rs.getTimestamp(3)));
+                current[0].setAuditEventType(rs.getString(4));
+            }
+            final String name = rs.getString(5);
+            if (name != null) {
+                current[0].getData().put(name, rs.getString(6));
+            }
+        });
+        if (current[0] != null) {
+            consumer.accept(current[0]);
+        }
+    }
+
+    private static String partition(String table, LocalDate day) {
+        return table + "_" + SUFFIX.format(day);
+    }
+}
@@ -0,0 +1,484 @@
+package com.kacetal.library.stock.repository;
+
+import com.kacetal.library.stock.config.ApplicationProperties;
+import com.kacetal.library.stock.config.audit.AuditEventConverter;
+import com.kacetal.library.stock.domain.PersistentAuditEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.boot.actuate.audit.AuditEventRepository;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+import org.springframework.jdbc.support.incrementer.H2SequenceMaxValueIncrementer;
+import org.springframework.jdbc.support.incrementer.PostgreSQLSequenceMaxValueIncrementer;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * An implementation of Spring Boot's {@link AuditEventRepository} which writes the events asynchronously.
+ * <p>
+ * {@link #add(AuditEvent)} only puts the event in a bounded lock-free ring buffer, so that authentications
+ * don't wait for the database. A single writer thread drains the buffer and inserts the events and their
+ * data with two JDBC batches per flush, when a batch is full or every {@code flushInterval}; event ids are
+ * taken from the {@code sequence_generator} sequence like the Hibernate pooled optimizer does, one
+ * {@code nextval} for {@value #ID_BLOCK_SIZE} ids. When the buffer is full, the event is dropped or the
+ * producer waits, depending on the {@code overflowPolicy}.
+ * <p>
+ * Events are found once written, so an event just added may not be found yet.
+ */
+@Repository
+public class CustomAuditEventRepository implements AuditEventRepository {
+
+    private static final String AUTHORIZATION_FAILURE = "AUTHORIZATION_FAILURE";
+
+    private static final String ANONYMOUS_USER = "anonymousUser";
+
+    /**
+     * Should be the same as in Liquibase migration.
+     */
+    protected static final int EVENT_DATA_COLUMN_MAX_LENGTH = 255;
+
+    private static final int PRINCIPAL_COLUMN_MAX_LENGTH = 50;
+
+    private static final int NAME_COLUMN_MAX_LENGTH = 150;
+
+    private static final int ID_BLOCK_SIZE = 50;
+
+    private static final int FIND_DATA_CHUNK_SIZE = 500;
+
+    private static final String SEQUENCE_NAME = "sequence_generator";
+
+    private static final String INSERT_EVENT =
+        "insert into jhi_persistent_audit_event (event_id, principal, event_date, event_type) values (?, ?, ?, ?)";
+
+    private static final String INSERT_DATA = "insert into jhi_persistent_audit_evt_data (event_id, event_date, name, value) values (?, ?, ?, ?)";
+
+    private final Logger log = LoggerFactory.getLogger(CustomAuditEventRepository.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final AuditEventConverter auditEventConverter;
+
+    private final ApplicationProperties.Audit properties;
+
+    private final AuditEventRingBuffer<AuditEvent> buffer;
+
+    private final Counter dropped;
+
+    private final Counter written;
+
+    // State of the writer thread, reused from one flush to the other
+
+    private final AuditEvent[] events;
+
+    private final long[] eventIds;
+
+    /**
+     * Index in {@link #events} of the event of each data.
+     */
+    private int[] dataEvents;
+
+    private String[] dataNames;
+
+    private String[] dataValues;
+
+    private int dataCount;
+
+    private int currentEvent;
+
+    /**
+     * Index of the first data of the current event.
+     */
+    private int currentEventFirstData;
+
+    private final BiConsumer<String, String> dataCollector = this::collectData;
+
+    private long nextId;
+
+    private long lastIdOfBlock = -1;
+
+    private volatile DataFieldMaxValueIncrementer sequence;
+
+    private volatile boolean running;
+
+    private Thread writer;
+
+    public CustomAuditEventRepository(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                      AuditEventConverter auditEventConverter, ApplicationProperties applicationProperties,
+                                      MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.auditEventConverter = auditEventConverter;
+        this.properties = applicationProperties.getAudit();
+        this.buffer = new AuditEventRingBuffer<>(properties.getCapacity());
+        this.events = new AuditEvent[properties.getBatchSize()];
+        this.eventIds = new long[properties.getBatchSize()];
+        this.dataEvents = new int[properties.getBatchSize() * 4];
+        this.dataNames = new String[dataEvents.length];
+        this.dataValues = new String[dataEvents.length];
+        Gauge.builder("audit.events.pending", buffer, AuditEventRingBuffer::size)
+            .description("Audit events waiting to be written")
+            .register(meterRegistry);
+        this.dropped = Counter.builder("audit.events.dropped")
+            .description("Audit events dropped because too many were waiting, or failing to be written")
+            .register(meterRegistry);
+        this.written = Counter.builder("audit.events.written")
+            .description("Audit events written")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::write, "audit-event-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        // The writer flushes what is left before exiting
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    @Override
+    public void add(AuditEvent event) {
+        if (AUTHORIZATION_FAILURE.equals(event.getType()) && ANONYMOUS_USER.equals(event.getPrincipal())) {
+            return;
+        }
+        if (!buffer.offer(event) && !offerBlocking(event)) {
+            dropped.increment();
+            return;
+        }
+        if (buffer.size() >= events.length) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private boolean offerBlocking(AuditEvent event) {
+        if (properties.getOverflowPolicy() != ApplicationProperties.Audit.OverflowPolicy.BLOCK) {
+            return false;
+        }
+        final long deadline = System.nanoTime() + properties.getBlockTimeout().toNanos();
+        LockSupport.unpark(writer);
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            if (buffer.offer(event)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public List<AuditEvent> find(String principal, Instant after, String type) {
+        final StringBuilder query = new StringBuilder(
+            "select event_id, principal, event_date, event_type from jhi_persistent_audit_event where 1 = 1");
+        final List<Object> parameters = new ArrayList<>();
+        if (principal != null) {
+            query.append(" and principal = ?");
+            parameters.add(principal);
+        }
+        if (after != null) {
+            query.append(" and event_date > ?");
+            parameters.add(toTimestamp(after));
+        }
+        if (type != null) {
+            query.append(" and event_type = ?");
+            parameters.add(type);
+        }
+        query.append(" order by event_date, event_id");
+
+        return transactionTemplate.execute(status ->
+            auditEventConverter.convertToAuditEvent(query(query.toString(), parameters.toArray())));
+    }
+
+    /**
+     * Find a page of the audit events of a principal between two dates, the most recent first.
+     * <p>
+     * The page starts after the event given by {@code afterDate} and {@code afterId}, the last one of the
+     * previous page, so that it is read from the {@code (principal, event_date)} index whatever its depth.
+     *
+     * @param principal the principal of the events.
+     * @param from      the date from which to find the events, inclusive, or {@code null}.
+     * @param to        the date until which to find the events, exclusive, or {@code null}.
+     * @param afterDate the date of the last event of the previous page, or {@code null} for the first page.
+     * @param afterId   the id of the last event of the previous page, or {@code null} for the first page.
+     * @param size      the maximum number of events.
+     * @return the events, with their data.
+     */
+    public List<PersistentAuditEvent> findPage(String principal, Instant from, Instant to, Instant afterDate, Long afterId, int size) {
+        final StringBuilder query = new StringBuilder(
+            "select event_id, principal, event_date, event_type from jhi_persistent_audit_event where principal = ?");
+        final List<Object> parameters = new ArrayList<>();
+        parameters.add(principal);
+        if (from != null) {
+            query.append(" and event_date >= ?");
+            parameters.add(toTimestamp(from));
+        }
+        if (to != null) {
+            query.append(" and event_date < ?");
+            parameters.add(toTimestamp(to));
+        }
+        if (afterDate != null && afterId != null) {
+            query.append(" and (event_date < ? or (event_date = ? and event_id < ?))");
+            parameters.add(toTimestamp(afterDate));
+            parameters.add(toTimestamp(afterDate));
+            parameters.add(afterId);
+        }
+        query.append(" order by event_date desc, event_id desc limit ?");
+        parameters.add(size);
+
+        return transactionTemplate.execute(status -> new ArrayList<>(query(query.toString(), parameters.toArray())));
+    }
+
+    /**
+     * Run a query of events, then load the data of all of them in a query per chunk of events instead of
+     * one per event.
+     */
+    private Collection<PersistentAuditEvent> query(String query, Object[] parameters) {
+        final Map<Long, PersistentAuditEvent> found = new LinkedHashMap<>();
+        jdbcTemplate.query(query, rs -> {
+            final PersistentAuditEvent event = new PersistentAuditEvent();
+            event.setId(rs.getLong(1));
+            event.setPrincipal(rs.getString(2));
+            event.setAuditEventDate(toInstant(rs.getTimestamp(3)));
+            event.setAuditEventType(rs.getString(4));
+            found.put(event.getId(), event);
+        }, parameters);
+        final List<PersistentAuditEvent> events = new ArrayList<>(found.values());
+        for (int from = 0; from < events.size(); from += FIND_DATA_CHUNK_SIZE) {
+            final List<PersistentAuditEvent> chunk = events.subList(from, Math.min(from + FIND_DATA_CHUNK_SIZE, events.size()));
+            final List<Object> dataParameters = new ArrayList<>();
+            chunk.forEach(event -> dataParameters.add(event.getId()));
+            final StringBuilder dataQuery = new StringBuilder("select event_id, name, value from jhi_persistent_audit_evt_data where event_id in (")
+                .append(chunk.stream().map(event -> "?").collect(Collectors.joining(", "))).append(')');
+            // Bounded by the dates of the events, so that only their partitions are read
+            Instant min = Instant.MAX;
+            Instant max = Instant.MIN;
+            for (PersistentAuditEvent event : chunk) {
+                final Instant date = event.getAuditEventDate();
+                min = date == null || date.isBefore(min) ? date : min;
+                max = date == null || date.isAfter(max) ? date : max;
+                if (date == null) {
+                    break;
+                }
+            }
+            if (min != null) {
+                dataQuery.append(" and event_date between ? and ?");
+                dataParameters.add(toTimestamp(min));
+                dataParameters.add(toTimestamp(max));
+            }
+            jdbcTemplate.query(dataQuery.toString(), rs -> {
+                found.get(rs.getLong(1)).getData().put(rs.getString(2), rs.getString(3));
+            }, dataParameters.toArray());
+        }
+        return found.values();
+    }
+
+    /**
+     * Loop of the writer thread.
+     */
+    private void write() {
+        final long flushInterval = properties.getFlushInterval().toNanos();
+        while (running || buffer.size() > 0) {
+            final int count = drain();
+            if (count > 0) {
+                flush(count);
+            }
+            if (count < events.length && running) {
+                LockSupport.parkNanos(this, flushInterval);
+            }
+        }
+    }
+
+    private int drain() {
+        int count = 0;
+        AuditEvent event;
+        while (count < events.length && (event = buffer.poll()) != null) {
+            events[count++] = event;
+        }
+        return count;
+    }
+
+    private void flush(int count) {
+        int assigned = 0;
+        try {
+            dataCount = 0;
+            for (int i = 0; i < count; i++) {
+                currentEvent = i;
+                currentEventFirstData = dataCount;
+                auditEventConverter.forEachDataString(events[i].getData(), dataCollector);
+            }
+            // Only the events before the one whose id could not be taken from the sequence have theirs
+            for (; assigned < count; assigned++) {
+                eventIds[assigned] = nextId();
+            }
+            insert(0, count, 0, dataCount);
+            written.increment(count);
+        } catch (RuntimeException e) {
+            log.warn("Could not write a batch of {} audit events, writing them one by one: {}", count, e.toString());
+            flushOneByOne(count, assigned);
+        } finally {
+            Arrays.fill(events, 0, count, null);
+            Arrays.fill(dataNames, 0, dataCount, null);
+            Arrays.fill(dataValues, 0, dataCount, null);
+        }
+    }
+
+    /**
+     * Write the events one by one, taking the ids of those from the one at {@code assigned}.
+     */
+    private void flushOneByOne(int count, int assigned) {
+        int data = 0;
+        for (int i = 0; i < count; i++) {
+            final int firstData = data;
+            while (data < dataCount && dataEvents[data] == i) {
+                data++;
+            }
+            try {
+                if (i >= assigned) {
+                    eventIds[i] = nextId();
+                    assigned++;
+                }
+                insert(i, i + 1, firstData, data);
+                written.increment();
+            } catch (RuntimeException e) {
+                dropped.increment();
+                log.warn("Could not write the audit event {}: {}", events[i], e.toString());
+            }
+        }
+    }
+
+    /**
+     * Insert the events and data of ranges of the arrays, in a transaction.
+     */
+    private void insert(int fromEvent, int toEvent, int fromData, int toData) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_EVENT, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    final AuditEvent event = events[fromEvent + i];
+                    ps.setLong(1, eventIds[fromEvent + i]);
+                    ps.setString(2, truncate(event.getPrincipal(), PRINCIPAL_COLUMN_MAX_LENGTH));
+                    ps.setTimestamp(3, toTimestamp(event.getTimestamp()));
+                    ps.setString(4, event.getType());
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return toEvent - fromEvent;
+                }
+            });
+            if (toData > fromData) {
+                jdbcTemplate.batchUpdate(INSERT_DATA, new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        final int event = dataEvents[fromData + i];
+                        ps.setLong(1, eventIds[event]);
+                        ps.setTimestamp(2, toTimestamp(events[event].getTimestamp()));
+                        ps.setString(3, dataNames[fromData + i]);
+                        ps.setString(4, truncate(dataValues[fromData + i], EVENT_DATA_COLUMN_MAX_LENGTH));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return toData - fromData;
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Collect a data of the current event; a name already collected for it, once truncated like in the column,
+     * takes the last value, as it would in a map.
+     */
+    private void collectData(String name, String value) {
+        final String column = truncate(name, NAME_COLUMN_MAX_LENGTH);
+        for (int i = currentEventFirstData; i < dataCount; i++) {
+            if (Objects.equals(dataNames[i], column)) {
+                dataValues[i] = value;
+                return;
+            }
+        }
+        if (dataCount == dataEvents.length) {
+            dataEvents = Arrays.copyOf(dataEvents, dataCount * 2);
+            dataNames = Arrays.copyOf(dataNames, dataCount * 2);
+            dataValues = Arrays.copyOf(dataValues, dataCount * 2);
+        }
+        dataEvents[dataCount] = currentEvent;
+        dataNames[dataCount] = column;
+        dataValues[dataCount] = value;
+        dataCount++;
+    }
+
+    private long nextId() {
+        if (nextId > lastIdOfBlock) {
+            lastIdOfBlock = sequence().nextLongValue();
+            nextId = lastIdOfBlock - ID_BLOCK_SIZE + 1;
+        }
+        return nextId++;
+    }
+
+    private DataFieldMaxValueIncrementer sequence() {
+        if (sequence == null) {
+            final String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+            if ("H2".equals(database)) {
+                sequence = new H2SequenceMaxValueIncrementer(jdbcTemplate.getDataSource(), SEQUENCE_NAME);
+            } else if ("PostgreSQL".equals(database)) {
+                sequence = new PostgreSQLSequenceMaxValueIncrementer(jdbcTemplate.getDataSource(), SEQUENCE_NAME);
+            } else {
+                throw new IllegalStateException("Unsupported database for the audit events: " + database);
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * Convert an instant to a timestamp of its UTC date and time, as Hibernate does with the
+     * {@code hibernate.jdbc.time_zone} property.
+     */
+    static Timestamp toTimestamp(Instant instant) {
+        return Timestamp.valueOf(LocalDateTime.ofInstant(instant, ZoneOffset.UTC));
+    }
+
+    static Instant toInstant(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime().toInstant(ZoneOffset.UTC);
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+}
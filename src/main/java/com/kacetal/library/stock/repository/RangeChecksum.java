@@ -0,0 +1,99 @@
+package com.kacetal.library.stock.repository;
+
+import com.kacetal.library.stock.domain.Stock;
+
+import java.util.Objects;
+
+/**
+ * Checksum of the stocks of a range of ids, comparable between the database and Elasticsearch.
+ * <p>
+ * Each stock is hashed from its id, quantity, status and name, and the hashes are summed, so the checksum
+ * doesn't depend on the order in which the stocks are read. {@link #PAINLESS_HASH} computes the same hash
+ * in Elasticsearch, where {@code doc} holds the fields of the stock: the keywords it reads are mapped
+ * explicitly on {@link Stock}, without the {@code ignore_above} of the dynamic mapping, so that they are
+ * always indexed.
+ */
+public final class RangeChecksum {
+
+    public static final RangeChecksum EMPTY = new RangeChecksum(0, 0);
+
+    /**
+     * Painless statements setting the long {@code h} to the {@link #hash} of the stock in {@code doc}.
+     */
+    public static final String PAINLESS_HASH = "long h = doc['id'].value;"
+        + " h = 31 * h + doc['quantity'].value;"
+        + " h = 31 * h + doc['bookStockStatus.keyword'].value.hashCode();"
+        + " h = 31 * h + (doc['name.keyword'].size() == 0 ? 0 : doc['name.keyword'].value.hashCode());"
+        + " h ^= h >>> 33; h *= " + Mix.C1 + "L; h ^= h >>> 33; h *= " + Mix.C2 + "L; h ^= h >>> 33;";
+
+    private final long count;
+
+    private final long sum;
+
+    public RangeChecksum(long count, long sum) {
+        this.count = count;
+        this.sum = sum;
+    }
+
+    public static long hash(Stock stock) {
+        return hash(stock.getId(), stock.getQuantity(), stock.getBookStockStatus().name(), stock.getName());
+    }
+
+    public static long hash(long id, long quantity, String status, String name) {
+        long h = id;
+        h = 31 * h + quantity;
+        h = 31 * h + status.hashCode();
+        h = 31 * h + (name == null ? 0 : name.hashCode());
+        // The finalizer of MurmurHash3, so that the differences of two stocks don't cancel out in the sum
+        h ^= h >>> 33;
+        h *= Mix.C1;
+        h ^= h >>> 33;
+        h *= Mix.C2;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public RangeChecksum plus(long hash) {
+        return new RangeChecksum(count + 1, sum + hash);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RangeChecksum)) {
+            return false;
+        }
+        RangeChecksum other = (RangeChecksum) o;
+        return count == other.count && sum == other.sum;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(count, sum);
+    }
+
+    @Override
+    public String toString() {
+        return "RangeChecksum{count=" + count + ", sum=" + sum + "}";
+    }
+
+    /**
+     * Constants of the finalizer, as decimal literals which Painless parses like Java.
+     */
+    private static final class Mix {
+
+        private static final long C1 = -49064778989728563L;
+
+        private static final long C2 = -4265267296055464877L;
+    }
+}
@@ -1,14 +1,101 @@
 package com.kacetal.library.stock.repository;
 
 import com.kacetal.library.stock.domain.Stock;
+import com.kacetal.library.stock.domain.enumeration.BookStockStatus;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.Optional;
+
 /**
  * Spring Data  repository for the Stock entity.
  */
 @SuppressWarnings("unused")
 @Repository
-public interface StockRepository extends JpaRepository<Stock, Long> {
+public interface StockRepository extends JpaRepository<Stock, Long>, StockRepositoryCustom {
+
+    /**
+     * Get one stock by id, holding a row lock until the end of the current transaction.
+     *
+     * @param id the id of the entity.
+     * @return the locked entity.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select stock from Stock stock where stock.id = :id")
+    Optional<Stock> findOneForUpdate(@Param("id") Long id);
+
+    /**
+     * Get the row version of one stock by id, without loading it.
+     *
+     * @param id the id of the entity.
+     * @return the version of the entity.
+     */
+    @Query("select stock.version from Stock stock where stock.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    /**
+     * Get the ids and row versions of a page of stocks, without loading them nor counting them.
+     *
+     * @param pageable the pagination information.
+     * @return the slice of ids and versions.
+     */
+    @Query("select stock.id as id, stock.version as version from Stock stock")
+    Slice<IdAndVersion> findAllVersions(Pageable pageable);
+
+    /**
+     * Get the stocks whose name starts with a prefix, ignoring case, and matching optional filters.
+     * <p>
+     * Used when Elasticsearch is unavailable; on PostgreSQL the prefix is served by an index on {@code lower(name)}.
+     *
+     * @param prefix      the lower case prefix of the name.
+     * @param statuses    the accepted statuses.
+     * @param minQuantity the minimum quantity, or {@code null}.
+     * @param maxQuantity the maximum quantity, or {@code null}.
+     * @param pageable    the pagination information.
+     * @return the page of entities.
+     */
+    @Query("select stock from Stock stock where lower(stock.name) like concat(:prefix, '%')"
+        + " and stock.bookStockStatus in :statuses"
+        + " and (:minQuantity is null or stock.quantity >= :minQuantity)"
+        + " and (:maxQuantity is null or stock.quantity <= :maxQuantity)")
+    Page<Stock> findByNamePrefix(@Param("prefix") String prefix, @Param("statuses") Collection<BookStockStatus> statuses,
+                                 @Param("minQuantity") Integer minQuantity, @Param("maxQuantity") Integer maxQuantity,
+                                 Pageable pageable);
+
+    /**
+     * Get the stocks matching optional filters, whatever their name.
+     * <p>
+     * Used when Elasticsearch is unavailable and the search has no name prefix; apart from
+     * {@link #findByNamePrefix}, whose prefix would otherwise be optional and keep its index from being used.
+     *
+     * @param statuses    the accepted statuses.
+     * @param minQuantity the minimum quantity, or {@code null}.
+     * @param maxQuantity the maximum quantity, or {@code null}.
+     * @param pageable    the pagination information.
+     * @return the page of entities.
+     */
+    @Query("select stock from Stock stock where stock.bookStockStatus in :statuses"
+        + " and (:minQuantity is null or stock.quantity >= :minQuantity)"
+        + " and (:maxQuantity is null or stock.quantity <= :maxQuantity)")
+    Page<Stock> findByFilters(@Param("statuses") Collection<BookStockStatus> statuses,
+                              @Param("minQuantity") Integer minQuantity, @Param("maxQuantity") Integer maxQuantity,
+                              Pageable pageable);
+
+    /**
+     * Projection of the id and row version of a stock.
+     */
+    interface IdAndVersion {
+
+        Long getId();
 
+        Long getVersion();
+    }
 }
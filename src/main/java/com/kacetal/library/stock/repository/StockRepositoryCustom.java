@@ -0,0 +1,52 @@
+package com.kacetal.library.stock.repository;
+
+import com.kacetal.library.stock.domain.Stock;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Range;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Custom queries of the {@link StockRepository}.
+ */
+public interface StockRepositoryCustom {
+
+    /**
+     * Get a page of stocks, selecting only some of their properties.
+     *
+     * @param properties the names of the properties to select, in the order of the returned maps.
+     * @param pageable   the pagination information.
+     * @return the page of stocks, each one as a map of property name to value.
+     * @throws IllegalArgumentException if a property, or a sort property, doesn't exist.
+     */
+    Page<Map<String, Object>> findAllProjected(Set<String> properties, Pageable pageable);
+
+    /**
+     * Get the smallest and the largest ids of the stocks.
+     *
+     * @return the closed range of the ids, or empty if there is no stock.
+     */
+    Optional<Range<Long>> findIdRange();
+
+    /**
+     * Compute the checksum of the stocks whose id is in a range, streaming them.
+     *
+     * @param fromId the first id of the range, inclusive.
+     * @param toId   the last id of the range, exclusive.
+     * @return the checksum.
+     */
+    RangeChecksum checksum(long fromId, long toId);
+
+    /**
+     * Get the stocks whose id is in a range.
+     *
+     * @param fromId the first id of the range, inclusive.
+     * @param toId   the last id of the range, exclusive.
+     * @return the entities, by id.
+     */
+    List<Stock> findAllInIdRange(long fromId, long toId);
+}
@@ -0,0 +1,109 @@
+package com.kacetal.library.stock.repository;
+
+import com.kacetal.library.stock.domain.Stock;
+import com.kacetal.library.stock.domain.enumeration.BookStockStatus;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Range;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of the {@link StockRepositoryCustom} queries.
+ * <p>
+ * The projection is built from the requested properties with the JPA Criteria API, so the SQL only
+ * selects their columns. The checksums stream the rows, without loading the entities.
+ */
+public class StockRepositoryCustomImpl implements StockRepositoryCustom {
+
+    private static final int CHECKSUM_FETCH_SIZE = 1_000;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<Map<String, Object>> findAllProjected(Set<String> properties, Pageable pageable) {
+        if (properties.isEmpty()) {
+            throw new IllegalArgumentException("No property to select");
+        }
+        final CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        final Root<Stock> root = query.from(Stock.class);
+        query.multiselect(properties.stream()
+            .map(property -> root.get(property).alias(property))
+            .collect(Collectors.toList()));
+        query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, builder));
+
+        final TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typedQuery.setFirstResult((int) pageable.getOffset());
+            typedQuery.setMaxResults(pageable.getPageSize());
+        }
+        final List<Map<String, Object>> content = new ArrayList<>();
+        for (Tuple tuple : typedQuery.getResultList()) {
+            final Map<String, Object> stock = new LinkedHashMap<>();
+            for (String property : properties) {
+                stock.put(property, tuple.get(property));
+            }
+            content.add(stock);
+        }
+
+        final CriteriaQuery<Long> countQuery = builder.createQuery(Long.class);
+        countQuery.select(builder.count(countQuery.from(Stock.class)));
+        return PageableExecutionUtils.getPage(content, pageable, () -> entityManager.createQuery(countQuery).getSingleResult());
+    }
+
+    @Override
+    public Optional<Range<Long>> findIdRange() {
+        final Object[] bounds = entityManager.createQuery("select min(stock.id), max(stock.id) from Stock stock", Object[].class)
+            .getSingleResult();
+        if (bounds[0] == null) {
+            return Optional.empty();
+        }
+        return Optional.of(Range.closed((Long) bounds[0], (Long) bounds[1]));
+    }
+
+    @Override
+    public RangeChecksum checksum(long fromId, long toId) {
+        final TypedQuery<Object[]> query = entityManager.createQuery("select stock.id, stock.quantity, stock.bookStockStatus, stock.name"
+            + " from Stock stock where stock.id >= :fromId and stock.id < :toId", Object[].class)
+            .setParameter("fromId", fromId)
+            .setParameter("toId", toId)
+            .setHint(QueryHints.HINT_FETCH_SIZE, CHECKSUM_FETCH_SIZE)
+            .setHint(QueryHints.HINT_READONLY, true);
+        RangeChecksum checksum = RangeChecksum.EMPTY;
+        try (Stream<Object[]> rows = query.getResultStream()) {
+            for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+                checksum = checksum.plus(RangeChecksum.hash((Long) row[0], (Integer) row[1],
+                    ((BookStockStatus) row[2]).name(), (String) row[3]));
+            }
+        }
+        return checksum;
+    }
+
+    @Override
+    public List<Stock> findAllInIdRange(long fromId, long toId) {
+        return entityManager.createQuery("select stock from Stock stock where stock.id >= :fromId and stock.id < :toId"
+            + " order by stock.id", Stock.class)
+            .setParameter("fromId", fromId)
+            .setParameter("toId", toId)
+            .getResultList();
+    }
+}
@@ -0,0 +1,16 @@
+package com.kacetal.library.stock.repository.search;
+
+import org.springframework.data.elasticsearch.ElasticsearchException;
+
+/**
+ * Thrown when Elasticsearch rejects a search as invalid, for instance a query string which can't be parsed:
+ * the search fails because of the request, not because of the cluster.
+ */
+public class InvalidSearchException extends ElasticsearchException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidSearchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,31 @@
+package com.kacetal.library.stock.repository.search;
+
+import com.kacetal.library.stock.domain.Stock;
+
+import java.util.List;
+
+/**
+ * A page of stocks read with {@code search_after}, with the sort values of its last hit.
+ */
+public class SearchAfterPage {
+
+    private final List<Stock> content;
+
+    private final List<String> lastSortValues;
+
+    public SearchAfterPage(List<Stock> content, List<String> lastSortValues) {
+        this.content = content;
+        this.lastSortValues = lastSortValues;
+    }
+
+    public List<Stock> getContent() {
+        return content;
+    }
+
+    /**
+     * @return the sort values to search after for the next page, empty if this page is empty.
+     */
+    public List<String> getLastSortValues() {
+        return lastSortValues;
+    }
+}
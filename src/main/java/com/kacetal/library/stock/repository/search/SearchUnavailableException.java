@@ -0,0 +1,16 @@
+package com.kacetal.library.stock.repository.search;
+
+import org.springframework.data.elasticsearch.ElasticsearchException;
+
+/**
+ * Thrown when a search can't be run because Elasticsearch is unavailable, and can't be answered from the
+ * database either, for instance the next page of a search walked with a cursor of Elasticsearch.
+ */
+public class SearchUnavailableException extends ElasticsearchException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SearchUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -6,6 +6,6 @@ import org.springframework.data.elasticsearch.repository.ElasticsearchRepository
 /**
  * Spring Data Elasticsearch repository for the {@link Stock} entity.
  */
-public interface StockSearchRepository extends ElasticsearchRepository<Stock, Long> {
+public interface StockSearchRepository extends ElasticsearchRepository<Stock, Long>, StockSearchRepositoryCustom {
 
 }
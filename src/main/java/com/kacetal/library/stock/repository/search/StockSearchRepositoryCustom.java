@@ -0,0 +1,81 @@
+package com.kacetal.library.stock.repository.search;
+
+import com.kacetal.library.stock.domain.Stock;
+import com.kacetal.library.stock.repository.RangeChecksum;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Range;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Custom queries of the {@link StockSearchRepository}.
+ */
+public interface StockSearchRepositoryCustom {
+
+    /**
+     * Search a page of stocks.
+     * <p>
+     * Replaces the search of the Spring Data template, which reports a query rejected by Elasticsearch like any
+     * other failure.
+     *
+     * @param query    the query.
+     * @param pageable the pagination information.
+     * @return the page of stocks.
+     * @throws InvalidSearchException if Elasticsearch rejects the query.
+     */
+    Page<Stock> search(QueryBuilder query, Pageable pageable);
+
+    /**
+     * Search a page of stocks, allowing Elasticsearch to answer from its shard request cache.
+     * <p>
+     * Only worth it for queries made of filters, whose results don't depend on the time of the request.
+     *
+     * @param query    the query.
+     * @param pageable the pagination information.
+     * @return the page of stocks.
+     * @throws InvalidSearchException if Elasticsearch rejects the query.
+     */
+    Page<Stock> searchWithRequestCache(QueryBuilder query, Pageable pageable);
+
+    /**
+     * Search a page of stocks sorted by score then id, starting after the last hit of the previous page.
+     * <p>
+     * Unlike {@code from}/{@code size} paging, the cost of a page doesn't depend on its depth, and there is
+     * no limit of {@code index.max_result_window}.
+     *
+     * @param query the query.
+     * @param size  the number of stocks of the page.
+     * @param after the sort values of the last hit of the previous page, empty for the first page.
+     * @return the page of stocks.
+     * @throws InvalidSearchException if Elasticsearch rejects the query.
+     */
+    SearchAfterPage searchAfter(QueryBuilder query, int size, List<String> after);
+
+    /**
+     * Get the smallest and the largest ids of the indexed stocks.
+     *
+     * @return the closed range of the ids, or empty if no stock is indexed.
+     */
+    Optional<Range<Long>> findIdRange();
+
+    /**
+     * Compute the checksum of the indexed stocks whose id is in a range, with a scripted aggregation.
+     *
+     * @param fromId the first id of the range, inclusive.
+     * @param toId   the last id of the range, exclusive.
+     * @return the checksum, equal to the one of the database when the stocks are the same.
+     */
+    RangeChecksum checksum(long fromId, long toId);
+
+    /**
+     * Get the indexed stocks whose id is in a range.
+     *
+     * @param fromId the first id of the range, inclusive; the range must not exceed {@code index.max_result_window}.
+     * @param toId   the last id of the range, exclusive.
+     * @return the stocks, by id.
+     */
+    List<Stock> findAllInIdRange(long fromId, long toId);
+}
@@ -0,0 +1,193 @@
+package com.kacetal.library.stock.repository.search;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.kacetal.library.stock.domain.Stock;
+import com.kacetal.library.stock.repository.RangeChecksum;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchResult;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.ElasticsearchException;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Implementation of the {@link StockSearchRepositoryCustom} queries, with the Jest client.
+ * <p>
+ * The Spring Data template can't set {@code request_cache} nor {@code search_after}, nor read scripted aggregations,
+ * so these searches are sent directly. The plain search is sent directly too, so that a query rejected by Elasticsearch
+ * is told apart from a failure of the cluster.
+ */
+public class StockSearchRepositoryCustomImpl implements StockSearchRepositoryCustom {
+
+    private static final String INDEX_NAME = "stock";
+
+    private final JestClient jestClient;
+
+    private final EntityMapper entityMapper;
+
+    public StockSearchRepositoryCustomImpl(JestClient jestClient, EntityMapper entityMapper) {
+        this.jestClient = jestClient;
+        this.entityMapper = entityMapper;
+    }
+
+    @Override
+    public Page<Stock> search(QueryBuilder query, Pageable pageable) {
+        return search(query, pageable, false);
+    }
+
+    @Override
+    public Page<Stock> searchWithRequestCache(QueryBuilder query, Pageable pageable) {
+        return search(query, pageable, true);
+    }
+
+    private Page<Stock> search(QueryBuilder query, Pageable pageable, boolean requestCache) {
+        final SearchSourceBuilder source = new SearchSourceBuilder().query(query);
+        if (pageable.isPaged()) {
+            source.from((int) pageable.getOffset()).size(pageable.getPageSize());
+        }
+        for (Sort.Order order : pageable.getSort()) {
+            source.sort(order.getProperty(), order.isAscending() ? SortOrder.ASC : SortOrder.DESC);
+        }
+        final Search.Builder search = new Search.Builder(source.toString())
+            .addIndex(INDEX_NAME);
+        if (requestCache) {
+            search.setParameter("request_cache", true);
+        }
+        try {
+            final SearchResult result = jestClient.execute(search.build());
+            checkSucceeded(result, "Search of stocks failed: ");
+            final List<Stock> content = new ArrayList<>();
+            for (String hit : result.getSourceAsStringList()) {
+                content.add(entityMapper.mapToObject(hit, Stock.class));
+            }
+            return new PageImpl<>(content, pageable, result.getTotal());
+        } catch (IOException e) {
+            throw new ElasticsearchException("Search of stocks failed", e);
+        }
+    }
+
+    @Override
+    public SearchAfterPage searchAfter(QueryBuilder query, int size, List<String> after) {
+        final SearchSourceBuilder source = new SearchSourceBuilder()
+            .query(query)
+            .size(size)
+            .sort(SortBuilders.scoreSort())
+            // The id breaks the ties, so that each hit has a unique position
+            .sort(SortBuilders.fieldSort("id").order(SortOrder.ASC));
+        if (!after.isEmpty()) {
+            source.searchAfter(new Object[]{Float.parseFloat(after.get(0)), Long.parseLong(after.get(1))});
+        }
+        final Search search = new Search.Builder(source.toString())
+            .addIndex(INDEX_NAME)
+            .build();
+        try {
+            final SearchResult result = jestClient.execute(search);
+            checkSucceeded(result, "Search of stocks failed: ");
+            final List<Stock> content = new ArrayList<>();
+            List<String> lastSortValues = Collections.emptyList();
+            for (SearchResult.Hit<JsonObject, Void> hit : result.getHits(JsonObject.class)) {
+                content.add(entityMapper.mapToObject(hit.source.toString(), Stock.class));
+                lastSortValues = hit.sort;
+            }
+            return new SearchAfterPage(content, lastSortValues);
+        } catch (IOException e) {
+            throw new ElasticsearchException("Search of stocks failed", e);
+        }
+    }
+
+    @Override
+    public Optional<Range<Long>> findIdRange() {
+        final SearchSourceBuilder source = new SearchSourceBuilder()
+            .size(0)
+            .aggregation(AggregationBuilders.min("minId").field("id"))
+            .aggregation(AggregationBuilders.max("maxId").field("id"));
+        final JsonObject aggregations = aggregate(source);
+        final JsonElement min = aggregations.getAsJsonObject("minId").get("value");
+        if (min == null || min.isJsonNull()) {
+            return Optional.empty();
+        }
+        return Optional.of(Range.closed(min.getAsLong(), aggregations.getAsJsonObject("maxId").get("value").getAsLong()));
+    }
+
+    @Override
+    public RangeChecksum checksum(long fromId, long toId) {
+        final SearchSourceBuilder source = new SearchSourceBuilder()
+            .size(0)
+            .query(QueryBuilders.rangeQuery("id").gte(fromId).lt(toId))
+            .aggregation(AggregationBuilders.scriptedMetric("checksum")
+                .initScript(new Script("state.count = 0L; state.sum = 0L;"))
+                .mapScript(new Script(RangeChecksum.PAINLESS_HASH + " state.count += 1; state.sum += h;"))
+                .combineScript(new Script("return state;"))
+                .reduceScript(new Script("long count = 0; long sum = 0;"
+                    + " for (s in states) { if (s != null) { count += s.count; sum += s.sum; } }"
+                    + " return [count, sum];")));
+        final JsonArray value = aggregate(source).getAsJsonObject("checksum").getAsJsonArray("value");
+        return new RangeChecksum(value.get(0).getAsLong(), value.get(1).getAsLong());
+    }
+
+    @Override
+    public List<Stock> findAllInIdRange(long fromId, long toId) {
+        final SearchSourceBuilder source = new SearchSourceBuilder()
+            .query(QueryBuilders.rangeQuery("id").gte(fromId).lt(toId))
+            .size((int) (toId - fromId))
+            .sort(SortBuilders.fieldSort("id").order(SortOrder.ASC));
+        final Search search = new Search.Builder(source.toString())
+            .addIndex(INDEX_NAME)
+            .build();
+        try {
+            final SearchResult result = jestClient.execute(search);
+            checkSucceeded(result, "Search of stocks failed: ");
+            final List<Stock> content = new ArrayList<>();
+            for (String hit : result.getSourceAsStringList()) {
+                content.add(entityMapper.mapToObject(hit, Stock.class));
+            }
+            return content;
+        } catch (IOException e) {
+            throw new ElasticsearchException("Search of stocks failed", e);
+        }
+    }
+
+    private JsonObject aggregate(SearchSourceBuilder source) {
+        final Search search = new Search.Builder(source.toString())
+            .addIndex(INDEX_NAME)
+            .build();
+        try {
+            final SearchResult result = jestClient.execute(search);
+            checkSucceeded(result, "Aggregation of stocks failed: ");
+            return result.getJsonObject().getAsJsonObject("aggregations");
+        } catch (IOException e) {
+            throw new ElasticsearchException("Aggregation of stocks failed", e);
+        }
+    }
+
+    private static void checkSucceeded(JestResult result, String message) {
+        if (result.isSucceeded()) {
+            return;
+        }
+        if (result.getResponseCode() == HttpStatus.BAD_REQUEST.value()) {
+            throw new InvalidSearchException(message + result.getErrorMessage());
+        }
+        throw new ElasticsearchException(message + result.getErrorMessage());
+    }
+}
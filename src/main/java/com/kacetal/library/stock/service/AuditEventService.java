@@ -0,0 +1,25 @@
+package com.kacetal.library.stock.service;
+
+import com.kacetal.library.stock.service.dto.AuditEventCursorPage;
+import org.springframework.boot.actuate.audit.AuditEvent;
+
+import java.time.Instant;
+
+/**
+ * Service Interface for reading the {@link AuditEvent}s.
+ */
+public interface AuditEventService {
+
+    /**
+     * Get a page of the audit events of a principal between two dates, the most recent first.
+     *
+     * @param principal the principal of the events.
+     * @param from      the date from which to get the events, inclusive, or {@code null}.
+     * @param to        the date until which to get the events, exclusive, or {@code null}.
+     * @param size      the maximum number of events of the page.
+     * @param cursor    the cursor returned with the previous page, or {@code null} for the first page.
+     * @return the page of events, with the cursor of the next page.
+     * @throws IllegalArgumentException if the cursor is not valid.
+     */
+    AuditEventCursorPage findByPrincipal(String principal, Instant from, Instant to, int size, String cursor);
+}
@@ -0,0 +1,21 @@
+package com.kacetal.library.stock.service;
+
+import com.kacetal.library.stock.domain.Stock;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Service Interface for exporting every {@link Stock} at once.
+ */
+public interface StockExportService {
+
+    /**
+     * Write all the stocks, ordered by id, streaming them from the database without loading them in memory.
+     *
+     * @param format the format of the export.
+     * @param out    the stream to write to, not closed.
+     * @throws IOException if the stream can't be written.
+     */
+    void export(StockFileFormat format, OutputStream out) throws IOException;
+}
@@ -0,0 +1,70 @@
+package com.kacetal.library.stock.service;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Format of a file holding many {@link com.kacetal.library.stock.domain.Stock}s, for exports and imports.
+ */
+public enum StockFileFormat {
+
+    /**
+     * One JSON object per line, with the same properties as the REST API.
+     */
+    NDJSON("application/x-ndjson"),
+
+    /**
+     * Semicolon separated values, with the layout of the Liquibase fake data.
+     */
+    CSV("text/csv");
+
+    /**
+     * Header of the {@link #CSV} format.
+     */
+    public static final String CSV_HEADER = "id;name;quantity;book_stock_status";
+
+    private final String mediaType;
+
+    StockFileFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String mediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Find a format by name, ignoring case.
+     *
+     * @param name the name of the format, e.g. {@code csv}.
+     * @return the format, or empty if unknown.
+     */
+    public static Optional<StockFileFormat> fromName(String name) {
+        for (StockFileFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Find a format by media type, ignoring its parameters (e.g. the charset).
+     *
+     * @param mediaType the media type, e.g. {@code text/csv; charset=UTF-8}.
+     * @return the format, or empty if unknown.
+     */
+    public static Optional<StockFileFormat> fromMediaType(String mediaType) {
+        if (mediaType == null) {
+            return Optional.empty();
+        }
+        int parameters = mediaType.indexOf(';');
+        String type = (parameters < 0 ? mediaType : mediaType.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+        for (StockFileFormat format : values()) {
+            if (format.mediaType.equals(type)) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,25 @@
+package com.kacetal.library.stock.service;
+
+import com.kacetal.library.stock.service.dto.StockImportReport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Service Interface for importing many {@link com.kacetal.library.stock.domain.Stock}s at once.
+ */
+public interface StockImportService {
+
+    /**
+     * Create a stock for each row of the input, streaming it.
+     * <p>
+     * Rows are validated one by one; the invalid ones are reported and skipped, the others are inserted
+     * and indexed by batches.
+     *
+     * @param format the format of the input.
+     * @param in     the stream to read, not closed.
+     * @return the report of the import.
+     * @throws IOException if the stream can't be read.
+     */
+    StockImportReport importStocks(StockFileFormat format, InputStream in) throws IOException;
+}
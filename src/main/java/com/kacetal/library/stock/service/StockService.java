@@ -2,10 +2,19 @@ package com.kacetal.library.stock.service;
 
 import com.kacetal.library.stock.domain.Stock;
 import com.kacetal.library.stock.domain.enumeration.BookStockStatus;
+import com.kacetal.library.stock.repository.StockRepository;
+import com.kacetal.library.stock.service.dto.StockCursorPage;
+import com.kacetal.library.stock.service.dto.StockPatch;
+import com.kacetal.library.stock.service.dto.StockSearchCriteria;
+import com.kacetal.library.stock.service.dto.StockStats;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Service Interface for managing {@link Stock}.
@@ -20,6 +29,17 @@ public interface StockService {
      */
     Stock save(Stock stock);
 
+    /**
+     * Partially update a stock.
+     * <p>
+     * Only the changed columns are written, and the stock is not reindexed when the patch changes nothing.
+     *
+     * @param id    the id of the entity.
+     * @param patch the properties to change.
+     * @return the updated entity, or empty if not found.
+     */
+    Optional<Stock> partialUpdate(Long id, StockPatch patch);
+
     /**
      * Get all the stocks.
      *
@@ -28,6 +48,23 @@ public interface StockService {
      */
     Page<Stock> findAll(Pageable pageable);
 
+    /**
+     * Get the ids and versions of a page of stocks, to check whether it changed without loading it.
+     *
+     * @param pageable the pagination information.
+     * @return the ids and versions of the entities.
+     */
+    Slice<StockRepository.IdAndVersion> findAllVersions(Pageable pageable);
+
+    /**
+     * Get all the stocks, with only some of their properties.
+     *
+     * @param properties the names of the properties to get.
+     * @param pageable   the pagination information.
+     * @return the list of stocks, as maps of property name to value.
+     */
+    Page<Map<String, Object>> findAll(Set<String> properties, Pageable pageable);
+
     /**
      * Get the "id" stock.
      *
@@ -36,6 +73,14 @@ public interface StockService {
      */
     Optional<Stock> findOne(Long id);
 
+    /**
+     * Get the version of the "id" stock.
+     *
+     * @param id the id of the entity.
+     * @return the version of the entity.
+     */
+    Optional<Long> findVersion(Long id);
+
     /**
      * Delete the "id" stock.
      *
@@ -49,9 +94,54 @@ public interface StockService {
      * @param query    the query of the search.
      * @param pageable the pagination information.
      * @return the list of entities.
+     * @throws com.kacetal.library.stock.repository.search.InvalidSearchException if Elasticsearch rejects the search.
      */
     Page<Stock> search(String query, Pageable pageable);
 
+    /**
+     * Search for the stocks matching typed criteria.
+     *
+     * @param criteria the criteria of the search.
+     * @param pageable the pagination information.
+     * @return the list of entities.
+     * @throws com.kacetal.library.stock.repository.search.InvalidSearchException if Elasticsearch rejects the search.
+     */
+    Page<Stock> search(StockSearchCriteria criteria, Pageable pageable);
+
+    /**
+     * Search for the stock corresponding to the query, one page after the other, by relevance.
+     *
+     * @param query  the query of the search.
+     * @param size   the number of stocks of the page.
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page.
+     * @return the page of entities, with the cursor of the next page; when Elasticsearch is unavailable, the
+     * first page is searched in the database, without a next page.
+     * @throws IllegalArgumentException if the cursor is not valid.
+     * @throws com.kacetal.library.stock.repository.search.InvalidSearchException if Elasticsearch rejects the query.
+     * @throws com.kacetal.library.stock.repository.search.SearchUnavailableException if Elasticsearch is unavailable
+     * and the page is not the first one.
+     */
+    StockCursorPage search(String query, int size, String cursor);
+
+    /**
+     * Suggest the names of stocks starting with a prefix, the most popular first.
+     *
+     * @param prefix the prefix of the names.
+     * @param size   the maximum number of names.
+     * @return the names.
+     */
+    List<String> suggest(String prefix, int size);
+
+    /**
+     * Get the counts of stocks by status and of copies on hand.
+     * <p>
+     * The counts are kept up to date by the writes of this instance and checked against the database
+     * periodically; they are not read from the database on each call.
+     *
+     * @return the counts.
+     */
+    StockStats getStats();
+
     /**
      * Borrow Book from {@link Stock} with specific id.
      *
@@ -60,6 +150,16 @@ public interface StockService {
      */
     Optional<BookStockStatus> borrowBook(Long id);
 
+    /**
+     * Borrow Book from {@link Stock} with specific id, if it still has the expected version.
+     *
+     * @param id              the id of stock.
+     * @param expectedVersion the version of stock, or {@code null} to borrow whatever the version.
+     * @return the Status of Borrow.
+     * @throws org.springframework.dao.OptimisticLockingFailureException if the stock has another version.
+     */
+    Optional<BookStockStatus> borrowBook(Long id, Long expectedVersion);
+
     /**
      * Return Book to {@link Stock} with specific id.
      *
@@ -0,0 +1,28 @@
+package com.kacetal.library.stock.service.dto;
+
+import lombok.Getter;
+import org.springframework.boot.actuate.audit.AuditEvent;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A page of {@link AuditEvent}s walked with a cursor.
+ */
+@Getter
+public class AuditEventCursorPage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<AuditEvent> content;
+
+    /**
+     * Opaque cursor of the next page, {@code null} on the last page.
+     */
+    private final String nextCursor;
+
+    public AuditEventCursorPage(List<AuditEvent> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,18 @@
+package com.kacetal.library.stock.service.dto;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+
+/**
+ * A page of search results from a fallback, less relevant or complete than the normal ones.
+ *
+ * @param <T> the type of the content.
+ */
+public class DegradedPage<T> extends PageImpl<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    public DegradedPage(Page<T> page) {
+        super(page.getContent(), page.getPageable(), page.getTotalElements());
+    }
+}
@@ -0,0 +1,38 @@
+package com.kacetal.library.stock.service.dto;
+
+import com.kacetal.library.stock.domain.Stock;
+import lombok.Getter;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A page of a search of {@link Stock}s walked with a cursor.
+ */
+@Getter
+public class StockCursorPage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Stock> content;
+
+    /**
+     * Opaque cursor of the next page, {@code null} on the last page.
+     */
+    private final String nextCursor;
+
+    /**
+     * Whether the page was searched in the database, Elasticsearch being unavailable: it is then the only one.
+     */
+    private final boolean degraded;
+
+    public StockCursorPage(List<Stock> content, String nextCursor) {
+        this(content, nextCursor, false);
+    }
+
+    public StockCursorPage(List<Stock> content, String nextCursor, boolean degraded) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+        this.degraded = degraded;
+    }
+}
@@ -0,0 +1,59 @@
+package com.kacetal.library.stock.service.dto;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import of {@link com.kacetal.library.stock.domain.Stock}s.
+ */
+@Getter
+@ToString
+public class StockImportReport implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Maximum number of row errors kept in a report, the following ones are only counted.
+     */
+    public static final int MAX_ERRORS = 1000;
+
+    private long imported;
+
+    private long rejected;
+
+    private final List<RowError> errors = new ArrayList<>();
+
+    public void addImported(int count) {
+        imported += count;
+    }
+
+    public void addError(long line, String message) {
+        rejected++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(new RowError(line, message));
+        }
+    }
+
+    /**
+     * A row which could not be imported.
+     */
+    @Getter
+    @ToString
+    public static class RowError implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long line;
+
+        private final String message;
+
+        public RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+    }
+}
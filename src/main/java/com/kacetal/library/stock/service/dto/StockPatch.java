@@ -0,0 +1,82 @@
+package com.kacetal.library.stock.service.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.kacetal.library.stock.domain.Stock;
+import com.kacetal.library.stock.domain.enumeration.BookStockStatus;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A JSON Merge Patch (RFC 7386) of a {@link Stock}.
+ * <p>
+ * Only the properties present in the document are changed, an explicit {@code null} clears one. Jackson only
+ * calls the setters of the properties it reads, which is how a missing property is told apart from a null one.
+ */
+@Getter
+@ToString
+public class StockPatch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    private String name;
+
+    @JsonIgnore
+    private boolean nameSet;
+
+    private Integer quantity;
+
+    @JsonIgnore
+    private boolean quantitySet;
+
+    private BookStockStatus bookStockStatus;
+
+    @JsonIgnore
+    private boolean bookStockStatusSet;
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+        this.nameSet = true;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+        this.quantitySet = true;
+    }
+
+    public void setBookStockStatus(BookStockStatus bookStockStatus) {
+        this.bookStockStatus = bookStockStatus;
+        this.bookStockStatusSet = true;
+    }
+
+    /**
+     * Apply this patch to a stock.
+     *
+     * @param stock the stock to change.
+     * @return {@code true} if a property of the stock has a new value.
+     */
+    public boolean applyTo(Stock stock) {
+        boolean changed = false;
+        if (nameSet && !Objects.equals(name, stock.getName())) {
+            stock.setName(name);
+            changed = true;
+        }
+        if (quantitySet && !Objects.equals(quantity, stock.getQuantity())) {
+            stock.setQuantity(quantity);
+            changed = true;
+        }
+        if (bookStockStatusSet && bookStockStatus != stock.getBookStockStatus()) {
+            stock.setBookStockStatus(bookStockStatus);
+            changed = true;
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,55 @@
+package com.kacetal.library.stock.service.dto;
+
+import com.kacetal.library.stock.domain.enumeration.BookStockStatus;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Size;
+import java.io.Serializable;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Criteria of a typed search of {@link com.kacetal.library.stock.domain.Stock}s.
+ * <p>
+ * The constraints are the cost guard of the search: terms can't start with a wildcard, which would scan
+ * the whole terms dictionary, and the text is limited in length and number of terms.
+ */
+@Getter
+@Setter
+@ToString
+public class StockSearchCriteria implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int MAX_NAME_LENGTH = 100;
+
+    public static final int MAX_NAME_TERMS = 8;
+
+    /**
+     * Text to find in the name; {@code *} and {@code ?} wildcards are allowed inside and at the end of terms.
+     */
+    @Size(max = MAX_NAME_LENGTH)
+    @Pattern.List({
+        @Pattern(regexp = "^(?!(?:.*\\s)?[*?]).*$", flags = Pattern.Flag.DOTALL, message = "must not start a term with a wildcard"),
+        @Pattern(regexp = "^\\s*+(?:\\S++\\s*+){0," + MAX_NAME_TERMS + "}$", message = "must not have more than " + MAX_NAME_TERMS + " terms")
+    })
+    private String name;
+
+    private Set<BookStockStatus> statuses = EnumSet.noneOf(BookStockStatus.class);
+
+    @Min(0)
+    private Integer minQuantity;
+
+    @Min(0)
+    private Integer maxQuantity;
+
+    @AssertTrue(message = "minQuantity must not be greater than maxQuantity")
+    public boolean isQuantityRangeValid() {
+        return minQuantity == null || maxQuantity == null || minQuantity <= maxQuantity;
+    }
+}
@@ -0,0 +1,36 @@
+package com.kacetal.library.stock.service.dto;
+
+import com.kacetal.library.stock.domain.Stock;
+import com.kacetal.library.stock.domain.enumeration.BookStockStatus;
+import lombok.Getter;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Counts of the {@link Stock}s, by status, and of the copies on hand.
+ */
+@Getter
+public class StockStats implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<BookStockStatus, Long> stocksByStatus;
+
+    private final long totalStocks;
+
+    private final long totalQuantity;
+
+    /**
+     * When the counts were last checked against the database; {@code null} before the first check.
+     */
+    private final Instant reconciledAt;
+
+    public StockStats(Map<BookStockStatus, Long> stocksByStatus, long totalStocks, long totalQuantity, Instant reconciledAt) {
+        this.stocksByStatus = stocksByStatus;
+        this.totalStocks = totalStocks;
+        this.totalQuantity = totalQuantity;
+        this.reconciledAt = reconciledAt;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Data Transfer Objects.
+ */
+package com.kacetal.library.stock.service.dto;
@@ -0,0 +1,185 @@
+package com.kacetal.library.stock.service.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.kacetal.library.stock.config.ApplicationProperties;
+import com.kacetal.library.stock.domain.PersistentAuditEvent;
+import com.kacetal.library.stock.repository.AuditEventPartitionRepository;
+import io.github.jhipster.config.JHipsterProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Removes the audit events older than the {@code jhipster.audit-events.retention-period}, a day at a time.
+ * <p>
+ * When the audit tables are partitioned by day, the partitions of the next days are created ahead, so that
+ * their events never go to the default partitions, and the expired days are removed by dropping their
+ * partitions, whatever their number of events; the few expired events of the default partitions are deleted. Otherwise, the expired events are deleted.
+ * <p>
+ * When archiving is enabled, each expired day is first exported to a gzipped NDJSON file, one event with its
+ * data per line, and only removed once its file is complete. A day whose export fails is kept for the next run.
+ */
+@Component
+class AuditEventRetention {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventRetention.class);
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final AuditEventPartitionRepository partitionRepository;
+
+    private final ApplicationProperties.Audit properties;
+
+    private final int retentionPeriod;
+
+    private final TransactionTemplate transactionTemplate;
+
+    AuditEventRetention(AuditEventPartitionRepository partitionRepository, ApplicationProperties applicationProperties,
+                        JHipsterProperties jHipsterProperties, PlatformTransactionManager transactionManager) {
+        this.partitionRepository = partitionRepository;
+        this.properties = applicationProperties.getAudit();
+        this.retentionPeriod = jHipsterProperties.getAuditEvents().getRetentionPeriod();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(cron = "${application.audit.retention-cron:0 30 0 * * *}")
+    public void scheduledRun() {
+        run();
+    }
+
+    /**
+     * Create the partitions of the next days, then archive and remove the expired days.
+     *
+     * @return the removed days, or empty if a run is already in progress.
+     */
+    public List<LocalDate> run() {
+        if (!running.compareAndSet(false, true)) {
+            log.debug("Audit event retention already in progress");
+            return List.of();
+        }
+        try {
+            final LocalDate today = LocalDate.now(ZoneOffset.UTC);
+            final LocalDate firstKept = today.minusDays(retentionPeriod);
+            final List<LocalDate> removed = new ArrayList<>();
+            if (partitionRepository.isPartitioned()) {
+                createPartitions(today);
+                for (LocalDate day : partitionRepository.findPartitionDays()) {
+                    if (day.isBefore(firstKept) && archive("audit-events-" + day, day, day.plusDays(1))) {
+                        transactionTemplate.executeWithoutResult(status -> partitionRepository.dropPartition(day));
+                        removed.add(day);
+                    }
+                }
+                // The default partitions only have the events out of the created days
+                if (archive("audit-events-before-" + firstKept, null, firstKept)) {
+                    transactionTemplate.execute(status -> partitionRepository.deleteBefore(firstKept));
+                }
+            } else {
+                final LocalDate oldest = partitionRepository.findOldestDay().orElse(firstKept);
+                for (LocalDate day = oldest; day.isBefore(firstKept); day = day.plusDays(1)) {
+                    final LocalDate end = day.plusDays(1);
+                    // The events without date are archived with the oldest ones
+                    if (!archive("audit-events-" + day, day.equals(oldest) ? null : day, end)) {
+                        break;
+                    }
+                    transactionTemplate.execute(status -> partitionRepository.deleteBefore(end));
+                    removed.add(day);
+                }
+            }
+            log.info("Removed {} days of audit events before {}", removed.size(), firstKept);
+            return removed;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void createPartitions(LocalDate today) {
+        for (int i = 0; i <= properties.getPartitionsAhead(); i++) {
+            final LocalDate day = today.plusDays(i);
+            try {
+                transactionTemplate.executeWithoutResult(status -> partitionRepository.createPartition(day));
+            } catch (RuntimeException e) {
+                // Tried again on the next run, the events of that day going to the default partition meanwhile
+                log.warn("Could not create the audit event partition of {}: {}", day, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Export the events of a range of days to a file, if archiving is enabled.
+     *
+     * @param prefix the name of the file, without extension.
+     * @param from   the first day, inclusive, or {@code null} for the events without date and the oldest ones.
+     * @param to     the last day, exclusive.
+     * @return whether the events can be removed.
+     */
+    private boolean archive(String prefix, LocalDate from, LocalDate to) {
+        if (!properties.isArchive()) {
+            return true;
+        }
+        final Path directory = Paths.get(properties.getArchiveDirectory());
+        final String name = prefix + ".ndjson.gz";
+        try {
+            Files.createDirectories(directory);
+            final Path temporary = Files.createTempFile(directory, name, ".tmp");
+            final int[] count = new int[1];
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporary));
+                 JsonGenerator generator = JSON.createGenerator(out)) {
+                generator.setRootValueSeparator(null);
+                transactionTemplate.executeWithoutResult(status -> partitionRepository.forEachEvent(from, to, event -> {
+                    write(generator, event);
+                    count[0]++;
+                }));
+            }
+            if (count[0] == 0) {
+                Files.delete(temporary);
+            } else {
+                Files.move(temporary, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                log.info("Archived {} audit events to {}", count[0], directory.resolve(name));
+            }
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Could not archive the audit events to {}, they are kept", directory.resolve(name), e);
+            return false;
+        }
+    }
+
+    private static void write(JsonGenerator generator, PersistentAuditEvent event) {
+        try {
+            generator.writeStartObject();
+            generator.writeNumberField("id", event.getId());
+            generator.writeStringField("principal", event.getPrincipal());
+            generator.writeStringField("date", event.getAuditEventDate() == null ? null : event.getAuditEventDate().toString());
+            generator.writeStringField("type", event.getAuditEventType());
+            generator.writeObjectFieldStart("data");
+            for (Map.Entry<String, String> data : event.getData().entrySet()) {
+                generator.writeStringField(data.getKey(), data.getValue());
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.kacetal.library.stock.service.impl;
+
+import com.kacetal.library.stock.config.audit.AuditEventConverter;
+import com.kacetal.library.stock.domain.PersistentAuditEvent;
+import com.kacetal.library.stock.repository.CustomAuditEventRepository;
+import com.kacetal.library.stock.service.AuditEventService;
+import com.kacetal.library.stock.service.dto.AuditEventCursorPage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Service Implementation for reading the audit events.
+ * <p>
+ * Pages are walked with a cursor made of the date and id of their last event rather than with an offset,
+ * so that reading the years old events costs as much as reading the last ones.
+ */
+@Service
+public class AuditEventServiceImpl implements AuditEventService {
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventServiceImpl.class);
+
+    private final CustomAuditEventRepository auditEventRepository;
+
+    private final AuditEventConverter auditEventConverter;
+
+    public AuditEventServiceImpl(CustomAuditEventRepository auditEventRepository, AuditEventConverter auditEventConverter) {
+        this.auditEventRepository = auditEventRepository;
+        this.auditEventConverter = auditEventConverter;
+    }
+
+    @Override
+    public AuditEventCursorPage findByPrincipal(String principal, Instant from, Instant to, int size, String cursor) {
+        log.debug("Request to get a page of {} AuditEvents of {} from {} to {} after {}", size, principal, from, to, cursor);
+        final Instant afterDate;
+        final Long afterId;
+        if (cursor == null || cursor.isEmpty()) {
+            afterDate = null;
+            afterId = null;
+        } else {
+            final String[] values = decodeCursor(cursor);
+            try {
+                afterDate = Instant.ofEpochSecond(Long.parseLong(values[0]), Long.parseLong(values[1]));
+                afterId = Long.parseLong(values[2]);
+            } catch (NumberFormatException | DateTimeException | ArithmeticException e) {
+                // A crafted cursor can hold numbers out of the range of the dates
+                throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+            }
+        }
+        // One more event than asked tells whether there is a next page
+        final List<PersistentAuditEvent> events = auditEventRepository.findPage(principal, from, to, afterDate, afterId, size + 1);
+        String nextCursor = null;
+        if (events.size() > size) {
+            events.subList(size, events.size()).clear();
+            final PersistentAuditEvent last = events.get(size - 1);
+            nextCursor = encodeCursor(last.getAuditEventDate(), last.getId());
+        }
+        return new AuditEventCursorPage(auditEventConverter.convertToAuditEvent(events), nextCursor);
+    }
+
+    /**
+     * Encode the date and id of an event as an opaque cursor.
+     */
+    static String encodeCursor(Instant date, Long id) {
+        final String value = date.getEpochSecond() + ":" + date.getNano() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String[] decodeCursor(String cursor) {
+        final String[] values = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+        if (values.length != 3) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor);
+        }
+        return values;
+    }
+}
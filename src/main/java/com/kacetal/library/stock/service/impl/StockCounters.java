@@ -0,0 +1,131 @@
+package com.kacetal.library.stock.service.impl;
+
+import com.kacetal.library.stock.domain.enumeration.BookStockStatus;
+import com.kacetal.library.stock.service.dto.StockStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Counts of the stocks by status and of the copies on hand, kept in memory.
+ * <p>
+ * The write paths report how they changed a stock once their transaction is committed, and the counts
+ * are replaced by an aggregate query of the database periodically, which repairs the changes made on the
+ * other instances and the ones raced by the previous query. The counts are immutable snapshots swapped
+ * atomically, so a read is consistent and doesn't depend on the size of the catalogue.
+ */
+@Component
+class StockCounters {
+
+    private static final BookStockStatus[] STATUSES = BookStockStatus.values();
+
+    private final Logger log = LoggerFactory.getLogger(StockCounters.class);
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(new Snapshot(new long[STATUSES.length], 0, null));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    StockCounters(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Record the change of a stock, once the current transaction is committed.
+     *
+     * @param previousStatus   the status before the change, {@code null} for a created stock.
+     * @param previousQuantity the quantity before the change, {@code null} for a created stock.
+     * @param status           the status after the change, {@code null} for a deleted stock.
+     * @param quantity         the quantity after the change, {@code null} for a deleted stock.
+     */
+    void changed(BookStockStatus previousStatus, Integer previousQuantity, BookStockStatus status, Integer quantity) {
+        if (previousStatus == status && Objects.equals(previousQuantity, quantity)) {
+            return;
+        }
+        AfterCommit.run(() -> snapshot.updateAndGet(current ->
+            current.plus(previousStatus, previousQuantity, -1).plus(status, quantity, 1)));
+    }
+
+    StockStats get() {
+        return snapshot.get().toStats();
+    }
+
+    /**
+     * Replace the counts by the ones of the database.
+     */
+    @Scheduled(fixedDelayString = "${application.stats.reconcile-interval:PT5M}")
+    public void reconcile() {
+        final long[] stocks = new long[STATUSES.length];
+        final long[] quantity = new long[1];
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(
+                "select book_stock_status, count(*), coalesce(sum(quantity), 0) from stock group by book_stock_status",
+                resultSet -> {
+                    stocks[BookStockStatus.fromCode(resultSet.getShort(1)).ordinal()] = resultSet.getLong(2);
+                    quantity[0] += resultSet.getLong(3);
+                }));
+        } catch (RuntimeException e) {
+            log.warn("Could not reconcile the counts of stocks: {}", e.toString());
+            return;
+        }
+        final Snapshot reconciled = new Snapshot(stocks, quantity[0], Instant.now());
+        final Snapshot previous = snapshot.getAndSet(reconciled);
+        if (previous.reconciledAt != null && !previous.sameCounts(reconciled)) {
+            log.debug("Reconciled the counts of stocks from {} to {}", previous.toStats().getStocksByStatus(),
+                reconciled.toStats().getStocksByStatus());
+        }
+    }
+
+    private static final class Snapshot {
+
+        private final long[] stocks;
+
+        private final long quantity;
+
+        private final Instant reconciledAt;
+
+        Snapshot(long[] stocks, long quantity, Instant reconciledAt) {
+            this.stocks = stocks;
+            this.quantity = quantity;
+            this.reconciledAt = reconciledAt;
+        }
+
+        Snapshot plus(BookStockStatus status, Integer quantity, int sign) {
+            if (status == null) {
+                return this;
+            }
+            final long[] changed = stocks.clone();
+            changed[status.ordinal()] += sign;
+            return new Snapshot(changed, this.quantity + sign * (quantity == null ? 0L : quantity), reconciledAt);
+        }
+
+        boolean sameCounts(Snapshot other) {
+            return quantity == other.quantity && Arrays.equals(stocks, other.stocks);
+        }
+
+        StockStats toStats() {
+            final Map<BookStockStatus, Long> byStatus = new EnumMap<>(BookStockStatus.class);
+            long total = 0;
+            for (BookStockStatus status : STATUSES) {
+                byStatus.put(status, stocks[status.ordinal()]);
+                total += stocks[status.ordinal()];
+            }
+            return new StockStats(Collections.unmodifiableMap(byStatus), total, quantity, reconciledAt);
+        }
+    }
+}
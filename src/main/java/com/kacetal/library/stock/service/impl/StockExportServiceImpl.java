@@ -0,0 +1,135 @@
+package com.kacetal.library.stock.service.impl;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kacetal.library.stock.config.datasource.BatchWorkload;
+import com.kacetal.library.stock.domain.enumeration.BookStockStatus;
+import com.kacetal.library.stock.service.StockExportService;
+import com.kacetal.library.stock.service.StockFileFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * Service Implementation for exporting every {@link com.kacetal.library.stock.domain.Stock}.
+ * <p>
+ * Rows are read through a forward-only cursor with a bounded fetch size and written as soon as they are read,
+ * so the memory used doesn't depend on the number of stocks.
+ */
+@Service
+@BatchWorkload
+@Transactional(readOnly = true)
+public class StockExportServiceImpl implements StockExportService {
+
+    static final String EXPORT_QUERY = "select id, name, quantity, book_stock_status from stock order by id";
+
+    private static final int FETCH_SIZE = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(StockExportServiceImpl.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    public StockExportServiceImpl(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Export all the stocks.
+     *
+     * @param format the format of the export.
+     * @param out    the stream to write to.
+     */
+    @Override
+    public void export(StockFileFormat format, OutputStream out) throws IOException {
+        log.debug("Request to export all Stocks as {}", format);
+        try {
+            if (format == StockFileFormat.CSV) {
+                exportCsv(out);
+            } else {
+                exportNdjson(out);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void exportNdjson(OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setPrettyPrinter(null);
+            stream(rs -> {
+                try {
+                    generator.writeStartObject();
+                    generator.writeNumberField("id", rs.getLong(1));
+                    generator.writeStringField("name", rs.getString(2));
+                    generator.writeNumberField("quantity", rs.getInt(3));
+                    generator.writeStringField("bookStockStatus", BookStockStatus.fromCode(rs.getShort(4)).name());
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private void exportCsv(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(StockFileFormat.CSV_HEADER);
+        writer.write('\n');
+        stream(rs -> {
+            try {
+                writer.write(Long.toString(rs.getLong(1)));
+                writer.write(';');
+                writeCsvValue(writer, rs.getString(2));
+                writer.write(';');
+                writer.write(Integer.toString(rs.getInt(3)));
+                writer.write(';');
+                writer.write(BookStockStatus.fromCode(rs.getShort(4)).name());
+                writer.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+    }
+
+    private void stream(RowCallbackHandler handler) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(EXPORT_QUERY,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(FETCH_SIZE);
+            return statement;
+        }, handler);
+    }
+
+    private static void writeCsvValue(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(';') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
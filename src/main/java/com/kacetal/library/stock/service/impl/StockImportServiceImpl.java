@@ -0,0 +1,269 @@
+package com.kacetal.library.stock.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.kacetal.library.stock.config.datasource.BatchWorkload;
+import com.kacetal.library.stock.domain.Stock;
+import com.kacetal.library.stock.domain.enumeration.BookStockStatus;
+import com.kacetal.library.stock.repository.search.StockSearchRepository;
+import com.kacetal.library.stock.service.StockFileFormat;
+import com.kacetal.library.stock.service.StockImportService;
+import com.kacetal.library.stock.service.dto.StockImportReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+import org.springframework.jdbc.support.incrementer.H2SequenceMaxValueIncrementer;
+import org.springframework.jdbc.support.incrementer.PostgreSQLSequenceMaxValueIncrementer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Service Implementation for importing many {@link Stock}s at once.
+ * <p>
+ * Rows are inserted with JDBC batches of {@value #BATCH_SIZE}, the increment of the {@code sequence_generator}
+ * sequence: each batch takes its ids from a single {@code nextval}, in the same way as the Hibernate pooled
+ * optimizer, so the imported stocks never collide with the ones created through JPA.
+ */
+@Service
+@BatchWorkload
+public class StockImportServiceImpl implements StockImportService {
+
+    static final int BATCH_SIZE = 50;
+
+    private static final String SEQUENCE_NAME = "sequence_generator";
+
+    private static final String INSERT_QUERY = "insert into stock (id, name, quantity, book_stock_status) values (?, ?, ?, ?)";
+
+    private final Logger log = LoggerFactory.getLogger(StockImportServiceImpl.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Validator validator;
+
+    private final ObjectReader stockReader;
+
+    private final StockSearchRepository stockSearchRepository;
+
+    private final StockSearchCache stockSearchCache;
+
+    private final StockNameIndex stockNameIndex;
+
+    private final StockCounters stockCounters;
+
+    private volatile DataFieldMaxValueIncrementer sequence;
+
+    public StockImportServiceImpl(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, Validator validator,
+                                  ObjectMapper objectMapper, StockSearchRepository stockSearchRepository,
+                                  StockSearchCache stockSearchCache, StockNameIndex stockNameIndex,
+                                  StockCounters stockCounters) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.validator = validator;
+        this.stockReader = objectMapper.readerFor(Stock.class);
+        this.stockSearchRepository = stockSearchRepository;
+        this.stockSearchCache = stockSearchCache;
+        this.stockNameIndex = stockNameIndex;
+        this.stockCounters = stockCounters;
+    }
+
+    /**
+     * Import stocks.
+     *
+     * @param format the format of the input.
+     * @param in     the stream to read.
+     * @return the report of the import.
+     */
+    @Override
+    public StockImportReport importStocks(StockFileFormat format, InputStream in) throws IOException {
+        log.debug("Request to import Stocks from {}", format);
+        final StockImportReport report = new StockImportReport();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        final List<Stock> batch = new ArrayList<>(BATCH_SIZE);
+        final List<Long> batchLines = new ArrayList<>(BATCH_SIZE);
+        long lineNumber = 0;
+        String line;
+        if (format == StockFileFormat.CSV) {
+            line = reader.readLine();
+            lineNumber++;
+            if (line == null || !StockFileFormat.CSV_HEADER.equals(line.trim())) {
+                report.addError(lineNumber, "Invalid header, expected: " + StockFileFormat.CSV_HEADER);
+                return report;
+            }
+        }
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            final Stock stock;
+            try {
+                stock = format == StockFileFormat.CSV ? parseCsv(line) : stockReader.readValue(line);
+            } catch (IOException | IllegalArgumentException e) {
+                report.addError(lineNumber, "Unreadable row: " + e.getMessage());
+                continue;
+            }
+            final String violations = validate(stock);
+            if (violations != null) {
+                report.addError(lineNumber, violations);
+                continue;
+            }
+            batch.add(stock);
+            batchLines.add(lineNumber);
+            if (batch.size() == BATCH_SIZE) {
+                flush(batch, batchLines, report);
+            }
+        }
+        flush(batch, batchLines, report);
+        log.debug("Imported {} Stocks, rejected {}", report.getImported(), report.getRejected());
+        return report;
+    }
+
+    private String validate(Stock stock) {
+        if (stock.getId() != null) {
+            return "A new stock cannot already have an ID";
+        }
+        final Set<ConstraintViolation<Stock>> violations = validator.validate(stock);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+            .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+            .sorted()
+            .collect(Collectors.joining(", "));
+    }
+
+    private void flush(List<Stock> batch, List<Long> batchLines, StockImportReport report) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long id = sequence().nextLongValue() - BATCH_SIZE + 1;
+        for (Stock stock : batch) {
+            stock.setId(id++);
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.batchUpdate(INSERT_QUERY, batch, batch.size(), StockImportServiceImpl::setValues));
+            report.addImported(batch.size());
+            index(batch);
+        } catch (DataAccessException e) {
+            log.debug("Batch insert failed, inserting its rows one by one: {}", e.getMessage());
+            final List<Stock> inserted = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                final Stock stock = batch.get(i);
+                try {
+                    transactionTemplate.executeWithoutResult(status ->
+                        jdbcTemplate.update(INSERT_QUERY, ps -> setValues(ps, stock)));
+                    inserted.add(stock);
+                } catch (DataAccessException rowException) {
+                    report.addError(batchLines.get(i), rowException.getMostSpecificCause().getMessage());
+                }
+            }
+            report.addImported(inserted.size());
+            index(inserted);
+        }
+        batch.clear();
+        batchLines.clear();
+    }
+
+    private void index(List<Stock> stocks) {
+        if (stocks.isEmpty()) {
+            return;
+        }
+        stocks.forEach(stock -> {
+            stockNameIndex.put(stock.getId(), stock.getName());
+            stockCounters.changed(null, null, stock.getBookStockStatus(), stock.getQuantity());
+        });
+        try {
+            stockSearchRepository.saveAll(stocks);
+            stockSearchCache.indexChanged(stocks.stream().map(Stock::getId).collect(Collectors.toList()));
+        } catch (RuntimeException e) {
+            log.warn("Could not index {} imported Stocks: {}", stocks.size(), e.getMessage());
+        }
+    }
+
+    private DataFieldMaxValueIncrementer sequence() {
+        if (sequence == null) {
+            final String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+            if ("H2".equals(database)) {
+                sequence = new H2SequenceMaxValueIncrementer(jdbcTemplate.getDataSource(), SEQUENCE_NAME);
+            } else if ("PostgreSQL".equals(database)) {
+                sequence = new PostgreSQLSequenceMaxValueIncrementer(jdbcTemplate.getDataSource(), SEQUENCE_NAME);
+            } else {
+                throw new IllegalStateException("Unsupported database for the stock import: " + database);
+            }
+        }
+        return sequence;
+    }
+
+    private static void setValues(PreparedStatement ps, Stock stock) throws SQLException {
+        ps.setLong(1, stock.getId());
+        if (stock.getName() == null) {
+            ps.setNull(2, Types.VARCHAR);
+        } else {
+            ps.setString(2, stock.getName());
+        }
+        ps.setInt(3, stock.getQuantity());
+        ps.setShort(4, stock.getBookStockStatus().code());
+    }
+
+    /**
+     * Parse a row of the {@link StockFileFormat#CSV} format, as written by the export.
+     */
+    static Stock parseCsv(String line) {
+        final List<String> values = new ArrayList<>(4);
+        final StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ';') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        if (values.size() != 4) {
+            throw new IllegalArgumentException("expected 4 values, found " + values.size());
+        }
+        final Stock stock = new Stock();
+        stock.setId(values.get(0).isBlank() ? null : Long.valueOf(values.get(0).trim()));
+        stock.setName(values.get(1).isEmpty() ? null : values.get(1));
+        stock.setQuantity(values.get(2).isBlank() ? null : Integer.valueOf(values.get(2).trim()));
+        stock.setBookStockStatus(values.get(3).isBlank() ? null : BookStockStatus.valueOf(values.get(3).trim()));
+        return stock;
+    }
+}
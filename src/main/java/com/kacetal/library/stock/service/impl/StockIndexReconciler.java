@@ -0,0 +1,325 @@
+package com.kacetal.library.stock.service.impl;
+
+import com.kacetal.library.stock.config.ApplicationProperties;
+import com.kacetal.library.stock.domain.Stock;
+import com.kacetal.library.stock.repository.RangeChecksum;
+import com.kacetal.library.stock.repository.StockRepository;
+import com.kacetal.library.stock.repository.search.StockSearchRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Range;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Repairs the drift between the stocks of the database and the ones of Elasticsearch, which are written
+ * separately.
+ * <p>
+ * The id space is split into ranges whose checksums are compared on both sides, the Elasticsearch one
+ * being computed by a scripted aggregation so that no document is transferred. A mismatched range is split
+ * again until it is small enough to be read from both sides; only then are its stocks compared and the
+ * differences reindexed or deleted from the database, which is the reference. The ranges are checked in
+ * parallel by a fixed number of threads, which block on both stores and on the throttle of the number of
+ * checksums per second: a split range queues its parts rather than waiting for them.
+ * <p>
+ * A stock changed while its range is repaired may be indexed from a state older than the one written by the
+ * change; the next run repairs it.
+ */
+@Component
+class StockIndexReconciler {
+
+    private final Logger log = LoggerFactory.getLogger(StockIndexReconciler.class);
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final StockRepository stockRepository;
+
+    private final StockSearchRepository stockSearchRepository;
+
+    private final StockSearchCache stockSearchCache;
+
+    private final ApplicationProperties.Reconciler properties;
+
+    private final TransactionTemplate checksumTransaction;
+
+    private final TransactionTemplate repairTransaction;
+
+    StockIndexReconciler(StockRepository stockRepository, StockSearchRepository stockSearchRepository,
+                         StockSearchCache stockSearchCache, ApplicationProperties applicationProperties,
+                         PlatformTransactionManager transactionManager) {
+        this.stockRepository = stockRepository;
+        this.stockSearchRepository = stockSearchRepository;
+        this.stockSearchCache = stockSearchCache;
+        this.properties = applicationProperties.getReconciler();
+        // Checksums may be computed on a replica; the stocks to repair are read from the primary
+        this.checksumTransaction = new TransactionTemplate(transactionManager);
+        this.checksumTransaction.setReadOnly(true);
+        this.repairTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(cron = "${application.reconciler.cron:-}")
+    public void scheduledReconcile() {
+        reconcile();
+    }
+
+    /**
+     * Compare the database and Elasticsearch, and repair the mismatched stocks.
+     *
+     * @return the report of the run, or empty if a run is already in progress.
+     */
+    Optional<Report> reconcile() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Reconciliation of the stock index already in progress");
+            return Optional.empty();
+        }
+        final long start = System.nanoTime();
+        final AtomicInteger threads = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(properties.getParallelism(), runnable -> {
+            final Thread thread = new Thread(runnable, "stock-index-reconciler-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final Run run = new Run(executor);
+        try {
+            final Optional<Range<Long>> databaseIds = checksumTransaction.execute(status -> stockRepository.findIdRange());
+            final Optional<Range<Long>> indexIds = stockSearchRepository.findIdRange();
+            if (databaseIds.isEmpty() && indexIds.isEmpty()) {
+                return Optional.of(run.report(System.nanoTime() - start));
+            }
+            final long first = Math.min(lowerBound(databaseIds, Long.MAX_VALUE), lowerBound(indexIds, Long.MAX_VALUE));
+            final long last = Math.max(upperBound(databaseIds, Long.MIN_VALUE), upperBound(indexIds, Long.MIN_VALUE));
+
+            for (long from = first; from <= last; from += properties.getRangeSize()) {
+                run.submit(new RangeTask(run, from, Math.min(from + properties.getRangeSize(), last + 1)));
+            }
+            run.await();
+            final Report report = run.report(System.nanoTime() - start);
+            log.info("Reconciled the stock index: {}", report);
+            return Optional.of(report);
+        } catch (RuntimeException e) {
+            log.warn("Could not reconcile the stock index: {}", e.toString());
+            return Optional.of(run.report(System.nanoTime() - start));
+        } finally {
+            executor.shutdownNow();
+            running.set(false);
+        }
+    }
+
+    private static long lowerBound(Optional<Range<Long>> ids, long defaultValue) {
+        return ids.flatMap(range -> range.getLowerBound().getValue()).orElse(defaultValue);
+    }
+
+    private static long upperBound(Optional<Range<Long>> ids, long defaultValue) {
+        return ids.flatMap(range -> range.getUpperBound().getValue()).orElse(defaultValue);
+    }
+
+    /**
+     * Compare the stocks of a leaf range one by one, and repair the index.
+     */
+    private void repair(Run run, long fromId, long toId) {
+        final Map<Long, Long> indexed = stockSearchRepository.findAllInIdRange(fromId, toId).stream()
+            .collect(Collectors.toMap(Stock::getId, RangeChecksum::hash));
+        final List<Stock> stocks = repairTransaction.execute(status -> stockRepository.findAllInIdRange(fromId, toId));
+
+        final List<Stock> toIndex = new ArrayList<>();
+        for (Stock stock : stocks) {
+            final Long hash = indexed.remove(stock.getId());
+            if (hash == null || hash != RangeChecksum.hash(stock)) {
+                toIndex.add(stock);
+            }
+        }
+        // What is left is no longer in the database
+        final List<Long> toDelete = new ArrayList<>(indexed.keySet());
+
+        if (!toIndex.isEmpty()) {
+            stockSearchRepository.saveAll(toIndex);
+            run.reindexed.addAndGet(toIndex.size());
+        }
+        toDelete.forEach(stockSearchRepository::deleteById);
+        run.deleted.addAndGet(toDelete.size());
+        if (!toIndex.isEmpty() || !toDelete.isEmpty()) {
+            final List<Long> changed = toIndex.stream().map(Stock::getId).collect(Collectors.toList());
+            changed.addAll(toDelete);
+            stockSearchCache.indexChanged(changed);
+            log.debug("Repaired ids [{}, {}) of the stock index: {} reindexed, {} deleted", fromId, toId, toIndex.size(), toDelete.size());
+        }
+    }
+
+    /**
+     * Checks a range of ids, and either repairs it or splits it if the checksums don't match.
+     */
+    private final class RangeTask implements Runnable {
+
+        private final Run run;
+
+        private final long fromId;
+
+        private final long toId;
+
+        RangeTask(Run run, long fromId, long toId) {
+            this.run = run;
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        @Override
+        public void run() {
+            try {
+                run.throttle(properties.getMaxChecksumsPerSecond());
+                final RangeChecksum database = checksumTransaction.execute(status -> stockRepository.checksum(fromId, toId));
+                final RangeChecksum index = stockSearchRepository.checksum(fromId, toId);
+                run.checked.incrementAndGet();
+                if (database.equals(index)) {
+                    return;
+                }
+                run.mismatched.incrementAndGet();
+                if (toId - fromId <= properties.getLeafSize()) {
+                    repair(run, fromId, toId);
+                    return;
+                }
+                final long step = Math.max(properties.getLeafSize(), (toId - fromId + properties.getFanOut() - 1) / properties.getFanOut());
+                for (long from = fromId; from < toId; from += step) {
+                    run.submit(new RangeTask(run, from, Math.min(from + step, toId)));
+                }
+            } catch (RuntimeException e) {
+                run.failed.incrementAndGet();
+                log.warn("Could not reconcile ids [{}, {}) of the stock index: {}", fromId, toId, e.toString());
+            }
+        }
+    }
+
+    /**
+     * State of a run, shared by its tasks.
+     */
+    private static final class Run {
+
+        private final ExecutorService executor;
+
+        /**
+         * Number of tasks submitted and not done, plus one until all the first ranges are submitted.
+         */
+        private final AtomicLong pending = new AtomicLong(1);
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private final AtomicLong nextChecksum = new AtomicLong(System.nanoTime());
+
+        private final AtomicLong checked = new AtomicLong();
+
+        private final AtomicLong mismatched = new AtomicLong();
+
+        private final AtomicLong reindexed = new AtomicLong();
+
+        private final AtomicLong deleted = new AtomicLong();
+
+        private final AtomicLong failed = new AtomicLong();
+
+        Run(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        void submit(Runnable task) {
+            pending.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    finished();
+                }
+            });
+        }
+
+        /**
+         * Wait for all the tasks, including the ones they submit.
+         */
+        void await() {
+            finished();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while reconciling", e);
+            }
+        }
+
+        private void finished() {
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+
+        /**
+         * Wait for the next of the evenly spaced slots of the checksums.
+         */
+        void throttle(int maxPerSecond) {
+            if (maxPerSecond <= 0) {
+                return;
+            }
+            final long interval = TimeUnit.SECONDS.toNanos(1) / maxPerSecond;
+            final long now = System.nanoTime();
+            final long slot = nextChecksum.getAndAccumulate(now, (next, current) -> Math.max(next, current) + interval);
+            final long wait = Math.max(slot, now) - now;
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while throttled", e);
+                }
+            }
+        }
+
+        Report report(long elapsedNanos) {
+            return new Report(checked.get(), mismatched.get(), reindexed.get(), deleted.get(), failed.get(),
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        }
+    }
+
+    /**
+     * Outcome of a run.
+     */
+    static final class Report {
+
+        final long checkedRanges;
+
+        final long mismatchedRanges;
+
+        final long reindexed;
+
+        final long deleted;
+
+        final long failedRanges;
+
+        final long elapsedMillis;
+
+        Report(long checkedRanges, long mismatchedRanges, long reindexed, long deleted, long failedRanges, long elapsedMillis) {
+            this.checkedRanges = checkedRanges;
+            this.mismatchedRanges = mismatchedRanges;
+            this.reindexed = reindexed;
+            this.deleted = deleted;
+            this.failedRanges = failedRanges;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return checkedRanges + " ranges checked, " + mismatchedRanges + " mismatched, " + reindexed + " stocks reindexed, "
+                + deleted + " deleted, " + failedRanges + " ranges failed, in " + elapsedMillis + " ms";
+        }
+    }
+}
@@ -0,0 +1,505 @@
+package com.kacetal.library.stock.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory prefix index of the stock names, serving the suggestions of the type-ahead.
+ * <p>
+ * Names are normalized (accents, case and whitespace) into a radix trie, whose edges hold the runs of characters
+ * shared by the names, and whose nodes each keep their {@value #MAX_SUGGESTIONS} most popular names, so a
+ * suggestion is a walk down the prefix and a copy. The popularity of a stock is the number of times it was
+ * borrowed since the start of the instance, forgotten once it is deleted.
+ * <p>
+ * The index is changed by the write paths once their transaction is committed: a change updates the suggestions
+ * along the path of its name only, and stops at the first node whose suggestions it leaves unchanged. The index is
+ * refreshed in place from the database periodically, to catch up with the writes done on other instances. Readers
+ * never lock: a node is published safely and, once reachable, only its children and suggestions change; only the
+ * writers are serialized.
+ */
+@Component
+class StockNameIndex {
+
+    static final int MAX_SUGGESTIONS = 10;
+
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Comparator<Suggestion> BY_POPULARITY = Comparator
+        .comparingLong((Suggestion suggestion) -> suggestion.popularity).reversed()
+        .thenComparing(suggestion -> suggestion.name)
+        .thenComparing(suggestion -> suggestion.key);
+
+    private final Logger log = LoggerFactory.getLogger(StockNameIndex.class);
+
+    private final Object lock = new Object();
+
+    private final Map<Long, Long> popularity = new ConcurrentHashMap<>();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Node root = new Node(null, "", 0);
+
+    /**
+     * Entry of each indexed stock, by id; changed under the lock, read without it to skip the unchanged names.
+     */
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Number of the current, or last, rebuild; guarded by the lock.
+     */
+    private int rebuilds;
+
+    /**
+     * Stocks removed while a rebuild reads the database, which it must not add back; guarded by the lock.
+     */
+    private Set<Long> removedDuringRebuild;
+
+    StockNameIndex(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Suggest the most popular names starting with a prefix.
+     *
+     * @param prefix the prefix, normalized like the names.
+     * @param size   the maximum number of suggestions, at most {@value #MAX_SUGGESTIONS}.
+     * @return the names, the most popular first.
+     */
+    List<String> suggest(String prefix, int size) {
+        final String key = normalize(prefix);
+        if (key.isEmpty()) {
+            return List.of();
+        }
+        Node node = root;
+        int depth = 0;
+        while (depth < key.length()) {
+            node = node.children.get(key.charAt(depth));
+            if (node == null) {
+                return List.of();
+            }
+            // The prefix may end inside the label of the node
+            final int end = Math.min(node.key.length(), key.length());
+            if (!key.regionMatches(depth, node.key, depth, end - depth)) {
+                return List.of();
+            }
+            depth = end;
+        }
+        return node.suggestions.stream().limit(size).map(suggestion -> suggestion.name).collect(Collectors.toList());
+    }
+
+    /**
+     * Record the name of a stock, created or updated.
+     */
+    void put(Long id, String name) {
+        AfterCommit.run(() -> {
+            final Entry entry = entries.get(id);
+            if (Objects.equals(entry == null ? null : entry.name, name)) {
+                // Most updates of a stock don't rename it
+                return;
+            }
+            synchronized (lock) {
+                doPut(id, name, rebuilds);
+            }
+        });
+    }
+
+    /**
+     * Forget a deleted stock.
+     */
+    void remove(Long id) {
+        AfterCommit.run(() -> {
+            synchronized (lock) {
+                if (removedDuringRebuild != null) {
+                    removedDuringRebuild.add(id);
+                }
+                doRemove(id);
+                popularity.remove(id);
+            }
+        });
+    }
+
+    /**
+     * Record a borrow of a stock, which makes it more popular.
+     */
+    void borrowed(Long id) {
+        AfterCommit.run(() -> {
+            synchronized (lock) {
+                final Entry entry = entries.get(id);
+                final Suggestion before = entry == null ? null : entry.node.own();
+                popularity.merge(id, 1L, Long::sum);
+                if (entry != null) {
+                    update(entry.node, before);
+                }
+            }
+        });
+    }
+
+    /**
+     * Rebuild the index from the database.
+     * <p>
+     * The names read are applied to the index in place, batch by batch, rather than to a copy of the index: the
+     * memory doesn't double, and only the renamed stocks change the trie. The stocks changed by the write paths
+     * since the rebuild started are left alone, what they wrote is more recent than what was read.
+     */
+    @Scheduled(fixedDelayString = "${application.suggest.rebuild-interval:PT10M}")
+    public void rebuild() {
+        final int rebuild;
+        synchronized (lock) {
+            rebuild = ++rebuilds;
+            removedDuringRebuild = new HashSet<>();
+        }
+        final List<Long> ids = new ArrayList<>(REBUILD_BATCH_SIZE);
+        final List<String> names = new ArrayList<>(REBUILD_BATCH_SIZE);
+        try {
+            // Fetched by batches, in a transaction for PostgreSQL to use a cursor, not to load the whole table
+            transactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.query(connection -> {
+                    final PreparedStatement statement = connection.prepareStatement("select id, name from stock where name is not null");
+                    statement.setFetchSize(REBUILD_BATCH_SIZE);
+                    return statement;
+                }, resultSet -> {
+                    ids.add(resultSet.getLong(1));
+                    names.add(resultSet.getString(2));
+                    if (ids.size() == REBUILD_BATCH_SIZE) {
+                        apply(ids, names, rebuild);
+                    }
+                }));
+            apply(ids, names, rebuild);
+        } catch (RuntimeException e) {
+            log.warn("Could not rebuild the index of stock names: {}", e.toString());
+            synchronized (lock) {
+                removedDuringRebuild = null;
+            }
+            return;
+        }
+        final List<Long> removed;
+        synchronized (lock) {
+            // Neither read nor written since the rebuild started: deleted on another instance
+            removed = entries.entrySet().stream()
+                .filter(entry -> entry.getValue().rebuild != rebuild)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+            removed.forEach(this::doRemove);
+            // Including the stocks borrowed but never indexed
+            popularity.keySet().retainAll(entries.keySet());
+            removedDuringRebuild = null;
+        }
+        log.debug("Rebuilt the index of {} stock names, {} removed", entries.size(), removed.size());
+    }
+
+    private void apply(List<Long> ids, List<String> names, int rebuild) {
+        synchronized (lock) {
+            for (int i = 0; i < ids.size(); i++) {
+                final Long id = ids.get(i);
+                final Entry entry = entries.get(id);
+                if (removedDuringRebuild.contains(id) || entry != null && entry.rebuild == rebuild) {
+                    continue;
+                }
+                if (entry != null && entry.name.equals(names.get(i))) {
+                    entry.rebuild = rebuild;
+                } else {
+                    doPut(id, names.get(i), rebuild);
+                }
+            }
+        }
+        ids.clear();
+        names.clear();
+    }
+
+    static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        final String withoutMarks = MARKS.matcher(Normalizer.normalize(name, Normalizer.Form.NFD)).replaceAll("");
+        return WHITESPACE.matcher(withoutMarks.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private void doPut(Long id, String name, int rebuild) {
+        final String key = normalize(name);
+        final Entry current = entries.get(id);
+        if (current != null && current.key.equals(key)) {
+            // Same node, only the name shown may change
+            final Suggestion before = current.node.own();
+            current.node.names.put(id, name);
+            entries.put(id, new Entry(name, key, current.node, rebuild));
+            update(current.node, before);
+            return;
+        }
+        doRemove(id);
+        if (key.isEmpty()) {
+            return;
+        }
+        final Node node = insert(key);
+        final Suggestion before = node.own();
+        node.names.put(id, name);
+        entries.put(id, new Entry(name, key, node, rebuild));
+        update(node, before);
+    }
+
+    private void doRemove(Long id) {
+        final Entry entry = entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        final Node node = entry.node;
+        final Suggestion before = node.own();
+        node.names.remove(id);
+        update(node, before);
+        if (node == root || !node.names.isEmpty()) {
+            return;
+        }
+        // Keep the trie compressed: no node without names has less than two children
+        if (node.children.isEmpty()) {
+            final Node parent = node.parent;
+            parent.children.remove(node.key.charAt(node.depth), node);
+            if (parent != root && parent.names.isEmpty() && parent.children.size() == 1) {
+                merge(parent);
+            }
+        } else if (node.children.size() == 1) {
+            merge(node);
+        }
+    }
+
+    /**
+     * Get the node of a normalized name, splitting the edge it ends in or adding a leaf if needed.
+     */
+    private Node insert(String key) {
+        Node node = root;
+        int depth = 0;
+        while (depth < key.length()) {
+            final Node child = node.children.get(key.charAt(depth));
+            if (child == null) {
+                final Node leaf = new Node(node, key, depth);
+                node.children.put(key.charAt(depth), leaf);
+                return leaf;
+            }
+            int common = depth;
+            final int end = Math.min(key.length(), child.key.length());
+            while (common < end && key.charAt(common) == child.key.charAt(common)) {
+                common++;
+            }
+            node = common < child.key.length() ? split(child, common) : child;
+            depth = common;
+        }
+        return node;
+    }
+
+    /**
+     * Split the edge to a node, at the given length of its key.
+     *
+     * @return the node added in the middle of the edge.
+     */
+    private Node split(Node node, int length) {
+        final Node parent = node.parent;
+        final Node middle = new Node(parent, node.key.substring(0, length), node.depth);
+        final Node tail = move(node, middle, length);
+        middle.children.put(tail.key.charAt(length), tail);
+        middle.suggestions = tail.suggestions;
+        parent.children.put(middle.key.charAt(middle.depth), middle);
+        return middle;
+    }
+
+    /**
+     * Merge a node without names into its only child.
+     */
+    private void merge(Node node) {
+        final Node child = node.children.values().iterator().next();
+        final Node merged = move(child, node.parent, node.depth);
+        node.parent.children.put(merged.key.charAt(merged.depth), merged);
+    }
+
+    /**
+     * Copy a node under another parent, with its label starting at another depth. A reachable node is replaced
+     * rather than changed, so that the readers walking down the trie always see a consistent path.
+     */
+    private Node move(Node node, Node parent, int depth) {
+        final Node moved = new Node(parent, node.key, depth, node.children, node.names);
+        moved.suggestions = node.suggestions;
+        moved.children.values().forEach(child -> child.parent = moved);
+        moved.names.keySet().forEach(id -> entries.get(id).node = moved);
+        return moved;
+    }
+
+    /**
+     * Update the suggestions of a node whose own suggestion changed, then of its ancestors, up to the first one
+     * whose suggestions are unchanged: if the change doesn't show in the suggestions of a node, it can't in the
+     * ones of its ancestors, which are the most popular of more names.
+     *
+     * @param node   the node.
+     * @param before the own suggestion of the node before the change, {@code null} if it had no names.
+     */
+    private void update(Node node, Suggestion before) {
+        final Suggestion after = node.own();
+        for (Node current = node; current != null; current = current.parent) {
+            final List<Suggestion> suggestions = current.suggestions;
+            final boolean present = before != null && suggestions.stream().anyMatch(suggestion -> suggestion.key.equals(before.key));
+            if (present && after != null && BY_POPULARITY.compare(after, before) <= 0) {
+                current.suggestions = ranked(suggestions, after);
+            } else if (present) {
+                // Less popular or removed: another name may take its place, from any child
+                current.computeSuggestions();
+            } else if (after != null && (suggestions.size() < MAX_SUGGESTIONS
+                || BY_POPULARITY.compare(after, suggestions.get(suggestions.size() - 1)) < 0)) {
+                current.suggestions = ranked(suggestions, after);
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static List<Suggestion> ranked(List<Suggestion> suggestions, Suggestion changed) {
+        final List<Suggestion> candidates = new ArrayList<>(suggestions.size() + 1);
+        for (Suggestion suggestion : suggestions) {
+            if (!suggestion.key.equals(changed.key)) {
+                candidates.add(suggestion);
+            }
+        }
+        candidates.add(changed);
+        candidates.sort(BY_POPULARITY);
+        return List.copyOf(candidates.subList(0, Math.min(MAX_SUGGESTIONS, candidates.size())));
+    }
+
+    /**
+     * Indexed name of a stock.
+     */
+    private static final class Entry {
+
+        private final String name;
+
+        private final String key;
+
+        /**
+         * Node of the normalized name; guarded by the lock.
+         */
+        private Node node;
+
+        /**
+         * Number of the rebuild which read or followed the last write of the name; guarded by the lock.
+         */
+        private int rebuild;
+
+        Entry(String name, String key, Node node, int rebuild) {
+            this.name = name;
+            this.key = key;
+            this.node = node;
+            this.rebuild = rebuild;
+        }
+    }
+
+    private final class Node {
+
+        /**
+         * Parent of the node; guarded by the lock, never read by the readers.
+         */
+        private Node parent;
+
+        /**
+         * Normalized prefix of the names under this node; the label of its edge starts at {@link #depth}.
+         */
+        private final String key;
+
+        private final int depth;
+
+        private final Map<Character, Node> children;
+
+        /**
+         * Names of the stocks whose normalized name ends at this node, by id; guarded by the lock.
+         */
+        private final Map<Long, String> names;
+
+        private volatile List<Suggestion> suggestions = List.of();
+
+        Node(Node parent, String key, int depth) {
+            this(parent, key, depth, new ConcurrentHashMap<>(), new HashMap<>());
+        }
+
+        Node(Node parent, String key, int depth, Map<Character, Node> children, Map<Long, String> names) {
+            this.parent = parent;
+            this.key = key;
+            this.depth = depth;
+            this.children = children;
+            this.names = names;
+        }
+
+        /**
+         * Suggestion of the names ending at this node: stocks with the same normalized name are one suggestion,
+         * as popular as all of them.
+         */
+        Suggestion own() {
+            if (names.isEmpty()) {
+                return null;
+            }
+            long total = 0;
+            String name = null;
+            long best = -1;
+            for (Map.Entry<Long, String> entry : names.entrySet()) {
+                final long count = popularity.getOrDefault(entry.getKey(), 0L);
+                total += count;
+                if (count > best) {
+                    best = count;
+                    name = entry.getValue();
+                }
+            }
+            return new Suggestion(key, name, total);
+        }
+
+        void computeSuggestions() {
+            final List<Suggestion> candidates = new ArrayList<>();
+            final Suggestion own = own();
+            if (own != null) {
+                candidates.add(own);
+            }
+            for (Node child : children.values()) {
+                candidates.addAll(child.suggestions);
+            }
+            candidates.sort(BY_POPULARITY);
+            suggestions = List.copyOf(candidates.subList(0, Math.min(MAX_SUGGESTIONS, candidates.size())));
+        }
+    }
+
+    private static final class Suggestion {
+
+        /**
+         * Normalized name, which identifies the suggestion.
+         */
+        private final String key;
+
+        private final String name;
+
+        private final long popularity;
+
+        Suggestion(String key, String name, long popularity) {
+            this.key = key;
+            this.name = name;
+            this.popularity = popularity;
+        }
+    }
+}
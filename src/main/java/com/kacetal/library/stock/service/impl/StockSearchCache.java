@@ -0,0 +1,261 @@
+package com.kacetal.library.stock.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kacetal.library.stock.config.ApplicationProperties;
+import com.kacetal.library.stock.domain.Stock;
+import com.kacetal.library.stock.repository.StockRepository;
+import com.kacetal.library.stock.service.dto.DegradedPage;
+import com.kacetal.library.stock.service.dto.StockSearchCriteria;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Cache of the stock search results.
+ * <p>
+ * A result page is stored as the list of its ids, keyed by the normalized search, the page and the sort,
+ * and the generations of the index. The indexer bumps the generation on each change of the searched fields of
+ * a stock (its name and status, or its creation and deletion), which makes all the previous pages unreachable:
+ * they are never served again and age out of the cache. A change of the quantity only, as done by each borrow
+ * and return, bumps a second generation, which is part of the key of the searches by quantity only. Cached
+ * pages are hydrated from a cache of stocks, and only the missing stocks are read, by id, from the database.
+ * <p>
+ * The caches are local to the instance: the writes done on another instance are seen once the entries expire.
+ */
+@Component
+class StockSearchCache {
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong quantityGeneration = new AtomicLong();
+
+    private final boolean enabled;
+
+    private final Cache<Key, CachedPage> pages;
+
+    private final Cache<Long, Stock> stocks;
+
+    private final StockRepository stockRepository;
+
+    StockSearchCache(ApplicationProperties applicationProperties, StockRepository stockRepository, MeterRegistry meterRegistry) {
+        final ApplicationProperties.SearchCache properties = applicationProperties.getSearchCache();
+        this.enabled = properties.isEnabled();
+        this.pages = Caffeine.newBuilder()
+            .maximumSize(properties.getMaximumSize())
+            .expireAfterWrite(properties.getTimeToLive())
+            .recordStats()
+            .build();
+        this.stocks = Caffeine.newBuilder()
+            .maximumSize(properties.getStockMaximumSize())
+            .expireAfterWrite(properties.getStockTimeToLive())
+            .recordStats()
+            .build();
+        this.stockRepository = stockRepository;
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, "stock.search.pages");
+        CaffeineCacheMetrics.monitor(meterRegistry, stocks, "stock.search.stocks");
+    }
+
+    /**
+     * Get a page of search results from the cache, or from the search and then cache it.
+     *
+     * @param search     the search, normalized so that equivalent searches have the same key.
+     * @param byQuantity whether the search filters on the quantity.
+     * @param pageable   the pagination information.
+     * @param searcher   the search to run on a miss.
+     * @return the page of stocks; a {@link DegradedPage} is not cached.
+     */
+    Page<Stock> get(String search, boolean byQuantity, Pageable pageable, Supplier<Page<Stock>> searcher) {
+        if (!enabled) {
+            return searcher.get();
+        }
+        // The generations are read before the search, so a change of the index during the search can't be hidden
+        final long quantities = byQuantity || pageable.getSort().getOrderFor("quantity") != null ? quantityGeneration.get() : -1;
+        final Key key = new Key(search, pageable.getPageNumber(), pageable.getPageSize(), pageable.getSort().toString(),
+            generation.get(), quantities);
+        final CachedPage cached = pages.getIfPresent(key);
+        if (cached != null) {
+            return new PageImpl<>(hydrate(cached.ids), pageable, cached.total);
+        }
+        final Page<Stock> page = searcher.get();
+        if (!(page instanceof DegradedPage)) {
+            pages.put(key, new CachedPage(page.map(Stock::getId).getContent(), page.getTotalElements()));
+        }
+        return page;
+    }
+
+    /**
+     * Record changes of the index, once the current transaction (if any) is completed.
+     *
+     * @param ids the ids of the stocks indexed or removed from the index.
+     */
+    void indexChanged(Collection<Long> ids) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Whatever the outcome, the index has already been changed
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate(ids);
+                }
+            });
+        }
+        invalidate(ids);
+    }
+
+    /**
+     * Record a change of the quantity only of a stock, once the current transaction (if any) is completed: the
+     * pages of the searches which don't filter nor sort on the quantity are still valid.
+     *
+     * @param id the id of the stock indexed.
+     */
+    void quantityChanged(Long id) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidateQuantity(id);
+                }
+            });
+        }
+        invalidateQuantity(id);
+    }
+
+    private void invalidate(Collection<Long> ids) {
+        stocks.invalidateAll(ids);
+        generation.incrementAndGet();
+    }
+
+    private void invalidateQuantity(Long id) {
+        // The cached stock holds the previous quantity
+        stocks.invalidate(id);
+        quantityGeneration.incrementAndGet();
+    }
+
+    private List<Stock> hydrate(List<Long> ids) {
+        final Map<Long, Stock> found = new HashMap<>(stocks.getAllPresent(ids));
+        final List<Long> missing = ids.stream().filter(id -> !found.containsKey(id)).collect(Collectors.toList());
+        if (!missing.isEmpty()) {
+            for (Stock stock : stockRepository.findAllById(missing)) {
+                stocks.put(stock.getId(), stock);
+                found.put(stock.getId(), stock);
+            }
+        }
+        // Stocks deleted since the page was cached are left out
+        final List<Stock> content = new ArrayList<>(ids.size());
+        ids.stream().map(found::get).filter(Objects::nonNull).forEach(content::add);
+        return content;
+    }
+
+    /**
+     * Normalize a query string: the whitespace doesn't change its meaning, unlike the case of its operators.
+     */
+    static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Build the key of a typed search: equivalent criteria, which differ only by the case and the whitespace of
+     * the name or by the order of the statuses, have the same key.
+     */
+    static String key(StockSearchCriteria criteria) {
+        final StringBuilder key = new StringBuilder("statuses=");
+        if (criteria.getStatuses() != null) {
+            criteria.getStatuses().stream().map(Enum::name).sorted().forEach(status -> key.append(status).append(','));
+        }
+        key.append(";quantity=")
+            .append(criteria.getMinQuantity() == null ? "" : criteria.getMinQuantity())
+            .append("..")
+            .append(criteria.getMaxQuantity() == null ? "" : criteria.getMaxQuantity());
+        // Last, so that whatever it holds can't be mistaken for another criterion
+        final String name = criteria.getName();
+        if (name != null && !name.isBlank()) {
+            key.append(";name=").append(normalize(name).toLowerCase(Locale.ROOT));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Tell whether a query string may match on the quantity: when it names the field, or when it holds a number,
+     * which a query on all the fields also matches against the quantity.
+     */
+    static boolean byQuantity(String query) {
+        return query.contains("quantity") || query.chars().anyMatch(Character::isDigit);
+    }
+
+    private static final class Key {
+
+        private final String search;
+
+        private final int page;
+
+        private final int size;
+
+        private final String sort;
+
+        private final long generation;
+
+        private final long quantityGeneration;
+
+        Key(String search, int page, int size, String sort, long generation, long quantityGeneration) {
+            this.search = search;
+            this.page = page;
+            this.size = size;
+            this.sort = sort;
+            this.generation = generation;
+            this.quantityGeneration = quantityGeneration;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return page == key.page && size == key.size && generation == key.generation
+                && quantityGeneration == key.quantityGeneration
+                && search.equals(key.search) && sort.equals(key.sort);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(search, page, size, sort, generation, quantityGeneration);
+        }
+    }
+
+    private static final class CachedPage {
+
+        private final List<Long> ids;
+
+        private final long total;
+
+        CachedPage(List<Long> ids, long total) {
+            this.ids = ids;
+            this.total = total;
+        }
+    }
+}
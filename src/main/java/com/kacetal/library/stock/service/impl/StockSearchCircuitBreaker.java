@@ -0,0 +1,83 @@
+package com.kacetal.library.stock.service.impl;
+
+import com.kacetal.library.stock.repository.search.InvalidSearchException;
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.HystrixThreadPoolKey;
+import com.netflix.hystrix.HystrixThreadPoolProperties;
+import com.netflix.hystrix.exception.HystrixBadRequestException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Hystrix circuit breaker and bulkhead around the Elasticsearch searches.
+ * <p>
+ * Searches run on their own small thread pool with a timeout, so a slow cluster ties up at most this pool
+ * instead of the request threads; when too many of them fail the circuit opens and they are not even tried.
+ * A search rejected as invalid by Elasticsearch is the fault of the request: it doesn't count as a failure, and
+ * is not answered from the database but rethrown.
+ * The defaults below can be overridden under {@code hystrix.command.stockSearch} and
+ * {@code hystrix.threadpool.elasticsearch}.
+ */
+@Component
+class StockSearchCircuitBreaker {
+
+    private static final HystrixCommand.Setter SETTER = HystrixCommand.Setter
+        .withGroupKey(HystrixCommandGroupKey.Factory.asKey("elasticsearch"))
+        .andCommandKey(HystrixCommandKey.Factory.asKey("stockSearch"))
+        .andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey("elasticsearch"))
+        .andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
+            .withExecutionIsolationStrategy(HystrixCommandProperties.ExecutionIsolationStrategy.THREAD)
+            .withExecutionTimeoutInMilliseconds(2000))
+        .andThreadPoolPropertiesDefaults(HystrixThreadPoolProperties.Setter()
+            .withCoreSize(10));
+
+    private final Logger log = LoggerFactory.getLogger(StockSearchCircuitBreaker.class);
+
+    /**
+     * Run a search through the circuit breaker.
+     *
+     * @param search the search.
+     * @param <T>    the type of the result.
+     * @return the result, or empty if the search failed, timed out, was rejected or the circuit is open.
+     * @throws InvalidSearchException if Elasticsearch rejects the search as invalid.
+     */
+    <T> Optional<T> execute(Supplier<T> search) {
+        final HystrixCommand<T> command = new HystrixCommand<>(SETTER) {
+
+            @Override
+            protected T run() {
+                try {
+                    return search.get();
+                } catch (InvalidSearchException e) {
+                    // Neither counted by the circuit breaker nor sent to the fallback
+                    throw new HystrixBadRequestException(e.getMessage(), e);
+                }
+            }
+
+            @Override
+            protected T getFallback() {
+                if (isFailedExecution()) {
+                    log.warn("Search failed, falling back to the database: {}", getFailedExecutionException().toString());
+                } else if (isResponseTimedOut()) {
+                    log.warn("Search timed out, falling back to the database");
+                } else {
+                    // Rejected by the bulkhead or short-circuited, each request would log it
+                    log.debug("Search not run ({}), falling back to the database", getExecutionEvents());
+                }
+                return null;
+            }
+        };
+        try {
+            return Optional.ofNullable(command.execute());
+        } catch (HystrixBadRequestException e) {
+            throw (InvalidSearchException) e.getCause();
+        }
+    }
+}
@@ -3,21 +3,55 @@ package com.kacetal.library.stock.service.impl;
 import com.kacetal.library.stock.domain.Stock;
 import com.kacetal.library.stock.domain.enumeration.BookStockStatus;
 import com.kacetal.library.stock.repository.StockRepository;
+import com.kacetal.library.stock.repository.search.SearchAfterPage;
+import com.kacetal.library.stock.repository.search.SearchUnavailableException;
 import com.kacetal.library.stock.repository.search.StockSearchRepository;
 import com.kacetal.library.stock.service.StockService;
+import com.kacetal.library.stock.service.dto.DegradedPage;
+import com.kacetal.library.stock.service.dto.StockCursorPage;
+import com.kacetal.library.stock.service.dto.StockPatch;
+import com.kacetal.library.stock.service.dto.StockSearchCriteria;
+import com.kacetal.library.stock.service.dto.StockStats;
+import com.kacetal.library.stock.service.jfr.StockOperationEvent;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.Operator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.kacetal.library.stock.domain.enumeration.BookStockStatus.AVAILABLE;
 import static com.kacetal.library.stock.domain.enumeration.BookStockStatus.OUT_OF_BORROW;
 import static com.kacetal.library.stock.domain.enumeration.BookStockStatus.OUT_OF_STOCK;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
 import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
+import static org.elasticsearch.index.query.QueryBuilders.wildcardQuery;
 
 /**
  * Service Implementation for managing {@link Stock}.
@@ -32,9 +66,26 @@ public class StockServiceImpl implements StockService {
 
     private final StockSearchRepository stockSearchRepository;
 
-    public StockServiceImpl(StockRepository stockRepository, StockSearchRepository stockSearchRepository) {
+    private final StockSearchCache stockSearchCache;
+
+    private final StockSearchCircuitBreaker stockSearchCircuitBreaker;
+
+    private final StockNameIndex stockNameIndex;
+
+    private final StockCounters stockCounters;
+
+    private final Validator validator;
+
+    public StockServiceImpl(StockRepository stockRepository, StockSearchRepository stockSearchRepository,
+                            StockSearchCache stockSearchCache, StockSearchCircuitBreaker stockSearchCircuitBreaker,
+                            StockNameIndex stockNameIndex, StockCounters stockCounters, Validator validator) {
         this.stockRepository = stockRepository;
         this.stockSearchRepository = stockSearchRepository;
+        this.stockSearchCache = stockSearchCache;
+        this.stockSearchCircuitBreaker = stockSearchCircuitBreaker;
+        this.stockNameIndex = stockNameIndex;
+        this.stockCounters = stockCounters;
+        this.validator = validator;
     }
 
     /**
@@ -45,10 +96,68 @@ public class StockServiceImpl implements StockService {
      */
     @Override
     public Stock save(Stock stock) {
+        // Loaded before the merge, which then copies the stock onto it instead of selecting it again
+        final Optional<Stock> current = stock.getId() == null ? Optional.empty() : stockRepository.findById(stock.getId());
+        final BookStockStatus previousStatus = current.map(Stock::getBookStockStatus).orElse(null);
+        final Integer previousQuantity = current.map(Stock::getQuantity).orElse(null);
+        final String previousName = current.map(Stock::getName).orElse(null);
+        if (stock.getVersion() == null) {
+            // Clients which don't send the version keep the last writer wins behaviour
+            current.map(Stock::getVersion).ifPresent(stock::setVersion);
+        }
+        return save(stock, previousStatus, previousQuantity,
+            current.isPresent() && Objects.equals(previousName, stock.getName()) && previousStatus == stock.getBookStockStatus());
+    }
+
+    private Stock save(Stock stock, BookStockStatus previousStatus, Integer previousQuantity, boolean quantityOnly) {
         log.debug("Request to save Stock : {}", stock);
-        Stock result = stockRepository.save(stock);
-        stockSearchRepository.save(result);
-        return result;
+        final StockOperationEvent event = StockOperationEvent.start(StockOperationEvent.SAVE, stock.getId());
+        try {
+            Stock result = stockRepository.save(stock);
+            index(result, quantityOnly);
+            stockCounters.changed(previousStatus, previousQuantity, result.getBookStockStatus(), result.getQuantity());
+            event.setStockId(result.getId());
+            event.setOutcome(result.getBookStockStatus().name());
+            return result;
+        } finally {
+            event.finish();
+        }
+    }
+
+    /**
+     * Partially update a stock.
+     *
+     * @param id    the id of the entity.
+     * @param patch the properties to change.
+     * @return the updated entity, or empty if not found.
+     */
+    @Override
+    public Optional<Stock> partialUpdate(Long id, StockPatch patch) {
+        log.debug("Request to partially update Stock {} : {}", id, patch);
+        validate(patch);
+        final StockOperationEvent event = StockOperationEvent.start(StockOperationEvent.PATCH, id);
+        try {
+            final Optional<Stock> optionalStock = stockRepository.findById(id);
+            if (optionalStock.isEmpty()) {
+                event.setOutcome("NOT_FOUND");
+                return optionalStock;
+            }
+            final Stock stock = optionalStock.get();
+            final BookStockStatus previousStatus = stock.getBookStockStatus();
+            final Integer previousQuantity = stock.getQuantity();
+            final String previousName = stock.getName();
+            // The entity is managed: Hibernate flushes the changed columns only, and nothing when unchanged
+            if (patch.applyTo(stock)) {
+                index(stock, Objects.equals(previousName, stock.getName()) && previousStatus == stock.getBookStockStatus());
+                stockCounters.changed(previousStatus, previousQuantity, stock.getBookStockStatus(), stock.getQuantity());
+                event.setOutcome(stock.getBookStockStatus().name());
+            } else {
+                event.setOutcome("unchanged");
+            }
+            return optionalStock;
+        } finally {
+            event.finish();
+        }
     }
 
     /**
@@ -64,6 +173,33 @@ public class StockServiceImpl implements StockService {
         return stockRepository.findAll(pageable);
     }
 
+    /**
+     * Get the ids and versions of a page of stocks.
+     *
+     * @param pageable the pagination information.
+     * @return the ids and versions of the entities.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Slice<StockRepository.IdAndVersion> findAllVersions(Pageable pageable) {
+        log.debug("Request to get the versions of a page of Stocks");
+        return stockRepository.findAllVersions(pageable);
+    }
+
+    /**
+     * Get all the stocks, with only some of their properties.
+     *
+     * @param properties the names of the properties to get.
+     * @param pageable   the pagination information.
+     * @return the list of stocks, as maps of property name to value.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> findAll(Set<String> properties, Pageable pageable) {
+        log.debug("Request to get all Stocks with properties {}", properties);
+        return stockRepository.findAllProjected(properties, pageable);
+    }
+
     /**
      * Get one stock by id.
      *
@@ -77,6 +213,19 @@ public class StockServiceImpl implements StockService {
         return stockRepository.findById(id);
     }
 
+    /**
+     * Get the version of one stock by id.
+     *
+     * @param id the id of the entity.
+     * @return the version of the entity.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Long> findVersion(Long id) {
+        log.debug("Request to get version of Stock : {}", id);
+        return stockRepository.findVersionById(id);
+    }
+
     /**
      * Delete the stock by id.
      *
@@ -85,8 +234,17 @@ public class StockServiceImpl implements StockService {
     @Override
     public void delete(Long id) {
         log.debug("Request to delete Stock : {}", id);
-        stockRepository.deleteById(id);
-        stockSearchRepository.deleteById(id);
+        final StockOperationEvent event = StockOperationEvent.start(StockOperationEvent.DELETE, id);
+        try {
+            // Loaded for the counters; deleteById would load it anyway
+            final Optional<Stock> current = stockRepository.findById(id);
+            stockRepository.deleteById(id);
+            unindex(id);
+            current.ifPresent(stock -> stockCounters.changed(stock.getBookStockStatus(), stock.getQuantity(), null, null));
+            event.setOutcome("deleted");
+        } finally {
+            event.finish();
+        }
     }
 
     /**
@@ -100,37 +258,172 @@ public class StockServiceImpl implements StockService {
     @Transactional(readOnly = true)
     public Page<Stock> search(String query, Pageable pageable) {
         log.debug("Request to search for a page of Stocks for query {}", query);
-        return stockSearchRepository.search(queryStringQuery(query), pageable);
+        final StockOperationEvent event = StockOperationEvent.start(StockOperationEvent.SEARCH, null);
+        try {
+            Page<Stock> page = stockSearchCache.get("query:" + StockSearchCache.normalize(query), StockSearchCache.byQuantity(query), pageable,
+                () -> stockSearchCircuitBreaker.execute(() -> stockSearchRepository.search(queryStringQuery(query), pageable))
+                    .orElseGet(() -> searchDatabase(namePrefix(query), EnumSet.allOf(BookStockStatus.class), null, null, pageable)));
+            event.setOutcome(outcome(page));
+            return page;
+        } finally {
+            event.finish();
+        }
+    }
+
+    /**
+     * Search for the stocks matching typed criteria.
+     *
+     * @param criteria the criteria of the search.
+     * @param pageable the pagination information.
+     * @return the list of entities.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Stock> search(StockSearchCriteria criteria, Pageable pageable) {
+        log.debug("Request to search for a page of Stocks for criteria {}", criteria);
+        final StockOperationEvent event = StockOperationEvent.start(StockOperationEvent.SEARCH, null);
+        try {
+            Page<Stock> page = stockSearchCache.get("criteria:" + StockSearchCache.key(criteria),
+                criteria.getMinQuantity() != null || criteria.getMaxQuantity() != null, pageable,
+                () -> stockSearchCircuitBreaker.execute(() -> stockSearchRepository.searchWithRequestCache(toQuery(criteria), pageable))
+                    .orElseGet(() -> searchDatabase(namePrefix(criteria.getName()),
+                        criteria.getStatuses() == null || criteria.getStatuses().isEmpty()
+                            ? EnumSet.allOf(BookStockStatus.class)
+                            : criteria.getStatuses(),
+                        criteria.getMinQuantity(), criteria.getMaxQuantity(), pageable)));
+            event.setOutcome(outcome(page));
+            return page;
+        } finally {
+            event.finish();
+        }
+    }
+
+    /**
+     * Search for the stock corresponding to the query, one page after the other, by relevance.
+     *
+     * @param query  the query of the search.
+     * @param size   the number of stocks of the page.
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page.
+     * @return the page of entities, with the cursor of the next page.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public StockCursorPage search(String query, int size, String cursor) {
+        log.debug("Request to search for a page of {} Stocks for query {} after {}", size, query, cursor);
+        final List<String> after = decodeCursor(cursor);
+        final StockOperationEvent event = StockOperationEvent.start(StockOperationEvent.SEARCH, null);
+        try {
+            final Optional<SearchAfterPage> page = stockSearchCircuitBreaker.execute(() ->
+                stockSearchRepository.searchAfter(queryStringQuery(query), size, after));
+            if (page.isPresent()) {
+                event.setOutcome(page.get().getContent().size() + " hits");
+                String nextCursor = page.get().getContent().size() < size ? null : encodeCursor(page.get().getLastSortValues());
+                return new StockCursorPage(page.get().getContent(), nextCursor);
+            }
+            if (!after.isEmpty()) {
+                // The database can't resume the sort by relevance of Elasticsearch
+                event.setOutcome("unavailable");
+                throw new SearchUnavailableException("Search of stocks unavailable, can't resume after " + cursor);
+            }
+            // Without a cursor to the next page, as it could only be searched in Elasticsearch
+            final Page<Stock> first = searchDatabase(namePrefix(query), EnumSet.allOf(BookStockStatus.class), null, null,
+                PageRequest.of(0, size));
+            event.setOutcome(outcome(first));
+            return new StockCursorPage(first.getContent(), null, true);
+        } finally {
+            event.finish();
+        }
+    }
+
+    /**
+     * Suggest the names of stocks starting with a prefix, from the in-memory index of the names.
+     *
+     * @param prefix the prefix of the names.
+     * @param size   the maximum number of names.
+     * @return the names, the most popular first.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<String> suggest(String prefix, int size) {
+        return stockNameIndex.suggest(prefix, size);
+    }
+
+    /**
+     * Get the counts of stocks by status and of copies on hand, from memory.
+     *
+     * @return the counts.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public StockStats getStats() {
+        return stockCounters.get();
     }
 
     @Override
     @Transactional
     public Optional<BookStockStatus> borrowBook(Long id) {
-        final Optional<Stock> optionalStock = this.findOne(id);
+        return borrowBook(id, null);
+    }
+
+    @Override
+    @Transactional
+    public Optional<BookStockStatus> borrowBook(Long id, Long expectedVersion) {
+        log.debug("Request to borrow Book from Stock : {}", id);
+        final StockOperationEvent event = StockOperationEvent.start(StockOperationEvent.BORROW, id);
+        try {
+            final Optional<BookStockStatus> result = doBorrowBook(id, expectedVersion);
+            if (result.isPresent() && result.get() == AVAILABLE) {
+                stockNameIndex.borrowed(id);
+            }
+            event.setOutcome(outcome(result));
+            return result;
+        } finally {
+            event.finish();
+        }
+    }
+
+    @Override
+    public Optional<BookStockStatus> returnBook(Long id) {
+        log.debug("Request to return Book to Stock : {}", id);
+        final StockOperationEvent event = StockOperationEvent.start(StockOperationEvent.RETURN, id);
+        try {
+            final Optional<BookStockStatus> result = doReturnBook(id);
+            event.setOutcome(outcome(result));
+            return result;
+        } finally {
+            event.finish();
+        }
+    }
+
+    private Optional<BookStockStatus> doBorrowBook(Long id, Long expectedVersion) {
+        final Optional<Stock> optionalStock = stockRepository.findOneForUpdate(id);
         if (optionalStock.isEmpty()) {
             return Optional.empty();
         }
 
         final Stock stock = optionalStock.get();
+        if (expectedVersion != null && !expectedVersion.equals(stock.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Stock.class, id);
+        }
         final BookStockStatus bookStockStatus = stock.getBookStockStatus();
         if (bookStockStatus == OUT_OF_BORROW) {
             return Optional.of(OUT_OF_BORROW);
         } else if (bookStockStatus == OUT_OF_STOCK) {
             return Optional.of(OUT_OF_STOCK);
         }
-        final int updatedQuantity = stock.getQuantity() - 1;
+        final Integer quantity = stock.getQuantity();
+        final int updatedQuantity = quantity - 1;
         if (updatedQuantity < 1) {
             stock.setBookStockStatus(OUT_OF_STOCK);
         }
         stock.setQuantity(updatedQuantity);
 
-        this.save(stock);
+        this.save(stock, bookStockStatus, quantity, stock.getBookStockStatus() == bookStockStatus);
         return Optional.of(AVAILABLE);
     }
 
-    @Override
-    public Optional<BookStockStatus> returnBook(Long id) {
-        final Optional<Stock> optionalStock = this.findOne(id);
+    private Optional<BookStockStatus> doReturnBook(Long id) {
+        final Optional<Stock> optionalStock = stockRepository.findOneForUpdate(id);
         if (optionalStock.isEmpty()) {
             return Optional.empty();
         }
@@ -140,12 +433,146 @@ public class StockServiceImpl implements StockService {
         if (bookStockStatus == OUT_OF_BORROW) {
             return Optional.of(OUT_OF_BORROW);
         }
-        final int updatedQuantity = stock.getQuantity() + 1;
+        final Integer quantity = stock.getQuantity();
+        final int updatedQuantity = quantity + 1;
         if (updatedQuantity > 0) {
             stock.setBookStockStatus(AVAILABLE);
         }
         stock.setQuantity(updatedQuantity);
-        this.save(stock);
+        this.save(stock, bookStockStatus, quantity, stock.getBookStockStatus() == bookStockStatus);
         return Optional.of(AVAILABLE);
     }
+
+    private void validate(StockPatch patch) {
+        final Set<ConstraintViolation<Stock>> violations = new HashSet<>();
+        if (patch.isNameSet()) {
+            violations.addAll(validator.validateValue(Stock.class, "name", patch.getName()));
+        }
+        if (patch.isQuantitySet()) {
+            violations.addAll(validator.validateValue(Stock.class, "quantity", patch.getQuantity()));
+        }
+        if (patch.isBookStockStatusSet()) {
+            violations.addAll(validator.validateValue(Stock.class, "bookStockStatus", patch.getBookStockStatus()));
+        }
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+    }
+
+    private void index(Stock stock, boolean quantityOnly) {
+        final StockOperationEvent event = StockOperationEvent.start(StockOperationEvent.INDEX, stock.getId());
+        try {
+            stockSearchRepository.save(stock);
+            if (quantityOnly) {
+                // Neither the searched fields nor the name changed: a borrow locks the index of names once only
+                stockSearchCache.quantityChanged(stock.getId());
+            } else {
+                stockSearchCache.indexChanged(List.of(stock.getId()));
+                stockNameIndex.put(stock.getId(), stock.getName());
+            }
+            event.setOutcome("indexed");
+        } finally {
+            event.finish();
+        }
+    }
+
+    private void unindex(Long id) {
+        final StockOperationEvent event = StockOperationEvent.start(StockOperationEvent.UNINDEX, id);
+        try {
+            stockSearchRepository.deleteById(id);
+            stockSearchCache.indexChanged(List.of(id));
+            stockNameIndex.remove(id);
+            event.setOutcome("unindexed");
+        } finally {
+            event.finish();
+        }
+    }
+
+    /**
+     * Build the query of a typed search: the name is scored, the other criteria are filters, which
+     * Elasticsearch can cache.
+     */
+    static BoolQueryBuilder toQuery(StockSearchCriteria criteria) {
+        final BoolQueryBuilder query = boolQuery();
+        final String name = criteria.getName();
+        if (name != null && !name.isBlank()) {
+            if (name.indexOf('*') < 0 && name.indexOf('?') < 0) {
+                query.must(matchQuery("name", name).operator(Operator.AND));
+            } else {
+                for (String term : name.trim().split("\\s+")) {
+                    query.must(wildcardQuery("name", term.toLowerCase(Locale.ROOT)));
+                }
+            }
+        }
+        if (criteria.getStatuses() != null && !criteria.getStatuses().isEmpty()) {
+            query.filter(termsQuery("bookStockStatus.keyword",
+                criteria.getStatuses().stream().map(Enum::name).collect(Collectors.toList())));
+        }
+        if (criteria.getMinQuantity() != null || criteria.getMaxQuantity() != null) {
+            query.filter(rangeQuery("quantity").gte(criteria.getMinQuantity()).lte(criteria.getMaxQuantity()));
+        }
+        return query;
+    }
+
+    /**
+     * Search the database when Elasticsearch is unavailable: only a prefix of the name can be matched, with an index.
+     */
+    private Page<Stock> searchDatabase(String prefix, Collection<BookStockStatus> statuses, Integer minQuantity,
+                                       Integer maxQuantity, Pageable pageable) {
+        // The relevance can't be computed, and the sort of the search may name fields unknown to JPA
+        final Pageable byName = pageable.isPaged()
+            ? PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), Sort.by("name", "id"))
+            : pageable;
+        return new DegradedPage<>(prefix == null
+            ? stockRepository.findByFilters(statuses, minQuantity, maxQuantity, byName)
+            : stockRepository.findByNamePrefix(prefix, statuses, minQuantity, maxQuantity, byName));
+    }
+
+    /**
+     * Extract the prefix of the name to search in the database from a search text: the field names, the
+     * operators and the wildcards are dropped.
+     */
+    static String namePrefix(String text) {
+        if (text == null) {
+            return null;
+        }
+        final String prefix = text
+            .replaceAll("\\b\\w+:", "")
+            .replaceAll("\\b(AND|OR|NOT)\\b", "")
+            .replaceAll("[*?\"\\\\()\\[\\]{}~^+\\-!%_/]", "")
+            .trim()
+            .replaceAll("\\s+", " ")
+            .toLowerCase(Locale.ROOT);
+        return prefix.isEmpty() ? null : prefix;
+    }
+
+    /**
+     * Encode the sort values of a hit, the score and the id, as an opaque cursor.
+     */
+    static String encodeCursor(List<String> sortValues) {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(String.join(":", sortValues).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static List<String> decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return List.of();
+        }
+        final String[] values = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+        if (values.length != 2) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor);
+        }
+        // Fail now rather than in Elasticsearch
+        Float.parseFloat(values[0]);
+        Long.parseLong(values[1]);
+        return List.of(values);
+    }
+
+    private static String outcome(Page<Stock> page) {
+        return page.getNumberOfElements() + (page instanceof DegradedPage ? " hits from the database" : " hits");
+    }
+
+    private static String outcome(Optional<BookStockStatus> result) {
+        return result.map(Enum::name).orElse("NOT_FOUND");
+    }
 }
@@ -0,0 +1,90 @@
+package com.kacetal.library.stock.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for an operation on a {@link com.kacetal.library.stock.domain.Stock}.
+ * <p>
+ * The event duration is the time between {@link #start(String, Long)} and {@link #finish()}. When no
+ * recording has this event enabled, {@code begin}, {@code end} and {@code commit} are no-ops for the JIT.
+ */
+@Name(StockOperationEvent.NAME)
+@Label("Stock Operation")
+@Category({"Kacetal Library", "Stock"})
+@Description("Borrow, return, save, delete, search and index operations on stocks")
+@StackTrace(false)
+public class StockOperationEvent extends Event {
+
+    public static final String NAME = "com.kacetal.library.stock.StockOperation";
+
+    public static final String BORROW = "borrow";
+
+    public static final String RETURN = "return";
+
+    public static final String SAVE = "save";
+
+    public static final String PATCH = "patch";
+
+    public static final String DELETE = "delete";
+
+    public static final String SEARCH = "search";
+
+    public static final String INDEX = "index";
+
+    public static final String UNINDEX = "unindex";
+
+    public static final String ERROR = "error";
+
+    @Label("Operation")
+    private final String operation;
+
+    @Label("Stock Id")
+    @Description("Id of the stock, 0 when unknown or not applicable")
+    private long stockId;
+
+    @Label("Outcome")
+    private String outcome = ERROR;
+
+    private StockOperationEvent(String operation, Long stockId) {
+        this.operation = operation;
+        this.stockId = stockId == null ? 0L : stockId;
+    }
+
+    /**
+     * Create and begin an event. The outcome is {@value #ERROR} until {@link #setOutcome(String)} is called.
+     *
+     * @param operation the operation, one of the constants of this class.
+     * @param stockId   the id of the stock, or {@code null}.
+     * @return the started event.
+     */
+    public static StockOperationEvent start(String operation, Long stockId) {
+        StockOperationEvent event = new StockOperationEvent(operation, stockId);
+        event.begin();
+        return event;
+    }
+
+    public void setStockId(Long stockId) {
+        this.stockId = stockId == null ? 0L : stockId;
+    }
+
+    public void setOutcome(String outcome) {
+        this.outcome = outcome;
+    }
+
+    /**
+     * End the event and commit it if it passes the recording threshold.
+     * <p>
+     * Named apart from {@code end}/{@code commit}, whose bodies are generated by the Flight Recorder.
+     */
+    public void finish() {
+        end();
+        if (shouldCommit()) {
+            commit();
+        }
+    }
+}
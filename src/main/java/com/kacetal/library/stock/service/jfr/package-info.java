@@ -0,0 +1,4 @@
+/**
+ * Java Flight Recorder events emitted by the service layer.
+ */
+package com.kacetal.library.stock.service.jfr;
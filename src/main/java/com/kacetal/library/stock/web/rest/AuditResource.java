@@ -0,0 +1,81 @@
+package com.kacetal.library.stock.web.rest;
+
+import com.kacetal.library.stock.service.AuditEventService;
+import com.kacetal.library.stock.service.dto.AuditEventCursorPage;
+import com.kacetal.library.stock.web.rest.errors.BadRequestAlertException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * REST controller for reading the audit events.
+ */
+@RestController
+@RequestMapping("/management/audits")
+public class AuditResource {
+
+    private static final String ENTITY_NAME = "auditEvent";
+
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final Logger log = LoggerFactory.getLogger(AuditResource.class);
+
+    private final AuditEventService auditEventService;
+
+    public AuditResource(AuditEventService auditEventService) {
+        this.auditEventService = auditEventService;
+    }
+
+    /**
+     * {@code GET  /management/audits?principal=:principal&from=:from&to=:to&size=:size&cursor=:cursor} : get
+     * the audit events of a principal between two dates, walking them with a cursor.
+     * <p>
+     * Pages are sorted by date, the most recent first. The next page, if any, is given by the {@code next}
+     * link: unlike page numbers, its cost doesn't grow with the depth.
+     *
+     * @param principal the principal of the events.
+     * @param from      the date from which to get the events, inclusive.
+     * @param to        the date until which to get the events, exclusive.
+     * @param size      the number of events of the page.
+     * @param cursor    the cursor of the page, absent for the first one.
+     * @return the page of events, or with status {@code 400 (Bad Request)} if the cursor, size or dates are not valid.
+     */
+    @GetMapping
+    public ResponseEntity<List<AuditEvent>> getAuditEvents(@RequestParam String principal,
+                                                           @RequestParam(required = false) Instant from,
+                                                           @RequestParam(required = false) Instant to,
+                                                           @RequestParam(defaultValue = "20") int size,
+                                                           @RequestParam(required = false) String cursor) {
+        log.debug("REST request to get a page of AuditEvents of {} from {} to {} after {}", principal, from, to, cursor);
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequestAlertException("Invalid page size", ENTITY_NAME, "sizeinvalid");
+        }
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new BadRequestAlertException("Invalid date range", ENTITY_NAME, "rangeinvalid");
+        }
+        final AuditEventCursorPage page;
+        try {
+            page = auditEventService.findByPrincipal(principal, from, to, size, cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException("Invalid cursor", ENTITY_NAME, "cursorinvalid");
+        }
+        final HttpHeaders headers = new HttpHeaders();
+        if (page.getNextCursor() != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("cursor", page.getNextCursor())
+                .toUriString();
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return ResponseEntity.ok().headers(headers).body(page.getContent());
+    }
+}
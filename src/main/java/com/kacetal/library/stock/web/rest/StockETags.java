@@ -0,0 +1,118 @@
+package com.kacetal.library.stock.web.rest;
+
+import com.kacetal.library.stock.domain.Stock;
+import com.kacetal.library.stock.repository.StockRepository;
+import org.springframework.data.domain.Slice;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Strong ETags of stock representations, and the matching rules of conditional requests (RFC 7232).
+ * <p>
+ * The ETag of a stock is its row version, so it can be checked without loading or serializing the stock.
+ * The ETag of a page is a hash of the ids and versions it holds and of its paging information, so it can be
+ * checked with the {@link StockRepository.IdAndVersion ids and versions} of the page, without loading the
+ * stocks nor counting them.
+ */
+final class StockETags {
+
+    private static final String ANY = "*";
+
+    private static final String WEAK_PREFIX = "W/";
+
+    private StockETags() {
+    }
+
+    static String of(long version) {
+        return "\"" + version + "\"";
+    }
+
+    static String of(Stock stock) {
+        return of(stock.getVersion());
+    }
+
+    static String of(Slice<Stock> page) {
+        return of(page, 0, Stock::getId, Stock::getVersion);
+    }
+
+    static String ofVersions(Slice<StockRepository.IdAndVersion> versions) {
+        return of(versions, 0, StockRepository.IdAndVersion::getId, StockRepository.IdAndVersion::getVersion);
+    }
+
+    /**
+     * @param versions   the ids and versions of the page.
+     * @param properties the properties of the stocks in the representation, in order.
+     * @return the ETag of a page of stocks with only some of their properties.
+     */
+    static String ofVersions(Slice<StockRepository.IdAndVersion> versions, Collection<String> properties) {
+        return of(versions, List.copyOf(properties).hashCode(), StockRepository.IdAndVersion::getId, StockRepository.IdAndVersion::getVersion);
+    }
+
+    /**
+     * @param page       the page of stocks, with at least their ids and versions.
+     * @param properties the properties of the stocks in the representation, in order.
+     * @return the ETag of a page of stocks with only some of their properties, the same as
+     * {@link #ofVersions(Slice, Collection)} for the same stocks.
+     */
+    static String ofFields(Slice<Map<String, Object>> page, Collection<String> properties) {
+        return of(page, List.copyOf(properties).hashCode(), stock -> (Long) stock.get("id"), stock -> (Long) stock.get("version"));
+    }
+
+    private static <T> String of(Slice<T> page, int variant, ToLongFunction<T> id, ToLongFunction<T> version) {
+        long hash = 1125899906842597L;
+        hash = 31 * hash + variant;
+        hash = 31 * hash + page.getNumber();
+        hash = 31 * hash + page.getSize();
+        hash = 31 * hash + page.getSort().hashCode();
+        hash = 31 * hash + (page.hasNext() ? 1 : 0);
+        for (T stock : page) {
+            hash = 31 * hash + id.applyAsLong(stock);
+            hash = 31 * hash + version.applyAsLong(stock);
+        }
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+
+    /**
+     * Check an {@code If-None-Match} header, with the weak comparison.
+     *
+     * @param ifNoneMatch the header value, may be {@code null}.
+     * @param etag        the current ETag.
+     * @return {@code true} if the client already has the current representation.
+     */
+    static boolean isNotModified(String ifNoneMatch, String etag) {
+        return ifNoneMatch != null && matches(ifNoneMatch, etag, true);
+    }
+
+    /**
+     * Check an {@code If-Match} header, with the strong comparison.
+     *
+     * @param ifMatch the header value, not {@code null}.
+     * @param etag    the current ETag.
+     * @return {@code true} if the request may proceed.
+     */
+    static boolean isPreconditionMet(String ifMatch, String etag) {
+        return matches(ifMatch, etag, false);
+    }
+
+    private static boolean matches(String header, String etag, boolean weak) {
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (ANY.equals(tag)) {
+                return true;
+            }
+            if (tag.startsWith(WEAK_PREFIX)) {
+                if (!weak) {
+                    continue;
+                }
+                tag = tag.substring(WEAK_PREFIX.length());
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
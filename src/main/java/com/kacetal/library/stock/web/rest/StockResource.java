@@ -2,20 +2,33 @@ package com.kacetal.library.stock.web.rest;
 
 import com.kacetal.library.stock.domain.Stock;
 import com.kacetal.library.stock.domain.enumeration.BookStockStatus;
+import com.kacetal.library.stock.repository.search.InvalidSearchException;
+import com.kacetal.library.stock.service.StockExportService;
+import com.kacetal.library.stock.service.StockFileFormat;
+import com.kacetal.library.stock.service.StockImportService;
 import com.kacetal.library.stock.service.StockService;
+import com.kacetal.library.stock.service.dto.DegradedPage;
+import com.kacetal.library.stock.service.dto.StockCursorPage;
+import com.kacetal.library.stock.service.dto.StockImportReport;
+import com.kacetal.library.stock.service.dto.StockPatch;
+import com.kacetal.library.stock.service.dto.StockSearchCriteria;
+import com.kacetal.library.stock.service.dto.StockStats;
 import com.kacetal.library.stock.web.rest.errors.BadRequestAlertException;
-import com.kacetal.library.stock.web.rest.errors.BookOutOfBorrowException;
-import com.kacetal.library.stock.web.rest.errors.BookOutOfStockException;
+import com.kacetal.library.stock.web.rest.errors.PreconditionFailedException;
+import com.kacetal.library.stock.web.rest.errors.PreparedProblem;
 import com.kacetal.library.stock.web.rest.errors.StockNotFoundException;
 import io.github.jhipster.web.util.HeaderUtil;
 import io.github.jhipster.web.util.PaginationUtil;
-import io.github.jhipster.web.util.ResponseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -24,20 +37,31 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.zalando.problem.Status;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static com.kacetal.library.stock.domain.enumeration.BookStockStatus.OUT_OF_BORROW;
 import static com.kacetal.library.stock.domain.enumeration.BookStockStatus.OUT_OF_STOCK;
 import static com.kacetal.library.stock.web.rest.errors.ErrorConstants.ID_NULL;
+import static com.kacetal.library.stock.web.rest.errors.ErrorConstants.PRECONDITION_FAILED;
 import static com.kacetal.library.stock.web.rest.errors.ErrorConstants.STOCK_NOT_FOUND;
 
 /**
@@ -49,15 +73,43 @@ public class StockResource {
 
     private static final String ENTITY_NAME = "kacetalLibraryStockStock";
 
+    private static final ResponseEntity<PreparedProblem> OUT_OF_STOCK_RESPONSE = PreparedProblem
+        .of("Book is out of stock", Status.NOT_ACCEPTABLE, ENTITY_NAME, OUT_OF_STOCK.errorKey())
+        .toResponseEntity();
+
+    private static final ResponseEntity<PreparedProblem> OUT_OF_BORROW_RESPONSE = PreparedProblem
+        .of("Book is out of borrow", Status.FORBIDDEN, ENTITY_NAME, OUT_OF_BORROW.errorKey())
+        .toResponseEntity();
+
+    /**
+     * Properties of a stock which can be listed in the {@code fields} parameter.
+     */
+    private static final Set<String> FIELDS = Set.of("id", "name", "quantity", "bookStockStatus", "version");
+
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+
+    private static final int MAX_SUGGEST_SIZE = 10;
+
+    /**
+     * Header set on the search results computed from the database because Elasticsearch is unavailable.
+     */
+    static final String SEARCH_DEGRADED_HEADER = "X-Search-Degraded";
+
     private final Logger log = LoggerFactory.getLogger(StockResource.class);
 
     private final StockService stockService;
 
+    private final StockExportService stockExportService;
+
+    private final StockImportService stockImportService;
+
     @Value("${jhipster.clientApp.name}")
     private String applicationName;
 
-    public StockResource(StockService stockService) {
+    public StockResource(StockService stockService, StockExportService stockExportService, StockImportService stockImportService) {
         this.stockService = stockService;
+        this.stockExportService = stockExportService;
+        this.stockImportService = stockImportService;
     }
 
     /**
@@ -79,44 +131,121 @@ public class StockResource {
             .body(result);
     }
 
+    /**
+     * {@code POST  /stocks/_import} : Create many stocks from a {@code text/csv} or {@code application/x-ndjson} body.
+     * <p>
+     * The body has the layout of {@code GET /stocks/_export}, without ids. Invalid rows are skipped and reported.
+     *
+     * @param contentType the content type of the body.
+     * @param body        the rows to import.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the import report,
+     * or with status {@code 400 (Bad Request)} if the content type is not supported.
+     * @throws IOException if the body can't be read.
+     */
+    @PostMapping("/stocks/_import")
+    public ResponseEntity<StockImportReport> importStocks(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                          InputStream body) throws IOException {
+        log.debug("REST request to import Stocks from {}", contentType);
+        final StockFileFormat importFormat = StockFileFormat.fromMediaType(contentType)
+            .orElseThrow(() -> new BadRequestAlertException("Unknown import format", ENTITY_NAME, "importformat"));
+        return ResponseEntity.ok(stockImportService.importStocks(importFormat, body));
+    }
+
     /**
      * {@code PUT  /stocks} : Updates an existing stock.
+     * <p>
+     * The version of the body is not checked: conditional updates use {@code If-Match}.
      *
-     * @param stock the stock to update.
+     * @param stock   the stock to update.
+     * @param ifMatch the ETags the stock must still have, if any.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated stock,
      * or with status {@code 400 (Bad Request)} if the stock is not valid,
+     * or with status {@code 412 (Precondition Failed)} if the stock doesn't match {@code If-Match},
      * or with status {@code 500 (Internal Server Error)} if the stock couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PutMapping("/stocks")
-    public ResponseEntity<Stock> updateStock(@Valid @RequestBody Stock stock) throws URISyntaxException {
+    public ResponseEntity<Stock> updateStock(@Valid @RequestBody Stock stock,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws URISyntaxException {
         log.debug("REST request to update Stock : {}", stock);
         if (stock.getId() == null) {
             throw new BadRequestAlertException("Invalid id", ENTITY_NAME, ID_NULL);
         }
-        Stock result = stockService.save(stock);
+        final Stock result;
+        if (ifMatch == null) {
+            // Without If-Match, the last writer wins whatever the version of the body
+            stock.setVersion(null);
+            result = stockService.save(stock);
+        } else {
+            // The checked version is the one saved: a concurrent update in between fails the optimistic lock
+            stock.setVersion(checkPrecondition(stock.getId(), ifMatch));
+            try {
+                result = stockService.save(stock);
+            } catch (OptimisticLockingFailureException e) {
+                throw preconditionFailed();
+            }
+        }
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, stock.getId().toString()))
+            .eTag(StockETags.of(result))
             .body(result);
     }
 
+    /**
+     * {@code PATCH  /stocks/:id} : Partially updates an existing stock with a JSON Merge Patch.
+     * <p>
+     * Only the properties present in the body are changed, an explicit {@code null} clears one.
+     *
+     * @param id    the id of the stock to update.
+     * @param patch the properties to change.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated stock,
+     * or with status {@code 400 (Bad Request)} if the patch is not valid,
+     * or with status {@code 404 (Not Found)} if the stock doesn't exist.
+     */
+    @PatchMapping(value = "/stocks/{id}", consumes = {"application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<Stock> partialUpdateStock(@PathVariable Long id, @RequestBody StockPatch patch) {
+        log.debug("REST request to partially update Stock {} : {}", id, patch);
+        if (patch.getId() != null && !patch.getId().equals(id)) {
+            throw new BadRequestAlertException("Invalid id", ENTITY_NAME, "idinvalid");
+        }
+        Optional<Stock> result = stockService.partialUpdate(id, patch);
+        return result.map(stock -> ResponseEntity.ok()
+            .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, id.toString()))
+            .eTag(StockETags.of(stock))
+            .body(stock))
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+
     /**
      * {@code PUT  /stocks} : Borrow the book from an existing stock.
      *
-     * @param id the book to borrow from stock with same id.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with empty body,
+     * @param id      the book to borrow from stock with same id.
+     * @param ifMatch the ETags the stock must still have, if any.
+     * @return the {@link ResponseEntity} with status {@code 202 (Accepted)} and with empty body,
      * or with status {@code 400 (Bad Request)} if the stock is not valid,
-     * or with status {@code 500 (Internal Server Error)} if the book couldn't be borrowed.
+     * or with status {@code 406 (Not Acceptable)} if the book is out of stock,
+     * or with status {@code 403 (Forbidden)} if the book is out of borrow,
+     * or with status {@code 412 (Precondition Failed)} if the stock doesn't match {@code If-Match}.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PatchMapping("/stocks/{id}/borrow")
-    public ResponseEntity<Void> borrowBook(@PathVariable Long id) throws URISyntaxException {
+    public ResponseEntity<PreparedProblem> borrowBook(@PathVariable Long id,
+                                                      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws URISyntaxException {
         log.debug("REST request to borrow Book from Stock with ID : {}", id);
         if (id == null) {
             throw new BadRequestAlertException("Invalid id", ENTITY_NAME, ID_NULL);
         }
 
-        final Optional<BookStockStatus> bookStockStatus = stockService.borrowBook(id);
+        final Optional<BookStockStatus> bookStockStatus;
+        if (ifMatch == null) {
+            bookStockStatus = stockService.borrowBook(id);
+        } else {
+            try {
+                bookStockStatus = stockService.borrowBook(id, checkPrecondition(id, ifMatch));
+            } catch (OptimisticLockingFailureException e) {
+                throw preconditionFailed();
+            }
+        }
         if (bookStockStatus.isEmpty()) {
             throw new StockNotFoundException("Stock for the book not found for this id", ENTITY_NAME, STOCK_NOT_FOUND);
         }
@@ -126,10 +255,10 @@ public class StockResource {
                     .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, id.toString()))
                     .build();
             case OUT_OF_STOCK:
-                throw new BookOutOfStockException("Book is out of stock", ENTITY_NAME, OUT_OF_STOCK.errorKey());
+                return OUT_OF_STOCK_RESPONSE;
             case OUT_OF_BORROW:
             default:
-                throw new BookOutOfBorrowException("Book is out of borrow", ENTITY_NAME, OUT_OF_BORROW.errorKey());
+                return OUT_OF_BORROW_RESPONSE;
         }
     }
 
@@ -137,13 +266,13 @@ public class StockResource {
      * {@code PATCH  /stocks} : Return the book to an existing stock.
      *
      * @param id the book to return to stock with same id.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with empty body,
+     * @return the {@link ResponseEntity} with status {@code 202 (Accepted)} and with empty body,
      * or with status {@code 400 (Bad Request)} if the stock is not valid,
-     * or with status {@code 500 (Internal Server Error)} if the book couldn't be returned.
+     * or with status {@code 403 (Forbidden)} if the book is out of borrow.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
     @PatchMapping("/stocks/{id}/return")
-    public ResponseEntity<Void> returnBook(@PathVariable Long id) throws URISyntaxException {
+    public ResponseEntity<PreparedProblem> returnBook(@PathVariable Long id) throws URISyntaxException {
         log.debug("REST request to return Book to Stock with ID : {}", id);
         if (id == null) {
             throw new BadRequestAlertException("Invalid id", ENTITY_NAME, ID_NULL);
@@ -162,7 +291,7 @@ public class StockResource {
                     .build();
             case OUT_OF_BORROW:
             default:
-                throw new BookOutOfBorrowException("Book is out of borrow", ENTITY_NAME, OUT_OF_BORROW.errorKey());
+                return OUT_OF_BORROW_RESPONSE;
         }
 
     }
@@ -170,28 +299,155 @@ public class StockResource {
     /**
      * {@code GET  /stocks} : get all the stocks.
      *
-     * @param pageable the pagination information.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of stocks in body.
+     * @param pageable    the pagination information.
+     * @param ifNoneMatch the ETags of the page already known by the client, if any.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of stocks in body,
+     * or with status {@code 304 (Not Modified)} if the page matches {@code If-None-Match}.
      */
     @GetMapping("/stocks")
-    public ResponseEntity<List<Stock>> getAllStocks(Pageable pageable) {
+    public ResponseEntity<List<Stock>> getAllStocks(Pageable pageable,
+                                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.debug("REST request to get a page of Stocks");
+        if (ifNoneMatch != null) {
+            // Revalidated with the ids and versions of the page only, without the count
+            String etag = StockETags.ofVersions(stockService.findAllVersions(pageable));
+            if (StockETags.isNotModified(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+        }
         Page<Stock> page = stockService.findAll(pageable);
+        String etag = StockETags.of(page);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
-        return ResponseEntity.ok().headers(headers).body(page.getContent());
+        return ResponseEntity.ok().headers(headers).eTag(etag).body(page.getContent());
+    }
+
+    /**
+     * {@code GET  /stocks?fields=:fields} : get all the stocks, with only some of their properties.
+     * <p>
+     * Only the columns of the listed properties are selected, e.g. {@code fields=id,bookStockStatus}.
+     *
+     * @param fields      the comma separated properties to get.
+     * @param pageable    the pagination information.
+     * @param ifNoneMatch the ETags of the page already known by the client, if any.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list of stocks in body,
+     * or with status {@code 304 (Not Modified)} if the page matches {@code If-None-Match},
+     * or with status {@code 400 (Bad Request)} if a property, or a sort property, is unknown.
+     */
+    @GetMapping(value = "/stocks", params = "fields")
+    public ResponseEntity<List<Map<String, Object>>> getAllStocksFields(@RequestParam List<String> fields, Pageable pageable,
+                                                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        log.debug("REST request to get a page of Stocks with fields {}", fields);
+        final Set<String> properties = new LinkedHashSet<>();
+        for (String field : fields) {
+            if (!FIELDS.contains(field.trim())) {
+                throw new BadRequestAlertException("Unknown field " + field, ENTITY_NAME, "fieldinvalid");
+            }
+            properties.add(field.trim());
+        }
+        if (properties.isEmpty()) {
+            throw new BadRequestAlertException("No field", ENTITY_NAME, "fieldinvalid");
+        }
+        for (Sort.Order order : pageable.getSort()) {
+            if (!FIELDS.contains(order.getProperty())) {
+                throw new BadRequestAlertException("Unknown sort property " + order.getProperty(), ENTITY_NAME, "sortinvalid");
+            }
+        }
+        if (ifNoneMatch != null) {
+            // Revalidated with the ids and versions of the page only, without the count
+            String etag = StockETags.ofVersions(stockService.findAllVersions(pageable), properties);
+            if (StockETags.isNotModified(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+        }
+        // The ids and versions are selected with the page for its ETag, then removed if not asked for
+        final Set<String> selected = new LinkedHashSet<>(properties);
+        selected.add("id");
+        selected.add("version");
+        Page<Map<String, Object>> page = stockService.findAll(selected, pageable);
+        String etag = StockETags.ofFields(page, properties);
+        for (Map<String, Object> stock : page) {
+            stock.keySet().retainAll(properties);
+        }
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        return ResponseEntity.ok().headers(headers).eTag(etag).body(page.getContent());
+    }
+
+    /**
+     * {@code GET  /stocks/_export?format=ndjson|csv} : stream all the stocks.
+     * <p>
+     * Unlike {@code GET /stocks}, there is no paging and no count query: rows are written as they are read.
+     *
+     * @param format the format of the export, {@code ndjson} or {@code csv}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and all the stocks in body,
+     * or with status {@code 400 (Bad Request)} if the format is unknown.
+     */
+    @GetMapping("/stocks/_export")
+    public ResponseEntity<StreamingResponseBody> exportStocks(@RequestParam(defaultValue = "ndjson") String format) {
+        log.debug("REST request to export all Stocks as {}", format);
+        final StockFileFormat exportFormat = StockFileFormat.fromName(format)
+            .orElseThrow(() -> new BadRequestAlertException("Unknown export format", ENTITY_NAME, "exportformat"));
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(exportFormat.mediaType()))
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=stocks." + exportFormat.name().toLowerCase(Locale.ROOT))
+            .body(out -> stockExportService.export(exportFormat, out));
+    }
+
+    /**
+     * {@code GET  /stocks/_suggest?prefix=:prefix&size=:size} : suggest the names of the stocks starting with a prefix.
+     * <p>
+     * Served from memory, for the type-ahead: neither Elasticsearch nor the database is queried.
+     *
+     * @param prefix the prefix typed so far; case, accents and extra whitespace are ignored.
+     * @param size   the maximum number of names, at most {@value #MAX_SUGGEST_SIZE}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the names in body, the most popular first,
+     * or with status {@code 400 (Bad Request)} if the size is not valid.
+     */
+    @GetMapping("/stocks/_suggest")
+    public ResponseEntity<List<String>> suggestStockNames(@RequestParam String prefix,
+                                                          @RequestParam(defaultValue = "10") int size) {
+        log.debug("REST request to suggest Stock names for prefix {}", prefix);
+        if (size < 1 || size > MAX_SUGGEST_SIZE) {
+            throw new BadRequestAlertException("Invalid suggestion size", ENTITY_NAME, "sizeinvalid");
+        }
+        return ResponseEntity.ok(stockService.suggest(prefix, size));
+    }
+
+    /**
+     * {@code GET  /stocks/_stats} : get the counts of stocks by status and of copies on hand.
+     * <p>
+     * The counts are kept in memory: they may lag the writes of the other instances until the next
+     * reconciliation with the database, given by {@code reconciledAt}.
+     *
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the counts in body.
+     */
+    @GetMapping("/stocks/_stats")
+    public ResponseEntity<StockStats> getStockStats() {
+        log.debug("REST request to get Stock stats");
+        return ResponseEntity.ok(stockService.getStats());
     }
 
     /**
      * {@code GET  /stocks/:id} : get the "id" stock.
      *
-     * @param id the id of the stock to retrieve.
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the stock, or with status {@code 404 (Not Found)}.
+     * @param id          the id of the stock to retrieve.
+     * @param ifNoneMatch the ETags of the stock already known by the client, if any.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the stock,
+     * or with status {@code 304 (Not Modified)} if the stock matches {@code If-None-Match}, or with status {@code 404 (Not Found)}.
      */
     @GetMapping("/stocks/{id}")
-    public ResponseEntity<Stock> getStock(@PathVariable Long id) {
+    public ResponseEntity<Stock> getStock(@PathVariable Long id,
+                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.debug("REST request to get Stock : {}", id);
+        if (ifNoneMatch != null) {
+            // Only the version is read to answer a revalidation
+            Optional<String> etag = stockService.findVersion(id).map(StockETags::of);
+            if (etag.isPresent() && StockETags.isNotModified(ifNoneMatch, etag.get())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag.get()).build();
+            }
+        }
         Optional<Stock> stock = stockService.findOne(id);
-        return ResponseUtil.wrapOrNotFound(stock);
+        return stock.map(result -> ResponseEntity.ok().eTag(StockETags.of(result)).body(result))
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
     }
 
     /**
@@ -210,16 +466,114 @@ public class StockResource {
     /**
      * {@code SEARCH  /_search/stocks?query=:query} : search for the stock corresponding
      * to the query.
+     * <p>
+     * When Elasticsearch is unavailable, the stocks whose name starts with the text of the query are returned
+     * instead, with the {@code X-Search-Degraded} header.
      *
      * @param query    the query of the stock search.
      * @param pageable the pagination information.
-     * @return the result of the search.
+     * @return the result of the search, or with status {@code 400 (Bad Request)} if Elasticsearch rejects the query.
      */
     @GetMapping("/_search/stocks")
     public ResponseEntity<List<Stock>> searchStocks(@RequestParam String query, Pageable pageable) {
         log.debug("REST request to search for a page of Stocks for query {}", query);
-        Page<Stock> page = stockService.search(query, pageable);
+        final Page<Stock> page;
+        try {
+            page = stockService.search(query, pageable);
+        } catch (InvalidSearchException e) {
+            throw new BadRequestAlertException("Invalid query", ENTITY_NAME, "queryinvalid");
+        }
+        return searchResponse(page);
+    }
+
+    /**
+     * {@code SEARCH  /_search/stocks?name=:name&statuses=:statuses&minQuantity=:min&maxQuantity=:max} : search for
+     * the stocks matching typed criteria.
+     * <p>
+     * Used when there is no {@code query} parameter. Unlike a query string, the criteria can't express
+     * expensive queries, and all but the name are cacheable filters.
+     *
+     * @param criteria the criteria of the search.
+     * @param pageable the pagination information.
+     * @return the result of the search, or with status {@code 400 (Bad Request)} if the criteria are not valid.
+     */
+    @GetMapping(value = "/_search/stocks", params = "!query")
+    public ResponseEntity<List<Stock>> searchStocks(@Valid StockSearchCriteria criteria, Pageable pageable) {
+        log.debug("REST request to search for a page of Stocks for criteria {}", criteria);
+        final Page<Stock> page;
+        try {
+            page = stockService.search(criteria, pageable);
+        } catch (InvalidSearchException e) {
+            throw new BadRequestAlertException("Invalid criteria", ENTITY_NAME, "criteriainvalid");
+        }
+        return searchResponse(page);
+    }
+
+    /**
+     * {@code SEARCH  /_search/stocks/_cursor?query=:query&size=:size&cursor=:cursor} : search for the stock
+     * corresponding to the query, walking the results with a cursor.
+     * <p>
+     * Pages are sorted by relevance. The next page, if any, is given by the {@code next} link: unlike page
+     * numbers, its cost doesn't grow with the depth.
+     *
+     * @param query  the query of the stock search.
+     * @param size   the number of stocks of the page.
+     * @param cursor the cursor of the page, absent for the first one.
+     * @return the result of the search, or with status {@code 400 (Bad Request)} if the cursor or size is not valid,
+     * or if Elasticsearch rejects the query, or with status {@code 503 (Service Unavailable)} if Elasticsearch is
+     * unavailable and the page is not the first one, which is then searched in the database.
+     */
+    @GetMapping("/_search/stocks/_cursor")
+    public ResponseEntity<List<Stock>> searchStocksWithCursor(@RequestParam String query,
+                                                              @RequestParam(defaultValue = "20") int size,
+                                                              @RequestParam(required = false) String cursor) {
+        log.debug("REST request to search for a page of Stocks for query {} after {}", query, cursor);
+        if (size < 1 || size > MAX_CURSOR_PAGE_SIZE) {
+            throw new BadRequestAlertException("Invalid page size", ENTITY_NAME, "sizeinvalid");
+        }
+        final StockCursorPage page;
+        try {
+            page = stockService.search(query, size, cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException("Invalid cursor", ENTITY_NAME, "cursorinvalid");
+        } catch (InvalidSearchException e) {
+            throw new BadRequestAlertException("Invalid query", ENTITY_NAME, "queryinvalid");
+        }
+        final HttpHeaders headers = new HttpHeaders();
+        if (page.isDegraded()) {
+            headers.add(SEARCH_DEGRADED_HEADER, "true");
+        }
+        if (page.getNextCursor() != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("cursor", page.getNextCursor())
+                .toUriString();
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return ResponseEntity.ok().headers(headers).body(page.getContent());
+    }
+
+    private ResponseEntity<List<Stock>> searchResponse(Page<Stock> page) {
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(ServletUriComponentsBuilder.fromCurrentRequest(), page);
+        if (page instanceof DegradedPage) {
+            headers.add(SEARCH_DEGRADED_HEADER, "true");
+        }
         return ResponseEntity.ok().headers(headers).body(page.getContent());
     }
+
+    /**
+     * Check an {@code If-Match} header against the current version of a stock.
+     *
+     * @return the current version of the stock.
+     */
+    private Long checkPrecondition(Long id, String ifMatch) {
+        final Long version = stockService.findVersion(id).orElseThrow(this::preconditionFailed);
+        if (!StockETags.isPreconditionMet(ifMatch, StockETags.of(version))) {
+            throw preconditionFailed();
+        }
+        return version;
+    }
+
+    private PreconditionFailedException preconditionFailed() {
+        return new PreconditionFailedException("Stock has been modified", ENTITY_NAME, PRECONDITION_FAILED);
+    }
 }
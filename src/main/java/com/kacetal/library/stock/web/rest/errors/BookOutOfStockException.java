@@ -1,42 +0,0 @@
-package com.kacetal.library.stock.web.rest.errors;
-
-import org.zalando.problem.AbstractThrowableProblem;
-import org.zalando.problem.Status;
-
-import java.net.URI;
-import java.util.HashMap;
-import java.util.Map;
-
-public class BookOutOfStockException extends AbstractThrowableProblem {
-
-    private static final long serialVersionUID = 1L;
-
-    private final String entityName;
-
-    private final String errorKey;
-
-    public BookOutOfStockException(String defaultMessage, String entityName, String errorKey) {
-        this(ErrorConstants.DEFAULT_TYPE, defaultMessage, entityName, errorKey);
-    }
-
-    public BookOutOfStockException(URI type, String defaultMessage, String entityName, String errorKey) {
-        super(type, defaultMessage, Status.NOT_ACCEPTABLE, null, null, null, getAlertParameters(entityName, errorKey));
-        this.entityName = entityName;
-        this.errorKey = errorKey;
-    }
-
-    private static Map<String, Object> getAlertParameters(String entityName, String errorKey) {
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("message", "error." + errorKey);
-        parameters.put("params", entityName);
-        return parameters;
-    }
-
-    public String getEntityName() {
-        return entityName;
-    }
-
-    public String getErrorKey() {
-        return errorKey;
-    }
-}
@@ -8,10 +8,14 @@ public final class ErrorConstants {
 
     public static final String ID_NULL = "id_null";
 
+    public static final String PRECONDITION_FAILED = "precondition_failed";
+
     public static final String ERR_CONCURRENCY_FAILURE = "error.concurrencyFailure";
 
     public static final String ERR_VALIDATION = "error.validation";
 
+    public static final String ERR_SEARCH_UNAVAILABLE = "error.searchUnavailable";
+
     public static final String PROBLEM_BASE_URL = "https://www.jhipster.tech/problem";
 
     public static final URI DEFAULT_TYPE = URI.create(PROBLEM_BASE_URL + "/problem-with-message");
@@ -1,5 +1,6 @@
 package com.kacetal.library.stock.web.rest.errors;
 
+import com.kacetal.library.stock.repository.search.SearchUnavailableException;
 import io.github.jhipster.web.util.HeaderUtil;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.ConcurrencyFailureException;
@@ -106,4 +107,13 @@ public class ExceptionTranslator implements ProblemHandling, SecurityAdviceTrait
             .build();
         return create(ex, problem, request);
     }
+
+    @ExceptionHandler
+    public ResponseEntity<Problem> handleSearchUnavailable(SearchUnavailableException ex, NativeWebRequest request) {
+        Problem problem = Problem.builder()
+            .withStatus(Status.SERVICE_UNAVAILABLE)
+            .with(MESSAGE_KEY, ErrorConstants.ERR_SEARCH_UNAVAILABLE)
+            .build();
+        return create(ex, problem, request);
+    }
 }
@@ -7,7 +7,7 @@ import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
 
-public class BookOutOfBorrowException extends AbstractThrowableProblem {
+public class PreconditionFailedException extends AbstractThrowableProblem {
 
     private static final long serialVersionUID = 1L;
 
@@ -15,12 +15,12 @@ public class BookOutOfBorrowException extends AbstractThrowableProblem {
 
     private final String errorKey;
 
-    public BookOutOfBorrowException(String defaultMessage, String entityName, String errorKey) {
+    public PreconditionFailedException(String defaultMessage, String entityName, String errorKey) {
         this(ErrorConstants.DEFAULT_TYPE, defaultMessage, entityName, errorKey);
     }
 
-    public BookOutOfBorrowException(URI type, String defaultMessage, String entityName, String errorKey) {
-        super(type, defaultMessage, Status.FORBIDDEN, null, null, null, getAlertParameters(entityName, errorKey));
+    public PreconditionFailedException(URI type, String defaultMessage, String entityName, String errorKey) {
+        super(type, defaultMessage, Status.PRECONDITION_FAILED, null, null, null, getAlertParameters(entityName, errorKey));
         this.entityName = entityName;
         this.errorKey = errorKey;
     }
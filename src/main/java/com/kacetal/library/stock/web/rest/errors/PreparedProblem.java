@@ -0,0 +1,87 @@
+package com.kacetal.library.stock.web.rest.errors;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.zalando.problem.Status;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A Problem body serialized once and written as raw JSON on every response.
+ * <p>
+ * Used for expected, high-volume rejections (e.g. a borrow on an out of stock book) so that they
+ * don't pay for a stack trace, the {@link ExceptionTranslator} and a new Problem per request.
+ * The body has the same fields as the corresponding alert exception.
+ */
+public final class PreparedProblem implements JsonSerializable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Status status;
+
+    private final String json;
+
+    private PreparedProblem(Status status, String json) {
+        this.status = status;
+        this.json = json;
+    }
+
+    public static PreparedProblem of(String defaultMessage, Status status, String entityName, String errorKey) {
+        return of(ErrorConstants.DEFAULT_TYPE, defaultMessage, status, entityName, errorKey);
+    }
+
+    public static PreparedProblem of(URI type, String defaultMessage, Status status, String entityName, String errorKey) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("entityName", entityName);
+        body.put("errorKey", errorKey);
+        body.put("type", type.toString());
+        body.put("title", defaultMessage);
+        body.put("status", status.getStatusCode());
+        body.put("message", "error." + errorKey);
+        body.put("params", entityName);
+        try {
+            return new PreparedProblem(status, MAPPER.writeValueAsString(body));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize problem " + errorKey, e);
+        }
+    }
+
+    /**
+     * Build an immutable response carrying this problem, suitable to be kept in a constant.
+     *
+     * @return the {@link ResponseEntity} with the problem status and body.
+     */
+    public ResponseEntity<PreparedProblem> toResponseEntity() {
+        return ResponseEntity.status(status.getStatusCode())
+            .contentType(MediaType.APPLICATION_PROBLEM_JSON)
+            .body(this);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        gen.writeRawValue(json);
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer) throws IOException {
+        serialize(gen, serializers);
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+}
@@ -0,0 +1,62 @@
+package com.kacetal.library.stock.aop.logging;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link ArgumentSummary}.
+ */
+public class ArgumentSummaryTest {
+
+    @Test
+    public void rendersShortArguments() {
+        assertThat(ArgumentSummary.ofArguments(new Object[]{1L, "name", null}, 100)).hasToString("[1, name, null]");
+        assertThat(ArgumentSummary.ofArguments(new Object[0], 100)).hasToString("[]");
+        assertThat(ArgumentSummary.ofArguments(null, 100)).hasToString("null");
+    }
+
+    @Test
+    public void capsLongArguments() {
+        String summary = ArgumentSummary.ofArguments(new Object[]{"a".repeat(50), "b".repeat(50)}, 20).toString();
+
+        assertThat(summary).isEqualTo("[" + "a".repeat(19) + "...");
+    }
+
+    @Test
+    public void capsLongResult() {
+        assertThat(ArgumentSummary.ofResult("short", 10)).hasToString("short");
+        assertThat(ArgumentSummary.ofResult("x".repeat(30), 10)).hasToString("x".repeat(10) + "...");
+        assertThat(ArgumentSummary.ofResult(null, 10)).hasToString("null");
+    }
+
+    @Test
+    public void skipsArgumentsAfterTheCap() {
+        CountingToString first = new CountingToString("c".repeat(30));
+        CountingToString second = new CountingToString("second");
+
+        ArgumentSummary summary = ArgumentSummary.ofArguments(new Object[]{first, second}, 10);
+
+        assertThat(first.calls).isZero();
+        assertThat(summary.toString()).hasSize(10 + 3);
+        assertThat(first.calls).isEqualTo(1);
+        assertThat(second.calls).isZero();
+    }
+
+    private static class CountingToString {
+
+        private final String value;
+
+        private int calls;
+
+        CountingToString(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            calls++;
+            return value;
+        }
+    }
+}
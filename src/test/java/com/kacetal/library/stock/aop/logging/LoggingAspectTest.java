@@ -0,0 +1,75 @@
+package com.kacetal.library.stock.aop.logging;
+
+import com.kacetal.library.stock.config.ApplicationProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.lang.reflect.Method;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the sampling of the {@link LoggingAspect}.
+ */
+public class LoggingAspectTest {
+
+    private static final int CALLS = 10_000;
+
+    private ApplicationProperties applicationProperties;
+
+    private Method sampled;
+
+    @BeforeEach
+    public void setup() throws NoSuchMethodException {
+        applicationProperties = new ApplicationProperties();
+        sampled = SampledService.class.getMethod("call");
+    }
+
+    @Test
+    public void samplesEveryCallWithRateOne() {
+        applicationProperties.getLoggingAspect().setSampleRate(1.0);
+
+        assertThat(sampledCalls(new LoggingAspect(new MockEnvironment(), applicationProperties))).isEqualTo(CALLS);
+    }
+
+    @Test
+    public void samplesNoCallWithRateZero() {
+        applicationProperties.getLoggingAspect().setSampleRate(0.0);
+
+        assertThat(sampledCalls(new LoggingAspect(new MockEnvironment(), applicationProperties))).isZero();
+    }
+
+    @Test
+    public void samplesAShareOfTheCalls() {
+        applicationProperties.getLoggingAspect().setSampleRate(0.25);
+
+        assertThat(sampledCalls(new LoggingAspect(new MockEnvironment(), applicationProperties)))
+            .isBetween((int) (CALLS * 0.2), (int) (CALLS * 0.3));
+    }
+
+    @Test
+    public void usesTheRateOfTheMethod() {
+        applicationProperties.getLoggingAspect().setSampleRate(1.0);
+        applicationProperties.getLoggingAspect().getSampleRates().put("SampledService.call", 0.0);
+
+        assertThat(sampledCalls(new LoggingAspect(new MockEnvironment(), applicationProperties))).isZero();
+    }
+
+    private int sampledCalls(LoggingAspect loggingAspect) {
+        int count = 0;
+        for (int i = 0; i < CALLS; i++) {
+            if (loggingAspect.isSampled(sampled)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static class SampledService {
+
+        public void call() {
+            // Only its signature is used
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.kacetal.library.stock.aop.timing;
+
+import com.kacetal.library.stock.repository.StockRepository;
+import com.kacetal.library.stock.repository.search.StockSearchRepository;
+import com.kacetal.library.stock.service.impl.StockServiceImpl;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the {@link TimingAspect}.
+ */
+public class TimingAspectTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private TimingAspect timingAspect;
+
+    private ProceedingJoinPoint joinPoint;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        timingAspect = new TimingAspect(meterRegistry);
+        MethodSignature signature = mock(MethodSignature.class);
+        when(signature.getMethod()).thenReturn(TimedService.class.getMethod("call"));
+        joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.getThis()).thenReturn(new TimedService());
+        when(joinPoint.getSignature()).thenReturn(signature);
+    }
+
+    @Test
+    public void timesSuccessfulCalls() throws Throwable {
+        when(joinPoint.proceed()).thenReturn("result");
+
+        assertThat(timingAspect.time(joinPoint)).isEqualTo("result");
+        timingAspect.time(joinPoint);
+
+        Timer timer = meterRegistry.get(TimingAspect.METRIC_NAME)
+            .tag("layer", "aop")
+            .tag("class", "TimedService")
+            .tag("method", "call")
+            .tag("exception", "none")
+            .timer();
+        assertThat(timer.count()).isEqualTo(2);
+    }
+
+    @Test
+    public void timesFailedCallsByException() throws Throwable {
+        when(joinPoint.proceed()).thenThrow(new IllegalStateException());
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> timingAspect.time(joinPoint)).isInstanceOf(IllegalStateException.class);
+        }
+
+        Timer timer = meterRegistry.get(TimingAspect.METRIC_NAME)
+            .tag("class", "TimedService")
+            .tag("exception", "IllegalStateException")
+            .timer();
+        assertThat(timer.count()).isEqualTo(3);
+        assertThat(meterRegistry.get(TimingAspect.METRIC_NAME).tag("exception", "none").timer().count()).isZero();
+    }
+
+    @Test
+    public void tagsTheLayerWithTheFirstApplicationPackage() {
+        assertThat(TimingAspect.layer(StockServiceImpl.class)).isEqualTo("service");
+        assertThat(TimingAspect.layer(StockRepository.class)).isEqualTo("repository");
+        assertThat(TimingAspect.layer(StockSearchRepository.class)).isEqualTo("repository");
+        assertThat(TimingAspect.layer(String.class)).isEqualTo("java.lang");
+    }
+
+    public static class TimedService {
+
+        public String call() {
+            return "result";
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.kacetal.library.stock.config.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link ReadYourWritesFilter}.
+ */
+public class ReadYourWritesFilterTest {
+
+    private ReadYourWritesFilter filter;
+
+    @BeforeEach
+    public void setup() {
+        filter = new ReadYourWritesFilter(Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    public void clear() {
+        DataSourceRoutingContext.clear();
+    }
+
+    @Test
+    public void readsFromReplicaWithoutMutation() throws Exception {
+        assertThat(isPinned(request("GET", "10.0.0.1"), 200)).isFalse();
+        assertThat(isPinned(request("GET", "10.0.0.1"), 200)).isFalse();
+    }
+
+    @Test
+    public void pinsClientToPrimaryAfterMutation() throws Exception {
+        isPinned(request("POST", "10.0.0.1"), 201);
+
+        assertThat(isPinned(request("GET", "10.0.0.1"), 200)).isTrue();
+        assertThat(isPinned(request("GET", "10.0.0.2"), 200)).isFalse();
+        // Not pinned outside of the request
+        assertThat(DataSourceRoutingContext.isPinnedToPrimary()).isFalse();
+    }
+
+    @Test
+    public void doesNotPinAfterFailedMutation() throws Exception {
+        isPinned(request("PUT", "10.0.0.1"), 400);
+
+        assertThat(isPinned(request("GET", "10.0.0.1"), 200)).isFalse();
+    }
+
+    @Test
+    public void unpinsClientAfterWindow() throws Exception {
+        filter = new ReadYourWritesFilter(Duration.ofMillis(1));
+        isPinned(request("DELETE", "10.0.0.1"), 204);
+        Thread.sleep(10);
+
+        assertThat(isPinned(request("GET", "10.0.0.1"), 200)).isFalse();
+    }
+
+    private static MockHttpServletRequest request(String method, String remoteAddress) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, "/api/stocks");
+        request.setRemoteAddr(remoteAddress);
+        return request;
+    }
+
+    /**
+     * Run a request through the filter.
+     *
+     * @return whether the request was pinned to the primary.
+     */
+    private boolean isPinned(MockHttpServletRequest request, int status) throws Exception {
+        AtomicBoolean pinned = new AtomicBoolean();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, res) -> {
+            pinned.set(DataSourceRoutingContext.isPinnedToPrimary());
+            response.setStatus(status);
+        };
+        filter.doFilter(request, response, chain);
+        return pinned.get();
+    }
+}
@@ -0,0 +1,85 @@
+package com.kacetal.library.stock.config.datasource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the routing of {@link BatchWorkload} methods to the batch pool, by the
+ * {@link WorkloadRoutingAspect} and the {@link WorkloadRoutingDataSource}.
+ */
+public class WorkloadRoutingTest {
+
+    private Connection interactiveConnection;
+
+    private Connection batchConnection;
+
+    private Worker worker;
+
+    @BeforeEach
+    public void setup() throws SQLException {
+        DataSource interactive = mock(DataSource.class);
+        DataSource batch = mock(DataSource.class);
+        interactiveConnection = mock(Connection.class);
+        batchConnection = mock(Connection.class);
+        when(interactive.getConnection()).thenReturn(interactiveConnection);
+        when(batch.getConnection()).thenReturn(batchConnection);
+
+        AspectJProxyFactory factory = new AspectJProxyFactory(new Worker(new WorkloadRoutingDataSource(interactive, batch)));
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new WorkloadRoutingAspect());
+        worker = factory.getProxy();
+    }
+
+    @Test
+    public void runsBatchWorkloadOnBatchPool() throws SQLException {
+        assertThat(worker.batch()).isSameAs(batchConnection);
+        // The workload is restored after the call
+        assertThat(DataSourceRoutingContext.getWorkload()).isEqualTo(Workload.INTERACTIVE);
+    }
+
+    @Test
+    public void runsOtherMethodsOnInteractivePool() throws SQLException {
+        assertThat(worker.interactive()).isSameAs(interactiveConnection);
+    }
+
+    @Test
+    public void runsMethodsCalledByBatchWorkloadOnBatchPool() throws SQLException {
+        assertThat(worker.batchCallingInteractive()).isSameAs(batchConnection);
+    }
+
+    public static class Worker {
+
+        private final DataSource dataSource;
+
+        public Worker() {
+            this(null);
+        }
+
+        public Worker(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @BatchWorkload
+        public Connection batch() throws SQLException {
+            return dataSource.getConnection();
+        }
+
+        public Connection interactive() throws SQLException {
+            return dataSource.getConnection();
+        }
+
+        @BatchWorkload
+        public Connection batchCallingInteractive() throws SQLException {
+            return interactive();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.kacetal.library.stock.management;
+
+import com.kacetal.library.stock.config.ApplicationProperties;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.RecordingState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.core.io.Resource;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link FlightRecorderEndpoint}.
+ */
+public class FlightRecorderEndpointTest {
+
+    private ApplicationProperties applicationProperties;
+
+    private FlightRecorderEndpoint endpoint;
+
+    @BeforeEach
+    public void setup() {
+        applicationProperties = new ApplicationProperties();
+        endpoint = new FlightRecorderEndpoint(applicationProperties);
+    }
+
+    @AfterEach
+    public void stopRecording() {
+        endpoint.stop();
+    }
+
+    @Test
+    public void startDumpAndStop() throws Exception {
+        Map<String, Object> status = endpoint.start("default");
+        assertThat(status).containsEntry("state", "RUNNING").containsEntry("name", "kacetal-library-stock");
+
+        // Starting again returns the status of the running recording
+        assertThat(endpoint.start(null)).containsEntry("state", "RUNNING").containsEntry("startTime", status.get("startTime"));
+
+        WebEndpointResponse<Resource> dump = endpoint.dump();
+        assertThat(dump.getStatus()).isEqualTo(WebEndpointResponse.STATUS_OK);
+        try (InputStream in = dump.getBody().getInputStream()) {
+            assertThat(in.readNBytes(4)).containsExactly('F', 'L', 'R', 0);
+        }
+
+        assertThat(endpoint.stop()).containsEntry("state", "CLOSED");
+        assertThat(endpoint.dump().getStatus()).isEqualTo(WebEndpointResponse.STATUS_NOT_FOUND);
+    }
+
+    @Test
+    public void startAgainOnceTheDurationElapsed() throws Exception {
+        applicationProperties.getJfr().setDuration(Duration.ofMillis(200));
+        Map<String, Object> first = endpoint.start("default");
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(isRunning()).isFalse();
+
+        applicationProperties.getJfr().setDuration(Duration.ofHours(1));
+        Map<String, Object> second = endpoint.start(null);
+        assertThat(second).containsEntry("state", "RUNNING");
+        assertThat(second.get("startTime")).isNotEqualTo(first.get("startTime"));
+    }
+
+    private static boolean isRunning() {
+        return FlightRecorder.getFlightRecorder().getRecordings().stream()
+            .anyMatch(recording -> recording.getName().equals("kacetal-library-stock") && recording.getState() == RecordingState.RUNNING);
+    }
+}
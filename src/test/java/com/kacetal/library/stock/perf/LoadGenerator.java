@@ -0,0 +1,262 @@
+package com.kacetal.library.stock.perf;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests to the application at the times of a schedule, and records their latencies.
+ * <p>
+ * A fixed number of connections send the requests, each waiting for its response before sending the next
+ * one. When they can't keep up, requests queue up instead of being sent later: the latency of a request is
+ * measured from the time it was scheduled at, not from the time it was sent, so that the stalls of the
+ * application are not hidden by the generator waiting for them (coordinated omission).
+ */
+public class LoadGenerator {
+
+    static final String ALL = "all";
+
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    /**
+     * Requests late by more than this are a saturated application, whose latencies are meaningless.
+     */
+    private static final long MAX_BACKLOG_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final HttpClient client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(5))
+        .build();
+
+    private final URI baseUri;
+
+    private final String token;
+
+    private final int connections;
+
+    public LoadGenerator(URI baseUri, String token, int connections) {
+        this.baseUri = baseUri;
+        this.token = token;
+        this.connections = connections;
+    }
+
+    /**
+     * Run a schedule of requests.
+     *
+     * @param schedule the requests, by increasing offset.
+     * @param warmup   how long after the start the latencies are not recorded.
+     * @return the latencies and errors of each operation.
+     */
+    public Report run(Iterator<ScheduledRequest> schedule, Duration warmup) throws InterruptedException {
+        final Report report = new Report();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(connections, connections, 0, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>());
+        final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        final long measureFrom = start + warmup.toNanos();
+        try {
+            while (schedule.hasNext() && !report.saturated) {
+                final ScheduledRequest request = schedule.next();
+                final long intended = start + request.offsetNanos;
+                long wait;
+                while ((wait = intended - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                executor.execute(() -> send(request, intended, intended >= measureFrom, report));
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            executor.shutdownNow();
+        }
+        report.elapsedNanos = System.nanoTime() - measureFrom;
+        return report;
+    }
+
+    private void send(ScheduledRequest scheduled, long intended, boolean recorded, Report report) {
+        if (System.nanoTime() - intended > MAX_BACKLOG_NANOS) {
+            report.saturated = true;
+            return;
+        }
+        final HttpRequest request = HttpRequest.newBuilder(baseUri.resolve(scheduled.uri))
+            .method(scheduled.method, HttpRequest.BodyPublishers.noBody())
+            .header("Authorization", "Bearer " + token)
+            .timeout(Duration.ofSeconds(30))
+            .build();
+        int status;
+        try {
+            status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            status = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (recorded) {
+            report.record(scheduled.operation, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended), status);
+        }
+    }
+
+    /**
+     * A request of a schedule.
+     */
+    public static final class ScheduledRequest {
+
+        final long offsetNanos;
+
+        final String operation;
+
+        final String method;
+
+        final String uri;
+
+        /**
+         * @param offsetNanos when to send the request, from the start of the run.
+         * @param operation   the name of the operation, which the latencies are reported by.
+         * @param method      the HTTP method.
+         * @param uri         the URI, relative to the application.
+         */
+        public ScheduledRequest(long offsetNanos, String operation, String method, String uri) {
+            this.offsetNanos = offsetNanos;
+            this.operation = operation;
+            this.method = method;
+            this.uri = uri;
+        }
+    }
+
+    /**
+     * Latencies, in microseconds, and errors of the requests of a run, by operation.
+     */
+    public static final class Report {
+
+        private final Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+
+        private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        private final Map<String, LongAdder> rejections = new ConcurrentHashMap<>();
+
+        private volatile boolean saturated;
+
+        private long elapsedNanos;
+
+        void record(String operation, long latencyMicros, int status) {
+            final long latency = Math.min(latencyMicros, HIGHEST_LATENCY_MICROS);
+            for (String name : List.of(operation, ALL)) {
+                latencies.computeIfAbsent(name, key -> new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, 3)).recordValue(latency);
+                if (status < 0 || status >= 500) {
+                    errors.computeIfAbsent(name, key -> new LongAdder()).increment();
+                } else if (status >= 400) {
+                    rejections.computeIfAbsent(name, key -> new LongAdder()).increment();
+                }
+            }
+        }
+
+        public boolean isSaturated() {
+            return saturated;
+        }
+
+        /**
+         * Summary line per operation: throughput, percentiles, errors and rejections (4xx).
+         */
+        public String summary() {
+            final double seconds = Math.max(elapsedNanos, 1) / 1e9;
+            final Formatter out = new Formatter(new StringBuilder(), Locale.ROOT);
+            out.format("%-10s %10s %9s %9s %9s %9s %9s %9s %9s %8s %8s%n", "operation", "count", "req/s",
+                "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "p99.99 ms", "max ms", "errors", "4xx");
+            for (Map.Entry<String, Histogram> entry : new TreeMap<>(latencies).entrySet()) {
+                final Histogram histogram = entry.getValue();
+                out.format("%-10s %10d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f %8d %8d%n", entry.getKey(),
+                    histogram.getTotalCount(), histogram.getTotalCount() / seconds,
+                    millis(histogram, 50), millis(histogram, 90), millis(histogram, 99), millis(histogram, 99.9),
+                    millis(histogram, 99.99), histogram.getMaxValue() / 1000.0,
+                    count(errors, entry.getKey()), count(rejections, entry.getKey()));
+            }
+            if (saturated) {
+                out.format("The application was saturated: requests were late by more than %d s, the run was stopped%n",
+                    TimeUnit.NANOSECONDS.toSeconds(MAX_BACKLOG_NANOS));
+            }
+            return out.toString();
+        }
+
+        /**
+         * Write the percentile distribution of each operation, in the {@code .hgrm} format of HdrHistogram,
+         * in milliseconds.
+         */
+        public void write(Path directory) throws IOException {
+            Files.createDirectories(directory);
+            for (Map.Entry<String, Histogram> entry : latencies.entrySet()) {
+                try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(entry.getKey() + ".hgrm")))) {
+                    entry.getValue().outputPercentileDistribution(out, 1000.0);
+                }
+            }
+        }
+
+        /**
+         * Check the run against service level objectives.
+         *
+         * @param objectives   the maximum latencies in milliseconds, by percentile, prefixed by the operation
+         *                     they apply to (e.g. {@code borrow.p99}) or not to apply to all the operations.
+         * @param maxErrorRate the maximum share of requests failing with a 5xx or no response.
+         * @return the objectives missed, empty if none.
+         */
+        public List<String> violations(Map<String, Double> objectives, double maxErrorRate) {
+            final List<String> violations = new ArrayList<>();
+            if (saturated) {
+                violations.add("the application was saturated");
+            }
+            for (Map.Entry<String, Histogram> entry : new TreeMap<>(latencies).entrySet()) {
+                final String operation = entry.getKey();
+                final Histogram histogram = entry.getValue();
+                for (Map.Entry<String, Double> objective : objectives.entrySet()) {
+                    final String key = objective.getKey();
+                    final int dot = key.lastIndexOf(".p");
+                    final String scope = dot < 0 ? null : key.substring(0, dot);
+                    if (scope != null && !scope.equals(operation)) {
+                        continue;
+                    }
+                    final double percentile = Double.parseDouble(key.substring(dot < 0 ? 1 : dot + 2));
+                    final double actual = millis(histogram, percentile);
+                    if (actual > objective.getValue()) {
+                        violations.add(String.format("%s p%s is %.2f ms, over %.2f ms", operation,
+                            key.substring(dot < 0 ? 1 : dot + 2), actual, objective.getValue()));
+                    }
+                }
+                final double errorRate = (double) count(errors, operation) / Math.max(histogram.getTotalCount(), 1);
+                if (errorRate > maxErrorRate) {
+                    violations.add(String.format("%s error rate is %.4f, over %.4f", operation, errorRate, maxErrorRate));
+                }
+            }
+            return violations;
+        }
+
+        private static double millis(Histogram histogram, double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1000.0;
+        }
+
+        private static long count(Map<String, LongAdder> counters, String operation) {
+            final LongAdder counter = counters.get(operation);
+            return counter == null ? 0 : counter.sum();
+        }
+    }
+}
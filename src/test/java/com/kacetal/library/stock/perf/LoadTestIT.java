@@ -0,0 +1,311 @@
+package com.kacetal.library.stock.perf;
+
+import com.kacetal.library.stock.KacetalLibraryStockApp;
+import com.kacetal.library.stock.domain.Stock;
+import com.kacetal.library.stock.repository.search.StockSearchRepository;
+import com.kacetal.library.stock.security.AuthoritiesConstants;
+import com.kacetal.library.stock.security.jwt.TokenProvider;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+import org.springframework.jdbc.support.incrementer.H2SequenceMaxValueIncrementer;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.when;
+
+/**
+ * Load test of the application booted with H2 and the mocked {@link StockSearchRepository}, so that it runs offline.
+ * <p>
+ * The database is filled with a {@link StockDataset}, then requests are sent at a fixed rate by a {@link LoadGenerator},
+ * either drawn from a mix of operations or replayed from a trace written by the {@link StockDatasetLoaderIT}. The
+ * stocks get ids from the sequence, like the other tests' ones, and the ids of the dataset in the requests are mapped
+ * to them. The percentiles of each operation are logged and written in {@code target/load-test}, and the test fails
+ * if they miss the objectives. Only runs with {@code -Dload=true}; the other system properties are:
+ * <ul>
+ *     <li>{@code load.rows} (default 10,000), {@code load.seed} (default 42): the dataset;</li>
+ *     <li>{@code load.rate} (default 200 requests per second), {@code load.duration} (default PT60S),
+ *     {@code load.warmup} (default PT10S) and {@code load.connections} (default 16);</li>
+ *     <li>{@code load.mix} (default {@code get:50,list:10,search:10,borrow:15,return:15}), or {@code load.trace-file};</li>
+ *     <li>{@code load.slo} (default {@code p99=100,p99.9=500}): maximum latencies in milliseconds by percentile,
+ *     optionally for one operation, e.g. {@code borrow.p99=50}; and {@code load.max-error-rate} (default 0.001).</li>
+ * </ul>
+ */
+@SpringBootTest(classes = KacetalLibraryStockApp.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@EnabledIfSystemProperty(named = "load", matches = "true")
+public class LoadTestIT {
+
+    private static final int ROWS = Integer.getInteger("load.rows", 10_000);
+
+    private static final long SEED = Long.getLong("load.seed", 42);
+
+    private static final int INSERT_BATCH_SIZE = 1_000;
+
+    /**
+     * Increment of the {@code sequence_generator} sequence: each {@code nextval} gives that many ids, as with the
+     * Hibernate pooled optimizer.
+     */
+    private static final int SEQUENCE_INCREMENT = 50;
+
+    private static final Pattern STOCK_URI = Pattern.compile("^/api/stocks/(\\d+)");
+
+    private final Logger log = LoggerFactory.getLogger(LoadTestIT.class);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TokenProvider tokenProvider;
+
+    /**
+     * This repository is mocked in the com.kacetal.library.stock.repository.search test package.
+     *
+     * @see com.kacetal.library.stock.repository.search.StockSearchRepositoryMockConfiguration
+     */
+    @Autowired
+    private StockSearchRepository mockStockSearchRepository;
+
+    private final StockDataset dataset = new StockDataset(SEED, ROWS, 1.0);
+
+    /**
+     * Id of the stock of each id of the dataset, less one.
+     */
+    private final long[] ids = new long[ROWS];
+
+    @BeforeEach
+    public void loadDataset() {
+        final DataFieldMaxValueIncrementer sequence = new H2SequenceMaxValueIncrementer(jdbcTemplate.getDataSource(), "sequence_generator");
+        final List<Object[]> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        long nextId = 0;
+        long lastId = -1;
+        for (int index = 0; index < ROWS; index++) {
+            if (nextId > lastId) {
+                lastId = sequence.nextLongValue();
+                nextId = lastId - SEQUENCE_INCREMENT + 1;
+            }
+            ids[index] = nextId++;
+            final Stock stock = dataset.stock(index + 1);
+            batch.add(new Object[]{ids[index], stock.getName(), stock.getQuantity(), stock.getBookStockStatus().code()});
+            if (batch.size() == INSERT_BATCH_SIZE || index == ROWS - 1) {
+                jdbcTemplate.batchUpdate("insert into stock (id, name, quantity, book_stock_status, version) values (?, ?, ?, ?, 0)", batch);
+                batch.clear();
+            }
+        }
+        when(mockStockSearchRepository.search(any(QueryBuilder.class), any(Pageable.class)))
+            .thenAnswer(invocation -> new PageImpl<Stock>(List.of(), invocation.getArgument(1), 0));
+    }
+
+    @AfterEach
+    public void deleteDataset() {
+        final List<Object[]> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (int index = 0; index < ROWS; index++) {
+            batch.add(new Object[]{ids[index]});
+            if (batch.size() == INSERT_BATCH_SIZE || index == ROWS - 1) {
+                jdbcTemplate.batchUpdate("delete from stock where id = ?", batch);
+                batch.clear();
+            }
+        }
+        // The mock is shared by the tests of the context
+        reset(mockStockSearchRepository);
+    }
+
+    @Test
+    public void meetsServiceLevelObjectives() throws Exception {
+        final String token = tokenProvider.createToken(new UsernamePasswordAuthenticationToken("load-test", null,
+            List.of(new SimpleGrantedAuthority(AuthoritiesConstants.USER))), false);
+        final LoadGenerator generator = new LoadGenerator(URI.create("http://localhost:" + port),
+            token, Integer.getInteger("load.connections", 16));
+        final Duration warmup = Duration.parse(System.getProperty("load.warmup", "PT10S"));
+        final Duration duration = Duration.parse(System.getProperty("load.duration", "PT60S"));
+        final String traceFile = System.getProperty("load.trace-file");
+
+        final LoadGenerator.Report report;
+        if (traceFile != null) {
+            try (BufferedReader trace = Files.newBufferedReader(Paths.get(traceFile), StandardCharsets.UTF_8)) {
+                report = generator.run(replay(trace, warmup.plus(duration)), warmup);
+            }
+        } else {
+            report = generator.run(mix(parseWeights(System.getProperty("load.mix", "get:50,list:10,search:10,borrow:15,return:15")),
+                Double.parseDouble(System.getProperty("load.rate", "200")), warmup.plus(duration)), warmup);
+        }
+
+        log.info("Load test report:{}{}", System.lineSeparator(), report.summary());
+        report.write(Paths.get("target", "load-test"));
+        assertThat(report.violations(parseObjectives(System.getProperty("load.slo", "p99=100,p99.9=500")),
+            Double.parseDouble(System.getProperty("load.max-error-rate", "0.001")))).isEmpty();
+    }
+
+    /**
+     * Requests at a fixed rate, whose operations are drawn with weights.
+     */
+    private Iterator<LoadGenerator.ScheduledRequest> mix(Map<String, Integer> weights, double rate, Duration length) {
+        final int totalWeight = weights.values().stream().mapToInt(Integer::intValue).sum();
+        final long count = (long) (rate * length.toNanos() / 1e9);
+        final SplittableRandom random = new SplittableRandom(SEED);
+        return new Iterator<>() {
+
+            private long index;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public LoadGenerator.ScheduledRequest next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final long offset = (long) (index++ * 1e9 / rate);
+                int draw = random.nextInt(totalWeight);
+                String operation = null;
+                for (Map.Entry<String, Integer> weight : weights.entrySet()) {
+                    operation = weight.getKey();
+                    draw -= weight.getValue();
+                    if (draw < 0) {
+                        break;
+                    }
+                }
+                final long id = ids[(int) dataset.popularId(random) - 1];
+                switch (operation) {
+                    case "get":
+                        return new LoadGenerator.ScheduledRequest(offset, operation, "GET", "/api/stocks/" + id);
+                    case "list":
+                        return new LoadGenerator.ScheduledRequest(offset, operation, "GET",
+                            "/api/stocks?page=" + random.nextInt(Math.max(ROWS / 20, 1)) + "&size=20");
+                    case "search":
+                        return new LoadGenerator.ScheduledRequest(offset, operation, "GET", "/api/_search/stocks?query="
+                            + StockDataset.VOCABULARY[random.nextInt(StockDataset.VOCABULARY.length)]);
+                    case "borrow":
+                        return new LoadGenerator.ScheduledRequest(offset, operation, "PATCH", "/api/stocks/" + id + "/borrow");
+                    case "return":
+                        return new LoadGenerator.ScheduledRequest(offset, operation, "PATCH", "/api/stocks/" + id + "/return");
+                    default:
+                        throw new IllegalArgumentException("Unknown operation " + operation);
+                }
+            }
+        };
+    }
+
+    /**
+     * Requests of a trace, up to a length.
+     */
+    private Iterator<LoadGenerator.ScheduledRequest> replay(BufferedReader trace, Duration length) {
+        final long end = length.toNanos();
+        return new Iterator<>() {
+
+            private LoadGenerator.ScheduledRequest next = read();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public LoadGenerator.ScheduledRequest next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                final LoadGenerator.ScheduledRequest current = next;
+                next = read();
+                return current;
+            }
+
+            private LoadGenerator.ScheduledRequest read() {
+                try {
+                    final String line = trace.readLine();
+                    if (line == null) {
+                        return null;
+                    }
+                    final String[] fields = line.split(";", 3);
+                    final long offset = TimeUnit.MICROSECONDS.toNanos(Long.parseLong(fields[0]));
+                    final String uri = stockUri(fields[2]);
+                    return offset > end ? null : new LoadGenerator.ScheduledRequest(offset, operationOf(uri), fields[1], uri);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Map the id of the dataset in the URI of a stock, if any, to the id of the stock.
+     */
+    private String stockUri(String uri) {
+        final Matcher matcher = STOCK_URI.matcher(uri);
+        if (!matcher.find()) {
+            return uri;
+        }
+        final long id = Long.parseLong(matcher.group(1));
+        return id < 1 || id > ROWS ? uri : "/api/stocks/" + ids[(int) id - 1] + uri.substring(matcher.end());
+    }
+
+    private static String operationOf(String uri) {
+        if (uri.endsWith("/borrow")) {
+            return "borrow";
+        } else if (uri.endsWith("/return")) {
+            return "return";
+        } else if (uri.startsWith("/api/stocks/_suggest")) {
+            return "suggest";
+        } else if (uri.startsWith("/api/_search/")) {
+            return "search";
+        } else if (uri.matches("/api/stocks/\\d+")) {
+            return "get";
+        }
+        return "list";
+    }
+
+    private static Map<String, Integer> parseWeights(String mix) {
+        final Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            final String[] parts = entry.trim().split(":");
+            weights.put(parts[0], Integer.parseInt(parts[1]));
+        }
+        return weights;
+    }
+
+    private static Map<String, Double> parseObjectives(String slo) {
+        final Map<String, Double> objectives = new LinkedHashMap<>();
+        for (String entry : slo.split(",")) {
+            final String[] parts = entry.trim().split("=");
+            objectives.put(parts[0], Double.parseDouble(parts[1]));
+        }
+        return objectives;
+    }
+}
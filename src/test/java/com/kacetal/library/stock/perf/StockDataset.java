@@ -0,0 +1,241 @@
+package com.kacetal.library.stock.perf;
+
+import com.kacetal.library.stock.domain.Stock;
+import com.kacetal.library.stock.domain.enumeration.BookStockStatus;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * A deterministic, seedable synthetic catalogue of stocks, and traces of requests on it.
+ * <p>
+ * Each stock is generated from the seed and its id only, so any slice of the catalogue can be generated
+ * independently, in any order, and is the same from one run to the other. Names are made of words drawn
+ * from a vocabulary with a Zipf distribution, like titles share common words. The popularity of the stocks
+ * follows a Zipf distribution too: the stock of rank {@code r} is requested in proportion to
+ * {@code 1 / r^s}, and the ranks are spread over the ids by a fixed permutation, so that popular stocks
+ * aren't all at the beginning of the table.
+ */
+public class StockDataset {
+
+    static final String[] VOCABULARY = {
+        "the", "of", "and", "a", "in", "to", "history", "war", "love", "world", "life", "night", "house", "river",
+        "city", "king", "stars", "road", "secret", "garden", "winter", "summer", "shadow", "light", "sea", "time",
+        "stone", "fire", "glass", "silver", "iron", "black", "white", "red", "blue", "green", "golden", "lost",
+        "last", "first", "little", "great", "old", "new", "dark", "long", "wild", "silent", "hidden", "broken",
+        "book", "song", "tale", "story", "journey", "letters", "memoirs", "guide", "art", "science", "theory",
+        "introduction", "principles", "handbook", "poems", "essays", "chronicles", "mystery", "murder", "empire",
+        "kingdom", "island", "mountain", "forest", "desert", "ocean", "storm", "rain", "snow", "wind", "sun",
+        "moon", "earth", "heaven", "angel", "dragon", "wolf", "bird", "horse", "lion", "rose", "tree", "child",
+        "mother", "father", "daughter", "son", "brother", "sister", "friend", "stranger", "soldier", "queen",
+        "prince", "princess", "doctor", "teacher", "thief", "hunter", "keeper", "maker", "dreamer", "traveller",
+        "java", "spring", "patterns", "algorithms", "systems", "design", "programming", "data", "networks", "code",
+        "philosophy", "mathematics", "physics", "chemistry", "biology", "economics", "politics", "music", "painting",
+        "cooking", "gardening", "travel", "french", "english", "russian", "ancient", "modern", "future", "past"
+    };
+
+    private static final long MIXER = 0x9E3779B97F4A7C15L;
+
+    private static final double NAME_EXPONENT = 1.1;
+
+    private final long seed;
+
+    private final long size;
+
+    private final ZipfSampler words = new ZipfSampler(VOCABULARY.length, NAME_EXPONENT);
+
+    private final ZipfSampler popularity;
+
+    private final long multiplier;
+
+    private final long offset;
+
+    /**
+     * @param seed               the seed; the same seed and size give the same catalogue and traces.
+     * @param size               the number of stocks, with ids from 1 to {@code size}.
+     * @param popularityExponent the exponent {@code s} of the Zipf distribution of the popularity, around 1.
+     */
+    public StockDataset(long seed, long size, double popularityExponent) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The dataset must have at least one stock");
+        }
+        this.seed = seed;
+        this.size = size;
+        this.popularity = new ZipfSampler(size, popularityExponent);
+        // rank -> id is the affine permutation (rank * multiplier + offset) mod size, a bijection when both are coprime
+        long candidate = Math.floorMod(mix(seed), size) | 1;
+        while (gcd(candidate, size) != 1) {
+            candidate += 2;
+        }
+        this.multiplier = candidate % size == 0 ? 1 : candidate % size;
+        this.offset = Math.floorMod(mix(seed + 1), size);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Generate the stock with an id.
+     *
+     * @param id the id, from 1 to {@link #size()}.
+     * @return the stock, always the same for this seed and id.
+     */
+    public Stock stock(long id) {
+        final SplittableRandom random = new SplittableRandom(mix(seed ^ (id * MIXER)));
+        final Stock stock = new Stock();
+        stock.setId(id);
+        stock.setName(name(random));
+        stock.setQuantity(random.nextInt(16));
+        if (random.nextInt(50) == 0) {
+            stock.setBookStockStatus(BookStockStatus.OUT_OF_BORROW);
+        } else {
+            stock.setBookStockStatus(stock.getQuantity() > 0 ? BookStockStatus.AVAILABLE : BookStockStatus.OUT_OF_STOCK);
+        }
+        stock.setVersion(0L);
+        return stock;
+    }
+
+    /**
+     * Draw the id of a stock according to its popularity.
+     */
+    public long popularId(SplittableRandom random) {
+        return idOfRank(popularity.sample(random));
+    }
+
+    /**
+     * Get the id of the stock of a popularity rank, 1 being the most popular.
+     */
+    public long idOfRank(long rank) {
+        return Math.floorMod(Math.multiplyExact(rank - 1, multiplier) + offset, size) + 1;
+    }
+
+    /**
+     * Write a trace of requests arriving as a Poisson process, one per line: the offset of the request from
+     * the start of the trace in microseconds, its method and its URI, separated by {@code ;}.
+     * <p>
+     * Half of the requests read a stock, a third borrow or return one, and the others type a name ahead or
+     * search it. Stocks are chosen by popularity.
+     *
+     * @param requests      the number of requests.
+     * @param ratePerSecond the mean number of requests per second.
+     * @param out           where to write the trace.
+     */
+    public void writeTrace(long requests, double ratePerSecond, Writer out) throws IOException {
+        final SplittableRandom random = new SplittableRandom(mix(seed ^ MIXER));
+        double offsetMicros = 0;
+        for (long i = 0; i < requests; i++) {
+            offsetMicros += -Math.log(1 - random.nextDouble()) * 1_000_000 / ratePerSecond;
+            final long id = popularId(random);
+            final int kind = random.nextInt(100);
+            final String request;
+            if (kind < 50) {
+                request = "GET;/api/stocks/" + id;
+            } else if (kind < 67) {
+                request = "PATCH;/api/stocks/" + id + "/borrow";
+            } else if (kind < 84) {
+                request = "PATCH;/api/stocks/" + id + "/return";
+            } else if (kind < 94) {
+                final String name = stock(id).getName().toLowerCase(Locale.ROOT);
+                request = "GET;/api/stocks/_suggest?prefix=" + name.substring(0, Math.min(name.length(), 1 + random.nextInt(6)))
+                    .trim().replace(' ', '+');
+            } else {
+                request = "GET;/api/_search/stocks?query=" + VOCABULARY[(int) words.sample(random) - 1];
+            }
+            out.write(Long.toString((long) offsetMicros));
+            out.write(';');
+            out.write(request);
+            out.write('\n');
+        }
+    }
+
+    private String name(SplittableRandom random) {
+        final int wordCount = 2 + random.nextInt(4);
+        final StringBuilder name = new StringBuilder();
+        for (int i = 0; i < wordCount; i++) {
+            final String word = VOCABULARY[(int) words.sample(random) - 1];
+            if (name.length() + word.length() + 1 > 50) {
+                break;
+            }
+            if (name.length() > 0) {
+                name.append(' ');
+            }
+            name.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+        }
+        return name.toString();
+    }
+
+    private static long mix(long value) {
+        long z = value + MIXER;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * Samples a Zipf distribution over {@code 1..n} in constant time, by rejection-inversion
+     * (Hörmann and Derflinger, 1996), so that it scales to hundreds of millions of elements.
+     */
+    static final class ZipfSampler {
+
+        private final long n;
+
+        private final double exponent;
+
+        private final double hIntegralX1;
+
+        private final double hIntegralN;
+
+        private final double s;
+
+        ZipfSampler(long n, double exponent) {
+            if (exponent <= 0) {
+                throw new IllegalArgumentException("The exponent must be positive");
+            }
+            this.n = n;
+            this.exponent = exponent;
+            this.hIntegralX1 = hIntegral(1.5) - 1;
+            this.hIntegralN = hIntegral(n + 0.5);
+            this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        }
+
+        long sample(SplittableRandom random) {
+            while (true) {
+                final double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+                final double x = hIntegralInverse(u);
+                final long k = Math.max(1, Math.min(n, (long) (x + 0.5)));
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        private double hIntegral(double x) {
+            final double logX = Math.log(x);
+            return expm1OverX((1 - exponent) * logX) * logX;
+        }
+
+        private double hIntegralInverse(double x) {
+            final double t = Math.max(-1, x * (1 - exponent));
+            return Math.exp(log1pOverX(t) * x);
+        }
+
+        private static double log1pOverX(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        private static double expm1OverX(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+        }
+    }
+}
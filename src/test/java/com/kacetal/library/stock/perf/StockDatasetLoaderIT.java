@@ -0,0 +1,226 @@
+package com.kacetal.library.stock.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kacetal.library.stock.domain.Stock;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestClientFactory;
+import io.searchbox.client.config.HttpClientConfig;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import io.searchbox.core.Index;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads a {@link StockDataset} into a database and Elasticsearch, and writes a trace of requests on it for the
+ * load tests.
+ * <p>
+ * Only runs when the {@code dataset.rows} system property is set. The other properties are:
+ * <ul>
+ *     <li>{@code dataset.seed} (default 42) and {@code dataset.popularity-exponent} (default 1.0);</li>
+ *     <li>{@code dataset.jdbc-url}, {@code dataset.username} and {@code dataset.password}: the database, whose
+ *     {@code stock} table must be empty; PostgreSQL is loaded with {@code COPY}, others with batched inserts;</li>
+ *     <li>{@code dataset.elasticsearch-url} and {@code dataset.index-threads} (default 4): the search index, loaded
+ *     with bulk requests sent in parallel;</li>
+ *     <li>{@code dataset.trace-file}, {@code dataset.trace-requests} (default 1,000,000) and
+ *     {@code dataset.trace-rate} (default 500 requests per second): the trace.</li>
+ * </ul>
+ * Each part is skipped when its location isn't given.
+ */
+@EnabledIfSystemProperty(named = "dataset.rows", matches = "\\d+")
+public class StockDatasetLoaderIT {
+
+    private static final int COPY_BUFFER_SIZE = 1 << 20;
+
+    private static final int INSERT_BATCH_SIZE = 10_000;
+
+    private static final int BULK_SIZE = 5_000;
+
+    /**
+     * Increment of the {@code sequence_generator} sequence, and size of the blocks of ids of the Hibernate pooled
+     * optimizer.
+     */
+    private static final int SEQUENCE_INCREMENT = 50;
+
+    private final Logger log = LoggerFactory.getLogger(StockDatasetLoaderIT.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final StockDataset dataset = new StockDataset(Long.getLong("dataset.seed", 42), Long.getLong("dataset.rows"),
+        Double.parseDouble(System.getProperty("dataset.popularity-exponent", "1.0")));
+
+    @Test
+    public void loadDataset() throws Exception {
+        final String jdbcUrl = System.getProperty("dataset.jdbc-url");
+        if (jdbcUrl != null) {
+            long begin = System.nanoTime();
+            try (Connection connection = DriverManager.getConnection(jdbcUrl,
+                System.getProperty("dataset.username"), System.getProperty("dataset.password"))) {
+                if (connection.isWrapperFor(PGConnection.class)) {
+                    copy(connection.unwrap(PGConnection.class));
+                } else {
+                    insert(connection);
+                }
+                try (Statement statement = connection.createStatement()) {
+                    // Stocks created afterwards get ids after the generated ones: the next value ends the first
+                    // block of ids handed out by the pooled optimizer, which starts an increment before it
+                    statement.execute(connection.isWrapperFor(PGConnection.class)
+                        ? "select setval('sequence_generator', " + (dataset.size() + 1) + ")"
+                        : "alter sequence sequence_generator restart with " + (dataset.size() + 1 + SEQUENCE_INCREMENT));
+                }
+            }
+            log.info("Loaded {} stocks into the database in {} s", dataset.size(), elapsedSeconds(begin));
+        }
+
+        final String elasticsearchUrl = System.getProperty("dataset.elasticsearch-url");
+        if (elasticsearchUrl != null) {
+            long begin = System.nanoTime();
+            index(elasticsearchUrl, Integer.getInteger("dataset.index-threads", 4));
+            log.info("Indexed {} stocks in {} s", dataset.size(), elapsedSeconds(begin));
+        }
+
+        final String traceFile = System.getProperty("dataset.trace-file");
+        if (traceFile != null) {
+            final long requests = Long.getLong("dataset.trace-requests", 1_000_000);
+            try (Writer out = Files.newBufferedWriter(Paths.get(traceFile), StandardCharsets.UTF_8)) {
+                dataset.writeTrace(requests, Double.parseDouble(System.getProperty("dataset.trace-rate", "500")), out);
+            }
+            log.info("Wrote a trace of {} requests to {}", requests, traceFile);
+        }
+    }
+
+    private void copy(PGConnection connection) throws SQLException {
+        final CopyIn copy = connection.getCopyAPI()
+            .copyIn("copy stock (id, name, quantity, book_stock_status, version) from stdin with (format csv)");
+        try {
+            final StringBuilder buffer = new StringBuilder(COPY_BUFFER_SIZE + 256);
+            for (long id = 1; id <= dataset.size(); id++) {
+                final Stock stock = dataset.stock(id);
+                // The generated names have neither commas nor quotes
+                buffer.append(id).append(',').append(stock.getName()).append(',').append(stock.getQuantity()).append(',')
+                    .append(stock.getBookStockStatus().code()).append(",0\n");
+                if (buffer.length() >= COPY_BUFFER_SIZE) {
+                    write(copy, buffer);
+                }
+            }
+            write(copy, buffer);
+            copy.endCopy();
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    private static void write(CopyIn copy, StringBuilder buffer) throws SQLException {
+        final byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    private void insert(Connection connection) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement(
+            "insert into stock (id, name, quantity, book_stock_status, version) values (?, ?, ?, ?, 0)")) {
+            for (long id = 1; id <= dataset.size(); id++) {
+                final Stock stock = dataset.stock(id);
+                insert.setLong(1, id);
+                insert.setString(2, stock.getName());
+                insert.setInt(3, stock.getQuantity());
+                insert.setShort(4, stock.getBookStockStatus().code());
+                insert.addBatch();
+                if (id % INSERT_BATCH_SIZE == 0 || id == dataset.size()) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+        }
+    }
+
+    private void index(String elasticsearchUrl, int threads) throws Exception {
+        final JestClientFactory factory = new JestClientFactory();
+        factory.setHttpClientConfig(new HttpClientConfig.Builder(elasticsearchUrl)
+            .multiThreaded(true)
+            .defaultMaxTotalConnectionPerRoute(threads)
+            .readTimeout((int) TimeUnit.MINUTES.toMillis(1))
+            .build());
+        final JestClient client = factory.getObject();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // Bounds the bulks built ahead of the ones being sent
+        final Semaphore inFlight = new Semaphore(threads * 2);
+        final List<Future<?>> bulks = new ArrayList<>();
+        try {
+            for (long first = 1; first <= dataset.size(); first += BULK_SIZE) {
+                final long from = first;
+                final long to = Math.min(first + BULK_SIZE, dataset.size() + 1);
+                inFlight.acquire();
+                bulks.add(executor.submit(() -> {
+                    try {
+                        sendBulk(client, from, to);
+                    } finally {
+                        inFlight.release();
+                    }
+                    return null;
+                }));
+                checkDone(bulks);
+            }
+            for (Future<?> bulk : bulks) {
+                bulk.get();
+            }
+        } finally {
+            executor.shutdown();
+            client.close();
+        }
+    }
+
+    /**
+     * Forget the bulks already sent, failing if one of them failed.
+     */
+    private static void checkDone(List<Future<?>> bulks) throws Exception {
+        for (Iterator<Future<?>> iterator = bulks.iterator(); iterator.hasNext(); ) {
+            final Future<?> bulk = iterator.next();
+            if (bulk.isDone()) {
+                bulk.get();
+                iterator.remove();
+            }
+        }
+    }
+
+    private void sendBulk(JestClient client, long from, long to) throws IOException {
+        final Bulk.Builder bulk = new Bulk.Builder().defaultIndex("stock").defaultType("stock");
+        for (long id = from; id < to; id++) {
+            bulk.addAction(new Index.Builder(objectMapper.writeValueAsString(dataset.stock(id))).id(Long.toString(id)).build());
+        }
+        final BulkResult result = client.execute(bulk.build());
+        if (!result.isSucceeded()) {
+            throw new IOException("Bulk of stocks [" + from + ", " + to + ") failed: " + result.getErrorMessage());
+        }
+    }
+
+    private static long elapsedSeconds(long begin) {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - begin);
+    }
+}
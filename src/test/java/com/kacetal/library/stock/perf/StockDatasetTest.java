@@ -0,0 +1,68 @@
+package com.kacetal.library.stock.perf;
+
+import com.kacetal.library.stock.domain.Stock;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StockDatasetTest {
+
+    @Test
+    public void stocksDependOnTheSeedAndIdOnly() {
+        StockDataset dataset = new StockDataset(42, 1_000_000, 1.0);
+        StockDataset sameDataset = new StockDataset(42, 1_000_000, 1.0);
+        StockDataset otherDataset = new StockDataset(43, 1_000_000, 1.0);
+
+        Stock stock = dataset.stock(123_456);
+        assertThat(sameDataset.stock(123_456)).usingRecursiveComparison().isEqualTo(stock);
+        assertThat(otherDataset.stock(123_456).getName()).isNotEqualTo(stock.getName());
+        assertThat(stock.getName()).hasSizeBetween(2, 50);
+        assertThat(stock.getQuantity()).isBetween(0, 15);
+    }
+
+    @Test
+    public void ranksArePermutedOverTheIds() {
+        StockDataset dataset = new StockDataset(42, 10_000, 1.0);
+
+        Set<Long> ids = new HashSet<>();
+        for (long rank = 1; rank <= dataset.size(); rank++) {
+            ids.add(dataset.idOfRank(rank));
+        }
+        assertThat(ids).hasSize(10_000).allMatch(id -> id >= 1 && id <= 10_000);
+    }
+
+    @Test
+    public void popularityIsSkewed() {
+        StockDataset dataset = new StockDataset(42, 1_000_000, 1.0);
+        SplittableRandom random = new SplittableRandom(7);
+        long mostPopular = dataset.idOfRank(1);
+
+        int hits = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (dataset.popularId(random) == mostPopular) {
+                hits++;
+            }
+        }
+        // With s = 1, the first of a million ranks has 1 / H(1,000,000), about 7%, of the requests
+        assertThat(hits).isBetween(6_000, 8_500);
+    }
+
+    @Test
+    public void tracesAreReproducible() throws Exception {
+        StockDataset dataset = new StockDataset(42, 1_000, 1.0);
+        StringWriter trace = new StringWriter();
+        StringWriter sameTrace = new StringWriter();
+
+        dataset.writeTrace(1_000, 100, trace);
+        dataset.writeTrace(1_000, 100, sameTrace);
+
+        assertThat(trace.toString()).isEqualTo(sameTrace.toString());
+        assertThat(trace.toString().split("\n")).hasSize(1_000)
+            .allMatch(line -> line.matches("\\d+;(GET|PATCH);/api/.+"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.kacetal.library.stock.repository;
+
+import com.kacetal.library.stock.KacetalLibraryStockApp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.kacetal.library.stock.repository.CustomAuditEventRepository.EVENT_DATA_COLUMN_MAX_LENGTH;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link CustomAuditEventRepository}.
+ */
+@SpringBootTest(classes = KacetalLibraryStockApp.class)
+public class CustomAuditEventRepositoryIT {
+
+    private static final String PRINCIPAL = "audit-test-user";
+
+    @Autowired
+    private CustomAuditEventRepository customAuditEventRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void deleteEvents() {
+        jdbcTemplate.update("delete from jhi_persistent_audit_evt_data where event_id in "
+            + "(select event_id from jhi_persistent_audit_event where principal = ?)", PRINCIPAL);
+        jdbcTemplate.update("delete from jhi_persistent_audit_event where principal = ?", PRINCIPAL);
+    }
+
+    @Test
+    public void addAuditEventsAsynchronously() throws InterruptedException {
+        Instant after = Instant.now().minus(1, ChronoUnit.HOURS);
+        Map<String, Object> data = new HashMap<>();
+        data.put("test-key", "test-value");
+        data.put("long-key", "1".repeat(EVENT_DATA_COLUMN_MAX_LENGTH + 10));
+        for (int i = 0; i < 300; i++) {
+            customAuditEventRepository.add(new AuditEvent(PRINCIPAL, "test-type", data));
+        }
+
+        List<AuditEvent> events = waitForEvents(after, 300);
+
+        assertThat(events).hasSize(300);
+        AuditEvent event = events.get(0);
+        assertThat(event.getPrincipal()).isEqualTo(PRINCIPAL);
+        assertThat(event.getType()).isEqualTo("test-type");
+        assertThat(event.getData()).containsEntry("test-key", "test-value");
+        assertThat(event.getData().get("long-key").toString()).hasSize(EVENT_DATA_COLUMN_MAX_LENGTH);
+    }
+
+    @Test
+    public void addAuditEventWithDuplicateDataNames() throws InterruptedException {
+        Instant after = Instant.now().minus(1, ChronoUnit.HOURS);
+        Map<String, Object> data = new HashMap<>();
+        data.put("details", new WebAuthenticationDetails(new MockHttpServletRequest()));
+        data.put("remoteAddress", "127.0.0.2");
+        // The same name once truncated
+        data.put("k".repeat(200) + "1", "first");
+        data.put("k".repeat(200) + "2", "second");
+        customAuditEventRepository.add(new AuditEvent(PRINCIPAL, "test-type", data));
+
+        List<AuditEvent> events = waitForEvents(after, 1);
+
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).getData()).containsKeys("remoteAddress", "sessionId").hasSize(3);
+    }
+
+    @Test
+    public void addAuditEventIgnoreAnonymousAuthorizationFailure() throws InterruptedException {
+        Instant after = Instant.now().minus(1, ChronoUnit.HOURS);
+        customAuditEventRepository.add(new AuditEvent("anonymousUser", "AUTHORIZATION_FAILURE", new HashMap<>()));
+        customAuditEventRepository.add(new AuditEvent(PRINCIPAL, "test-type", new HashMap<>()));
+
+        waitForEvents(after, 1);
+
+        assertThat(customAuditEventRepository.find("anonymousUser", after, "AUTHORIZATION_FAILURE")).isEmpty();
+    }
+
+    private List<AuditEvent> waitForEvents(Instant after, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        List<AuditEvent> events = customAuditEventRepository.find(PRINCIPAL, after, null);
+        while (events.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            events = customAuditEventRepository.find(PRINCIPAL, after, null);
+        }
+        return events;
+    }
+}
@@ -0,0 +1,99 @@
+package com.kacetal.library.stock.repository;
+
+import jdk.jshell.JShell;
+import jdk.jshell.Snippet;
+import jdk.jshell.SnippetEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link RangeChecksum}.
+ * <p>
+ * Elasticsearch is not available to the tests: the Painless hash is run as Java, whose syntax it shares but
+ * for the access to the fields of {@code doc}, which is rewritten to variables.
+ */
+public class RangeChecksumTest {
+
+    private static final Pattern DOC_FIELD = Pattern.compile("doc\\['([^']+)']");
+
+    private static final Map<String, String> VARIABLES = Map.of(
+        "id", "id",
+        "quantity", "quantity",
+        "bookStockStatus.keyword", "status",
+        "name.keyword", "name");
+
+    private JShell shell;
+
+    @BeforeEach
+    public void setup() {
+        shell = JShell.builder().executionEngine("local").build();
+        eval("class LongValues { final long value; LongValues(long value) { this.value = value; } int size() { return 1; } }");
+        eval("class StringValues { final String value; StringValues(String value) { this.value = value; }"
+            + " int size() { return value == null ? 0 : 1; } }");
+    }
+
+    @AfterEach
+    public void close() {
+        shell.close();
+    }
+
+    @Test
+    public void testPainlessHashEqualsJavaHash() {
+        assertThat(painlessHash(1, 3, "AVAILABLE", "Harry Potter")).isEqualTo(RangeChecksum.hash(1, 3, "AVAILABLE", "Harry Potter"));
+        assertThat(painlessHash(Long.MAX_VALUE, 0, "OUT_OF_STOCK", "Les Misérables"))
+            .isEqualTo(RangeChecksum.hash(Long.MAX_VALUE, 0, "OUT_OF_STOCK", "Les Misérables"));
+        assertThat(painlessHash(42, 7, "OUT_OF_BORROW", null)).isEqualTo(RangeChecksum.hash(42, 7, "OUT_OF_BORROW", null));
+    }
+
+    @Test
+    public void testHashDependsOnEachField() {
+        final long hash = RangeChecksum.hash(1, 3, "AVAILABLE", "Harry Potter");
+
+        assertThat(RangeChecksum.hash(2, 3, "AVAILABLE", "Harry Potter")).isNotEqualTo(hash);
+        assertThat(RangeChecksum.hash(1, 2, "AVAILABLE", "Harry Potter")).isNotEqualTo(hash);
+        assertThat(RangeChecksum.hash(1, 3, "OUT_OF_STOCK", "Harry Potter")).isNotEqualTo(hash);
+        assertThat(RangeChecksum.hash(1, 3, "AVAILABLE", "Harry Potter 2")).isNotEqualTo(hash);
+    }
+
+    private long painlessHash(long id, long quantity, String status, String name) {
+        eval("LongValues id = new LongValues(" + id + "L);");
+        eval("LongValues quantity = new LongValues(" + quantity + "L);");
+        eval("StringValues status = new StringValues(" + literal(status) + ");");
+        eval("StringValues name = new StringValues(" + literal(name) + ");");
+        final Matcher fields = DOC_FIELD.matcher(RangeChecksum.PAINLESS_HASH);
+        final StringBuilder script = new StringBuilder();
+        while (fields.find()) {
+            fields.appendReplacement(script, VARIABLES.get(fields.group(1)));
+        }
+        fields.appendTail(script);
+        // One snippet per statement, as JShell evaluates them
+        for (String statement : script.toString().split(";")) {
+            if (!statement.isBlank()) {
+                eval(statement + ";");
+            }
+        }
+        return Long.parseLong(eval("h"));
+    }
+
+    private String eval(String snippet) {
+        // The other events are about the snippets the new one replaces
+        final SnippetEvent event = shell.eval(snippet).stream()
+            .filter(candidate -> candidate.causeSnippet() == null)
+            .findFirst()
+            .orElseThrow();
+        assertThat(event.status()).as(snippet).isEqualTo(Snippet.Status.VALID);
+        assertThat(event.exception()).as(snippet).isNull();
+        return event.value();
+    }
+
+    private static String literal(String value) {
+        return value == null ? "null" : "\"" + value + "\"";
+    }
+}
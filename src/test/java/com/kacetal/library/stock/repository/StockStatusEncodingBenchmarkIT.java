@@ -0,0 +1,125 @@
+package com.kacetal.library.stock.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Benchmark of the storage of the status of the stocks: enum names in a {@code varchar} with a plain index,
+ * against {@code smallint} codes with the partial indexes on the available stocks.
+ * <p>
+ * Both tables are generated in PostgreSQL with the same rows, 80% of them available, then their sizes and the
+ * median time of the scan of the available stocks are logged. Only runs with a PostgreSQL database, given by the
+ * {@code benchmark.jdbc-url}, {@code benchmark.username} and {@code benchmark.password} system properties; the
+ * number of rows can be changed with {@code benchmark.rows}.
+ */
+@EnabledIfSystemProperty(named = "benchmark.jdbc-url", matches = ".+")
+public class StockStatusEncodingBenchmarkIT {
+
+    private static final int ROWS = Integer.getInteger("benchmark.rows", 5_000_000);
+
+    private static final int RUNS = 7;
+
+    private final Logger log = LoggerFactory.getLogger(StockStatusEncodingBenchmarkIT.class);
+
+    private Connection connection;
+
+    @BeforeEach
+    public void generateTables() throws SQLException {
+        connection = DriverManager.getConnection(System.getProperty("benchmark.jdbc-url"),
+            System.getProperty("benchmark.username"), System.getProperty("benchmark.password"));
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create unlogged table bench_stock_name as select id, 'Book ' || md5(id::text) as name,"
+                + " (id % 7)::integer as quantity,"
+                + " (case when id % 10 < 8 then 'AVAILABLE' when id % 10 = 8 then 'OUT_OF_STOCK' else 'OUT_OF_BORROW' end)::varchar(255)"
+                + " as book_stock_status from generate_series(1, " + ROWS + ") as id");
+            statement.execute("alter table bench_stock_name add primary key (id)");
+            statement.execute("create index bench_stock_name_status on bench_stock_name (book_stock_status)");
+            statement.execute("create index bench_stock_name_lower_name on bench_stock_name (lower(name) varchar_pattern_ops)");
+
+            statement.execute("create unlogged table bench_stock_code as select id, name, quantity,"
+                + " (case book_stock_status when 'AVAILABLE' then 1 when 'OUT_OF_STOCK' then 2 else 3 end)::smallint"
+                + " as book_stock_status from bench_stock_name");
+            statement.execute("alter table bench_stock_code add primary key (id)");
+            statement.execute("create index bench_stock_code_available on bench_stock_code (id) include (name, quantity)"
+                + " where book_stock_status = 1");
+            statement.execute("create index bench_stock_code_available_lower_name on bench_stock_code"
+                + " (lower(name) varchar_pattern_ops) where book_stock_status = 1");
+            statement.execute("vacuum analyze bench_stock_name");
+            statement.execute("vacuum analyze bench_stock_code");
+        }
+    }
+
+    @AfterEach
+    public void dropTables() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists bench_stock_name");
+            statement.execute("drop table if exists bench_stock_code");
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void compareStatusEncodings() throws SQLException {
+        long nameTable = size("pg_table_size('bench_stock_name')");
+        long codeTable = size("pg_table_size('bench_stock_code')");
+        long nameIndexes = size("pg_indexes_size('bench_stock_name')");
+        long codeIndexes = size("pg_indexes_size('bench_stock_code')");
+
+        long nameScan = medianMicros("select id, name, quantity from bench_stock_name"
+            + " where book_stock_status = 'AVAILABLE' order by id limit 1000 offset 100000");
+        long codeScan = medianMicros("select id, name, quantity from bench_stock_code"
+            + " where book_stock_status = 1 order by id limit 1000 offset 100000");
+        long nameLookup = medianMicros("select id from bench_stock_name"
+            + " where lower(name) like 'book 00%' and book_stock_status = 'AVAILABLE'");
+        long codeLookup = medianMicros("select id from bench_stock_code"
+            + " where lower(name) like 'book 00%' and book_stock_status = 1");
+
+        log.info("{} stocks: table {} MB -> {} MB, indexes {} MB -> {} MB", ROWS,
+            nameTable >> 20, codeTable >> 20, nameIndexes >> 20, codeIndexes >> 20);
+        log.info("Available stocks scan {} us -> {} us, available name lookup {} us -> {} us",
+            nameScan, codeScan, nameLookup, codeLookup);
+
+        assertThat(codeTable).isLessThan(nameTable);
+        assertThat(codeIndexes).isLessThan(nameIndexes);
+    }
+
+    private long size(String expression) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select " + expression)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private long medianMicros(String query) throws SQLException {
+        long[] times = new long[RUNS];
+        try (Statement statement = connection.createStatement()) {
+            for (int i = 0; i < RUNS; i++) {
+                long begin = System.nanoTime();
+                try (ResultSet resultSet = statement.executeQuery(query)) {
+                    while (resultSet.next()) {
+                        // Read every row, as a client would
+                    }
+                }
+                times[i] = System.nanoTime() - begin;
+            }
+        }
+        Arrays.sort(times);
+        return TimeUnit.NANOSECONDS.toMicros(times[RUNS / 2]);
+    }
+}
@@ -0,0 +1,158 @@
+package com.kacetal.library.stock.service;
+
+import com.kacetal.library.stock.KacetalLibraryStockApp;
+import com.kacetal.library.stock.domain.Stock;
+import com.kacetal.library.stock.domain.enumeration.BookStockStatus;
+import com.kacetal.library.stock.repository.StockRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.kacetal.library.stock.domain.enumeration.BookStockStatus.AVAILABLE;
+import static com.kacetal.library.stock.domain.enumeration.BookStockStatus.OUT_OF_STOCK;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Contention tests for the borrow/return paths of {@link StockService}.
+ * <p>
+ * Fires mixed concurrent borrow/return calls at a small set of stocks, then checks that no stock
+ * went negative, that each status matches its quantity, and that no update was lost. Throughput and
+ * p99 latency are logged for each thread count. The number of operations per thread can be changed
+ * with the {@code contention.operations} system property.
+ */
+@SpringBootTest(classes = KacetalLibraryStockApp.class)
+public class StockServiceContentionIT {
+
+    private static final int STOCK_COUNT = 4;
+
+    private static final int INITIAL_QUANTITY = 20;
+
+    private static final int OPERATIONS_PER_THREAD = Integer.getInteger("contention.operations", 100);
+
+    private final Logger log = LoggerFactory.getLogger(StockServiceContentionIT.class);
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    private List<Long> stockIds;
+
+    @BeforeEach
+    public void initStocks() {
+        stockIds = new ArrayList<>();
+        for (int i = 0; i < STOCK_COUNT; i++) {
+            Stock stock = new Stock();
+            stock.setName("contention-" + i);
+            stock.setQuantity(INITIAL_QUANTITY);
+            stock.setBookStockStatus(AVAILABLE);
+            stockIds.add(stockRepository.saveAndFlush(stock).getId());
+        }
+    }
+
+    @AfterEach
+    public void deleteStocks() {
+        stockIds.forEach(stockRepository::deleteById);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 4, 8, 16, 32, 64})
+    public void borrowAndReturnUnderContention(int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Worker>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                Worker worker = new Worker();
+                start.await();
+                worker.run();
+                return worker;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        List<Worker> workers = new ArrayList<>();
+        for (Future<Worker> future : futures) {
+            workers.add(future.get(5, TimeUnit.MINUTES));
+        }
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+
+        int[] netBorrowed = new int[STOCK_COUNT];
+        long[] latencies = new long[threads * OPERATIONS_PER_THREAD];
+        int count = 0;
+        int failures = 0;
+        for (Worker worker : workers) {
+            for (int i = 0; i < STOCK_COUNT; i++) {
+                netBorrowed[i] += worker.netBorrowed[i];
+            }
+            System.arraycopy(worker.latencies, 0, latencies, count, worker.latencies.length);
+            count += worker.latencies.length;
+            failures += worker.failures;
+        }
+        Arrays.sort(latencies);
+        long p99 = latencies[(int) Math.ceil(latencies.length * 0.99) - 1];
+        log.info("Contention with {} threads: {} ops in {} ms, {} ops/s, p99 {} us, {} failed",
+            threads, count, TimeUnit.NANOSECONDS.toMillis(elapsed),
+            count * TimeUnit.SECONDS.toNanos(1) / Math.max(elapsed, 1), TimeUnit.NANOSECONDS.toMicros(p99), failures);
+
+        for (int i = 0; i < STOCK_COUNT; i++) {
+            Stock stock = stockRepository.findById(stockIds.get(i)).orElseThrow();
+            assertThat(stock.getQuantity()).isGreaterThanOrEqualTo(0);
+            assertThat(stock.getBookStockStatus()).isEqualTo(stock.getQuantity() > 0 ? AVAILABLE : OUT_OF_STOCK);
+            assertThat(stock.getQuantity()).isEqualTo(INITIAL_QUANTITY - netBorrowed[i]);
+        }
+    }
+
+    /**
+     * Runs a random mix of borrow and return calls and records what was accepted.
+     */
+    private class Worker {
+
+        private final int[] netBorrowed = new int[STOCK_COUNT];
+
+        private final long[] latencies = new long[OPERATIONS_PER_THREAD];
+
+        private int failures;
+
+        void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                int index = random.nextInt(STOCK_COUNT);
+                boolean borrow = random.nextBoolean();
+                long begin = System.nanoTime();
+                try {
+                    Optional<BookStockStatus> status = borrow
+                        ? stockService.borrowBook(stockIds.get(index))
+                        : stockService.returnBook(stockIds.get(index));
+                    if (status.isPresent() && status.get() == AVAILABLE) {
+                        netBorrowed[index] += borrow ? 1 : -1;
+                    }
+                } catch (DataAccessException e) {
+                    // Lock timeouts roll the transaction back, so they do not change the stock.
+                    failures++;
+                }
+                latencies[i] = System.nanoTime() - begin;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.kacetal.library.stock.service.impl;
+
+import com.kacetal.library.stock.KacetalLibraryStockApp;
+import com.kacetal.library.stock.config.ApplicationProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the {@link AuditEventRetention}, on the not partitioned tables of H2.
+ */
+@SpringBootTest(classes = KacetalLibraryStockApp.class)
+public class AuditEventRetentionIT {
+
+    private static final String PRINCIPAL = "audit-retention-user";
+
+    @Autowired
+    private AuditEventRetention auditEventRetention;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    Path archiveDirectory;
+
+    private LocalDateTime expired;
+
+    @BeforeEach
+    public void initEvents() {
+        applicationProperties.getAudit().setArchive(true);
+        applicationProperties.getAudit().setArchiveDirectory(archiveDirectory.toString());
+        expired = LocalDate.now(ZoneOffset.UTC).minusDays(40).atTime(12, 0);
+        insertEvent(-11L, expired, "expired");
+        insertEvent(-12L, LocalDateTime.now(ZoneOffset.UTC), "kept");
+    }
+
+    @AfterEach
+    public void deleteEvents() {
+        applicationProperties.getAudit().setArchive(false);
+        jdbcTemplate.update("delete from jhi_persistent_audit_evt_data where event_id in (-11, -12)");
+        jdbcTemplate.update("delete from jhi_persistent_audit_event where event_id in (-11, -12)");
+    }
+
+    private void insertEvent(long id, LocalDateTime date, String message) {
+        jdbcTemplate.update("insert into jhi_persistent_audit_event (event_id, principal, event_date, event_type) values (?, ?, ?, ?)",
+            id, PRINCIPAL, Timestamp.valueOf(date), "AUTHENTICATION_SUCCESS");
+        jdbcTemplate.update("insert into jhi_persistent_audit_evt_data (event_id, event_date, name, value) values (?, ?, ?, ?)",
+            id, Timestamp.valueOf(date), "message", message);
+    }
+
+    @Test
+    public void archiveAndRemoveExpiredEvents() throws Exception {
+        List<LocalDate> removed = auditEventRetention.run();
+
+        assertThat(removed).contains(expired.toLocalDate());
+        assertThat(jdbcTemplate.queryForList("select event_id from jhi_persistent_audit_event where principal = ?", Long.class, PRINCIPAL))
+            .containsExactly(-12L);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from jhi_persistent_audit_evt_data where event_id = -11", Integer.class))
+            .isZero();
+
+        Path archive = archiveDirectory.resolve("audit-events-" + expired.toLocalDate() + ".ndjson.gz");
+        assertThat(archive).exists();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new GZIPInputStream(Files.newInputStream(archive)), StandardCharsets.UTF_8))) {
+            List<String> lines = reader.lines().filter(line -> line.contains(PRINCIPAL)).collect(Collectors.toList());
+            assertThat(lines).hasSize(1);
+            assertThat(lines.get(0)).contains("\"id\":-11").contains("\"message\":\"expired\"");
+        }
+    }
+}
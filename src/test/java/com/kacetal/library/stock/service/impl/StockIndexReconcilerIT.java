@@ -0,0 +1,115 @@
+package com.kacetal.library.stock.service.impl;
+
+import com.kacetal.library.stock.KacetalLibraryStockApp;
+import com.kacetal.library.stock.domain.Stock;
+import com.kacetal.library.stock.repository.RangeChecksum;
+import com.kacetal.library.stock.repository.StockRepository;
+import com.kacetal.library.stock.repository.search.StockSearchRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Range;
+
+import java.util.List;
+import java.util.Optional;
+
+import static com.kacetal.library.stock.domain.enumeration.BookStockStatus.AVAILABLE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Integration tests for the {@link StockIndexReconciler}, with a mocked Elasticsearch.
+ */
+@SpringBootTest(classes = KacetalLibraryStockApp.class)
+public class StockIndexReconcilerIT {
+
+    @Autowired
+    private StockIndexReconciler stockIndexReconciler;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    /**
+     * This repository is mocked in the com.kacetal.library.stock.repository.search test package.
+     *
+     * @see com.kacetal.library.stock.repository.search.StockSearchRepositoryMockConfiguration
+     */
+    @Autowired
+    private StockSearchRepository mockStockSearchRepository;
+
+    private Stock stock;
+
+    @BeforeEach
+    public void initStock() {
+        stock = new Stock();
+        stock.setName("reconciled");
+        stock.setQuantity(3);
+        stock.setBookStockStatus(AVAILABLE);
+        stock = stockRepository.saveAndFlush(stock);
+    }
+
+    @AfterEach
+    public void deleteStock() {
+        stockRepository.deleteById(stock.getId());
+        // The mock is shared by the tests of the context
+        reset(mockStockSearchRepository);
+    }
+
+    @Test
+    public void reindexesMissingAndDeletesOrphanedStocks() {
+        Stock orphan = new Stock();
+        orphan.setId(stock.getId() + 1);
+        orphan.setName("orphan");
+        orphan.setQuantity(1);
+        orphan.setBookStockStatus(AVAILABLE);
+        when(mockStockSearchRepository.findIdRange()).thenReturn(Optional.of(Range.closed(orphan.getId(), orphan.getId())));
+        when(mockStockSearchRepository.checksum(anyLong(), anyLong()))
+            .thenReturn(RangeChecksum.EMPTY.plus(RangeChecksum.hash(orphan)));
+        when(mockStockSearchRepository.findAllInIdRange(anyLong(), anyLong())).thenReturn(List.of(orphan));
+
+        StockIndexReconciler.Report report = stockIndexReconciler.reconcile().orElseThrow();
+
+        assertThat(report.mismatchedRanges).isGreaterThanOrEqualTo(1);
+        assertThat(report.reindexed).isGreaterThanOrEqualTo(1);
+        assertThat(report.deleted).isEqualTo(1);
+        assertThat(report.failedRanges).isZero();
+        verify(mockStockSearchRepository).saveAll(argThat((Iterable<Stock> stocks) -> {
+            for (Stock indexed : stocks) {
+                if (indexed.getId().equals(stock.getId())) {
+                    return true;
+                }
+            }
+            return false;
+        }));
+        verify(mockStockSearchRepository).deleteById(orphan.getId());
+    }
+
+    @Test
+    public void leavesMatchingRangesAlone() {
+        when(mockStockSearchRepository.findIdRange()).thenReturn(Optional.empty());
+        when(mockStockSearchRepository.checksum(anyLong(), anyLong())).thenAnswer(invocation ->
+            databaseChecksum(invocation.getArgument(0), invocation.getArgument(1)));
+
+        StockIndexReconciler.Report report = stockIndexReconciler.reconcile().orElseThrow();
+
+        assertThat(report.checkedRanges).isGreaterThanOrEqualTo(1);
+        assertThat(report.mismatchedRanges).isZero();
+        assertThat(report.reindexed).isZero();
+    }
+
+    private RangeChecksum databaseChecksum(long fromId, long toId) {
+        RangeChecksum checksum = RangeChecksum.EMPTY;
+        for (Stock indexed : stockRepository.findAll()) {
+            if (indexed.getId() >= fromId && indexed.getId() < toId) {
+                checksum = checksum.plus(RangeChecksum.hash(indexed));
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,136 @@
+package com.kacetal.library.stock.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the {@link StockNameIndex}.
+ */
+public class StockNameIndexTest {
+
+    private JdbcTemplate jdbcTemplate;
+
+    private StockNameIndex stockNameIndex;
+
+    @BeforeEach
+    public void setup() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        stockNameIndex = new StockNameIndex(jdbcTemplate, mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    public void testSuggestByPrefix() {
+        stockNameIndex.put(1L, "Harry Potter");
+        stockNameIndex.put(2L, "Harry Houdini");
+        stockNameIndex.put(3L, "Hamlet");
+
+        assertThat(stockNameIndex.suggest("ha", 10)).containsExactly("Hamlet", "Harry Houdini", "Harry Potter");
+        // Ends inside the label of an edge
+        assertThat(stockNameIndex.suggest("HARR", 10)).containsExactly("Harry Houdini", "Harry Potter");
+        assertThat(stockNameIndex.suggest(" harry  p", 10)).containsExactly("Harry Potter");
+        assertThat(stockNameIndex.suggest("harry potter and", 10)).isEmpty();
+        assertThat(stockNameIndex.suggest("hx", 10)).isEmpty();
+    }
+
+    @Test
+    public void testSuggestTheMostPopularFirst() {
+        for (long id = 1; id <= StockNameIndex.MAX_SUGGESTIONS + 2; id++) {
+            stockNameIndex.put(id, "Name " + (char) ('a' + id));
+        }
+        stockNameIndex.borrowed(12L);
+        stockNameIndex.borrowed(12L);
+        stockNameIndex.borrowed(5L);
+
+        assertThat(stockNameIndex.suggest("name", 3)).containsExactly("Name m", "Name f", "Name b");
+        assertThat(stockNameIndex.suggest("name", 20)).hasSize(StockNameIndex.MAX_SUGGESTIONS).doesNotContain("Name l");
+    }
+
+    @Test
+    public void testRenameAndRemove() {
+        stockNameIndex.put(1L, "Harry Potter");
+        stockNameIndex.put(2L, "Harry Houdini");
+        stockNameIndex.borrowed(2L);
+
+        stockNameIndex.put(2L, "Hamlet");
+        assertThat(stockNameIndex.suggest("harry", 10)).containsExactly("Harry Potter");
+        assertThat(stockNameIndex.suggest("ha", 10)).containsExactly("Hamlet", "Harry Potter");
+
+        stockNameIndex.remove(2L);
+        stockNameIndex.remove(1L);
+        assertThat(stockNameIndex.suggest("h", 10)).isEmpty();
+
+        stockNameIndex.put(1L, "Harry Potter");
+        assertThat(stockNameIndex.suggest("harry", 10)).containsExactly("Harry Potter");
+    }
+
+    @Test
+    public void testRemoveForgetsPopularity() {
+        stockNameIndex.put(1L, "Harry Potter");
+        stockNameIndex.borrowed(1L);
+        stockNameIndex.borrowed(1L);
+        stockNameIndex.remove(1L);
+
+        stockNameIndex.put(1L, "Harry Potter");
+        stockNameIndex.put(2L, "Harry Houdini");
+        stockNameIndex.borrowed(2L);
+        assertThat(stockNameIndex.suggest("harry", 10)).containsExactly("Harry Houdini", "Harry Potter");
+    }
+
+    @Test
+    public void testSameNormalizedNamesAreOneSuggestion() {
+        stockNameIndex.put(1L, "Les Misérables");
+        stockNameIndex.put(2L, "les miserables");
+        stockNameIndex.borrowed(1L);
+
+        assertThat(stockNameIndex.suggest("les", 10)).containsExactly("Les Misérables");
+
+        stockNameIndex.remove(1L);
+        assertThat(stockNameIndex.suggest("les", 10)).containsExactly("les miserables");
+    }
+
+    @Test
+    public void testRebuild() throws Exception {
+        stockNameIndex.put(1L, "Harry Potter");
+        stockNameIndex.put(2L, "Hamlet");
+        stockNameIndex.borrowed(1L);
+        // Renamed and deleted on another instance, created on another instance
+        givenDatabase(Map.of(1L, "Harry Houdini", 3L, "Macbeth"));
+
+        stockNameIndex.rebuild();
+
+        assertThat(stockNameIndex.suggest("h", 10)).containsExactly("Harry Houdini");
+        assertThat(stockNameIndex.suggest("m", 10)).containsExactly("Macbeth");
+    }
+
+    private void givenDatabase(Map<Long, String> names) throws Exception {
+        doAnswer(invocation -> {
+            final RowCallbackHandler handler = invocation.getArgument(1);
+            for (Map.Entry<Long, String> name : names.entrySet()) {
+                final ResultSet resultSet = mock(ResultSet.class);
+                when(resultSet.getLong(1)).thenReturn(name.getKey());
+                when(resultSet.getString(2)).thenReturn(name.getValue());
+                handler.processRow(resultSet);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    public void testNormalize() {
+        assertThat(StockNameIndex.normalize("  Les   Misérables ")).isEqualTo("les miserables");
+        assertThat(StockNameIndex.normalize(null)).isEmpty();
+    }
+}
@@ -0,0 +1,108 @@
+package com.kacetal.library.stock.service.impl;
+
+import com.kacetal.library.stock.config.ApplicationProperties;
+import com.kacetal.library.stock.domain.Stock;
+import com.kacetal.library.stock.domain.enumeration.BookStockStatus;
+import com.kacetal.library.stock.repository.StockRepository;
+import com.kacetal.library.stock.service.dto.StockSearchCriteria;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the {@link StockSearchCache}.
+ */
+public class StockSearchCacheTest {
+
+    private static final Pageable PAGEABLE = PageRequest.of(0, 20);
+
+    private StockSearchCache stockSearchCache;
+
+    private AtomicInteger searches;
+
+    private Supplier<Page<Stock>> searcher;
+
+    @BeforeEach
+    public void setup() {
+        final Stock stock = new Stock();
+        stock.setId(1L);
+        stock.setName("AAAAAAAAAA");
+        stock.setQuantity(1);
+        stock.setBookStockStatus(BookStockStatus.AVAILABLE);
+        final StockRepository stockRepository = mock(StockRepository.class);
+        when(stockRepository.findAllById(any())).thenReturn(List.of(stock));
+        stockSearchCache = new StockSearchCache(new ApplicationProperties(), stockRepository, new SimpleMeterRegistry());
+        searches = new AtomicInteger();
+        searcher = () -> {
+            searches.incrementAndGet();
+            return new PageImpl<>(List.of(stock), PAGEABLE, 1);
+        };
+    }
+
+    @Test
+    public void testQuantityChangeKeepsSearchesByName() {
+        stockSearchCache.get("criteria:name", false, PAGEABLE, searcher);
+        stockSearchCache.quantityChanged(1L);
+        stockSearchCache.get("criteria:name", false, PAGEABLE, searcher);
+
+        assertThat(searches).hasValue(1);
+    }
+
+    @Test
+    public void testQuantityChangeInvalidatesSearchesByQuantity() {
+        stockSearchCache.get("criteria:quantity", true, PAGEABLE, searcher);
+        stockSearchCache.get("criteria:name", false, PageRequest.of(0, 20, Sort.by("quantity")), searcher);
+        stockSearchCache.quantityChanged(1L);
+        stockSearchCache.get("criteria:quantity", true, PAGEABLE, searcher);
+        stockSearchCache.get("criteria:name", false, PageRequest.of(0, 20, Sort.by("quantity")), searcher);
+
+        assertThat(searches).hasValue(4);
+    }
+
+    @Test
+    public void testIndexChangeInvalidatesAllSearches() {
+        stockSearchCache.get("criteria:name", false, PAGEABLE, searcher);
+        stockSearchCache.indexChanged(List.of(1L));
+        stockSearchCache.get("criteria:name", false, PAGEABLE, searcher);
+
+        assertThat(searches).hasValue(2);
+    }
+
+    @Test
+    public void testEquivalentCriteriaHaveTheSameKey() {
+        final StockSearchCriteria criteria = new StockSearchCriteria();
+        criteria.setName("  Harry   Potter ");
+        criteria.setStatuses(Set.of(BookStockStatus.OUT_OF_STOCK, BookStockStatus.AVAILABLE));
+        final StockSearchCriteria other = new StockSearchCriteria();
+        other.setName("harry potter");
+        other.setStatuses(EnumSet.of(BookStockStatus.AVAILABLE, BookStockStatus.OUT_OF_STOCK));
+
+        assertThat(StockSearchCache.key(criteria)).isEqualTo(StockSearchCache.key(other));
+    }
+
+    @Test
+    public void testDifferentQuantitiesHaveDifferentKeys() {
+        final StockSearchCriteria criteria = new StockSearchCriteria();
+        criteria.setMinQuantity(1);
+        final StockSearchCriteria other = new StockSearchCriteria();
+        other.setMaxQuantity(1);
+
+        assertThat(StockSearchCache.key(criteria)).isNotEqualTo(StockSearchCache.key(other));
+    }
+}
@@ -0,0 +1,120 @@
+package com.kacetal.library.stock.web.rest;
+
+import com.kacetal.library.stock.KacetalLibraryStockApp;
+import com.kacetal.library.stock.service.AuditEventService;
+import com.kacetal.library.stock.web.rest.errors.ExceptionTranslator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.net.URI;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+import static com.kacetal.library.stock.web.rest.TestUtil.createFormattingConversionService;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Integration tests for the {@link AuditResource} REST controller.
+ */
+@SpringBootTest(classes = KacetalLibraryStockApp.class)
+@Transactional
+public class AuditResourceIT {
+
+    private static final String PRINCIPAL = "audit-resource-user";
+
+    private static final Instant NOW = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+
+    @Autowired
+    private AuditEventService auditEventService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
+    @Autowired
+    private ExceptionTranslator exceptionTranslator;
+
+    private MockMvc restAuditMockMvc;
+
+    @BeforeEach
+    public void setup() {
+        final AuditResource auditResource = new AuditResource(auditEventService);
+        this.restAuditMockMvc = MockMvcBuilders.standaloneSetup(auditResource)
+            .setControllerAdvice(exceptionTranslator)
+            .setConversionService(createFormattingConversionService())
+            .setMessageConverters(jacksonMessageConverter).build();
+    }
+
+    @BeforeEach
+    public void initEvents() {
+        insertEvent(-3L, NOW.minus(3, ChronoUnit.HOURS), "oldest");
+        insertEvent(-2L, NOW.minus(2, ChronoUnit.HOURS), "older");
+        insertEvent(-1L, NOW.minus(1, ChronoUnit.HOURS), "newest");
+        insertEvent(-4L, NOW.minus(10, ChronoUnit.DAYS), "out of range");
+    }
+
+    private void insertEvent(long id, Instant date, String message) {
+        // Dates are stored in UTC, see hibernate.jdbc.time_zone
+        Timestamp timestamp = Timestamp.valueOf(LocalDateTime.ofInstant(date, ZoneOffset.UTC));
+        jdbcTemplate.update("insert into jhi_persistent_audit_event (event_id, principal, event_date, event_type) values (?, ?, ?, ?)",
+            id, PRINCIPAL, timestamp, "AUTHENTICATION_SUCCESS");
+        jdbcTemplate.update("insert into jhi_persistent_audit_evt_data (event_id, event_date, name, value) values (?, ?, ?, ?)",
+            id, timestamp, "message", message);
+    }
+
+    @Test
+    public void getAuditEventsWithCursor() throws Exception {
+        // The first page has the most recent events and links to the next one
+        MvcResult first = restAuditMockMvc.perform(get("/management/audits?principal=" + PRINCIPAL
+            + "&from=" + NOW.minus(1, ChronoUnit.DAYS) + "&to=" + NOW + "&size=2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(2))
+            .andExpect(jsonPath("$.[0].principal").value(PRINCIPAL))
+            .andExpect(jsonPath("$.[0].data.message").value("newest"))
+            .andExpect(jsonPath("$.[1].data.message").value("older"))
+            .andExpect(header().string(HttpHeaders.LINK, containsString("rel=\"next\"")))
+            .andReturn();
+        String link = first.getResponse().getHeader(HttpHeaders.LINK);
+        String next = link.substring(link.indexOf("/management/"), link.indexOf('>'));
+
+        // The last page stops at the beginning of the range
+        restAuditMockMvc.perform(get(URI.create("http://localhost" + next)))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(1))
+            .andExpect(jsonPath("$.[0].data.message").value("oldest"))
+            .andExpect(header().doesNotExist(HttpHeaders.LINK));
+    }
+
+    @Test
+    public void getAuditEventsWithInvalidCursor() throws Exception {
+        restAuditMockMvc.perform(get("/management/audits?principal=" + PRINCIPAL + "&cursor=bm9wZQ"))
+            .andExpect(status().isBadRequest());
+        // 9223372036854775807:999999999:1, out of the range of the dates
+        restAuditMockMvc.perform(get("/management/audits?principal=" + PRINCIPAL + "&cursor=OTIyMzM3MjAzNjg1NDc3NTgwNzo5OTk5OTk5OTk6MQ"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getAuditEventsWithInvalidRange() throws Exception {
+        restAuditMockMvc.perform(get("/management/audits?principal=" + PRINCIPAL + "&from=" + NOW + "&to=" + NOW))
+            .andExpect(status().isBadRequest());
+    }
+}
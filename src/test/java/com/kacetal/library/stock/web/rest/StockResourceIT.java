@@ -4,8 +4,14 @@ import com.kacetal.library.stock.KacetalLibraryStockApp;
 import com.kacetal.library.stock.domain.Stock;
 import com.kacetal.library.stock.domain.enumeration.BookStockStatus;
 import com.kacetal.library.stock.repository.StockRepository;
+import com.kacetal.library.stock.repository.search.InvalidSearchException;
+import com.kacetal.library.stock.repository.search.SearchAfterPage;
 import com.kacetal.library.stock.repository.search.StockSearchRepository;
+import com.kacetal.library.stock.service.StockExportService;
+import com.kacetal.library.stock.service.StockImportService;
 import com.kacetal.library.stock.service.StockService;
+import com.kacetal.library.stock.service.dto.StockPatch;
+import com.kacetal.library.stock.service.dto.StockStats;
 import com.kacetal.library.stock.web.rest.errors.ExceptionTranslator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,13 +21,18 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.Validator;
 
 import javax.persistence.EntityManager;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -34,8 +45,12 @@ import static com.kacetal.library.stock.web.rest.TestUtil.createFormattingConver
 import static com.kacetal.library.stock.web.rest.errors.ErrorConstants.STOCK_NOT_FOUND;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.isEmptyOrNullString;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -45,13 +60,16 @@ import static org.springframework.http.HttpStatus.NOT_ACCEPTABLE;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 import static org.springframework.http.MediaType.APPLICATION_PROBLEM_JSON;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -78,6 +96,12 @@ public class StockResourceIT {
     @Autowired
     private StockService stockService;
 
+    @Autowired
+    private StockExportService stockExportService;
+
+    @Autowired
+    private StockImportService stockImportService;
+
     /**
      * This repository is mocked in the com.kacetal.library.stock.repository.search test package.
      *
@@ -136,7 +160,7 @@ public class StockResourceIT {
     @BeforeEach
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        final StockResource stockResource = new StockResource(stockService);
+        final StockResource stockResource = new StockResource(stockService, stockExportService, stockImportService);
         this.restStockMockMvc = MockMvcBuilders.standaloneSetup(stockResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setControllerAdvice(exceptionTranslator)
@@ -248,6 +272,56 @@ public class StockResourceIT {
             .andExpect(jsonPath("$.[*].bookStockStatus").value(hasItem(DEFAULT_BOOK_STOCK_STATUS.toString())));
     }
 
+    @Test
+    @Transactional
+    public void getAllStocksWithFields() throws Exception {
+        // Initialize the database
+        stockRepository.saveAndFlush(stock);
+
+        // Get only the id and status of the stocks
+        restStockMockMvc.perform(get("/api/stocks?sort=id,desc&fields=id,bookStockStatus"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(APPLICATION_JSON_VALUE))
+            .andExpect(jsonPath("$.[0].id").value(stock.getId().intValue()))
+            .andExpect(jsonPath("$.[0].bookStockStatus").value(DEFAULT_BOOK_STOCK_STATUS.toString()))
+            .andExpect(jsonPath("$.[0].name").doesNotExist())
+            .andExpect(jsonPath("$.[0].quantity").doesNotExist());
+    }
+
+    @Test
+    public void getAllStocksWithUnknownFields() throws Exception {
+        restStockMockMvc.perform(get("/api/stocks?fields=id,password"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getAllStocksWithFieldsAndUnknownSort() throws Exception {
+        restStockMockMvc.perform(get("/api/stocks?fields=id&sort=password,asc"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void getAllStocksWithFieldsNotModified() throws Exception {
+        // Initialize the database
+        stockRepository.saveAndFlush(stock);
+
+        MvcResult result = restStockMockMvc.perform(get("/api/stocks?sort=id,desc&fields=id,name"))
+            .andExpect(status().isOk())
+            .andReturn();
+        String etag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isNotNull();
+
+        restStockMockMvc.perform(get("/api/stocks?sort=id,desc&fields=id,name")
+            .header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified());
+
+        // Other fields have another ETag
+        restStockMockMvc.perform(get("/api/stocks?sort=id,desc&fields=id")
+            .header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isOk());
+    }
+
     @Test
     @Transactional
     public void getStock() throws Exception {
@@ -261,7 +335,51 @@ public class StockResourceIT {
             .andExpect(jsonPath("$.id").value(stock.getId().intValue()))
             .andExpect(jsonPath("$.name").value(DEFAULT_NAME))
             .andExpect(jsonPath("$.quantity").value(DEFAULT_QUANTITY))
-            .andExpect(jsonPath("$.bookStockStatus").value(DEFAULT_BOOK_STOCK_STATUS.toString()));
+            .andExpect(jsonPath("$.bookStockStatus").value(DEFAULT_BOOK_STOCK_STATUS.toString()))
+            .andExpect(header().string(HttpHeaders.ETAG, "\"" + stock.getVersion() + "\""));
+    }
+
+    @Test
+    @Transactional
+    public void getStockNotModified() throws Exception {
+        // Initialize the database
+        stockRepository.saveAndFlush(stock);
+        String etag = "\"" + stock.getVersion() + "\"";
+
+        // Revalidate the stock
+        restStockMockMvc.perform(get("/api/stocks/{id}", stock.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andExpect(header().string(HttpHeaders.ETAG, etag))
+            .andExpect(content().string(isEmptyOrNullString()));
+
+        restStockMockMvc.perform(get("/api/stocks/{id}", stock.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, "\"" + (stock.getVersion() + 1) + "\""))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.id").value(stock.getId().intValue()));
+    }
+
+    @Test
+    @Transactional
+    public void getAllStocksNotModified() throws Exception {
+        // Initialize the database
+        stockRepository.saveAndFlush(stock);
+
+        MvcResult result = restStockMockMvc.perform(get("/api/stocks?sort=id,desc"))
+            .andExpect(status().isOk())
+            .andReturn();
+        String etag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isNotNull();
+
+        restStockMockMvc.perform(get("/api/stocks?sort=id,desc")
+            .header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(isEmptyOrNullString()));
+
+        // Another page has another ETag
+        restStockMockMvc.perform(get("/api/stocks?sort=id,asc")
+            .header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isOk());
     }
 
     @Test
@@ -307,6 +425,136 @@ public class StockResourceIT {
         verify(mockStockSearchRepository, times(1)).save(testStock);
     }
 
+    @Test
+    @Transactional
+    public void updateStockWithStaleVersionWithoutIfMatch() throws Exception {
+        // Initialize the database
+        stockRepository.saveAndFlush(stock);
+        Long staleVersion = stock.getVersion();
+        // Changed by someone else in between
+        stock.setQuantity(UPDATED_QUANTITY);
+        stockRepository.saveAndFlush(stock);
+        assertThat(stock.getVersion()).isGreaterThan(staleVersion);
+        em.detach(stock);
+
+        Stock updatedStock = createUpdatedEntity(em);
+        updatedStock.setId(stock.getId());
+        updatedStock.setVersion(staleVersion);
+
+        // The last writer wins
+        restStockMockMvc.perform(put("/api/stocks")
+            .contentType(APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(updatedStock)))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.name").value(UPDATED_NAME));
+
+        assertThat(stockRepository.findById(stock.getId()).get().getName()).isEqualTo(UPDATED_NAME);
+    }
+
+    @Test
+    @Transactional
+    public void partialUpdateStock() throws Exception {
+        // Initialize the database
+        stockService.save(stock);
+        reset(mockStockSearchRepository);
+
+        // Change the quantity only
+        restStockMockMvc.perform(patch("/api/stocks/{id}", stock.getId())
+            .contentType("application/merge-patch+json")
+            .content("{\"quantity\":" + UPDATED_QUANTITY + "}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.name").value(DEFAULT_NAME))
+            .andExpect(jsonPath("$.quantity").value(UPDATED_QUANTITY))
+            .andExpect(jsonPath("$.bookStockStatus").value(DEFAULT_BOOK_STOCK_STATUS.toString()));
+
+        // Clear the name
+        restStockMockMvc.perform(patch("/api/stocks/{id}", stock.getId())
+            .contentType("application/merge-patch+json")
+            .content("{\"name\":null}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.name").doesNotExist());
+
+        Stock testStock = stockRepository.findById(stock.getId()).get();
+        assertThat(testStock.getName()).isNull();
+        assertThat(testStock.getQuantity()).isEqualTo(UPDATED_QUANTITY);
+        assertThat(testStock.getBookStockStatus()).isEqualTo(DEFAULT_BOOK_STOCK_STATUS);
+
+        // Validate the Stock in Elasticsearch
+        verify(mockStockSearchRepository, times(2)).save(testStock);
+    }
+
+    @Test
+    @Transactional
+    public void partialUpdateStockWithoutChange() throws Exception {
+        // Initialize the database
+        stockService.save(stock);
+        reset(mockStockSearchRepository);
+
+        restStockMockMvc.perform(patch("/api/stocks/{id}", stock.getId())
+            .contentType("application/merge-patch+json")
+            .content("{\"name\":\"" + DEFAULT_NAME + "\"}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.name").value(DEFAULT_NAME));
+
+        // The Stock is not reindexed
+        verify(mockStockSearchRepository, times(0)).save(stock);
+    }
+
+    @Test
+    @Transactional
+    public void partialUpdateStockWithInvalidPatch() throws Exception {
+        // Initialize the database
+        stockService.save(stock);
+
+        // The quantity is required
+        restStockMockMvc.perform(patch("/api/stocks/{id}", stock.getId())
+            .contentType("application/merge-patch+json")
+            .content("{\"quantity\":null}"))
+            .andExpect(status().isBadRequest());
+
+        // The id of the body must match the path
+        restStockMockMvc.perform(patch("/api/stocks/{id}", stock.getId())
+            .contentType("application/merge-patch+json")
+            .content("{\"id\":" + (stock.getId() + 1) + "}"))
+            .andExpect(status().isBadRequest());
+
+        Stock testStock = stockRepository.findById(stock.getId()).get();
+        assertThat(testStock.getQuantity()).isEqualTo(DEFAULT_QUANTITY);
+    }
+
+    @Test
+    @Transactional
+    public void partialUpdateNonExistingStock() throws Exception {
+        restStockMockMvc.perform(patch("/api/stocks/{id}", Long.MAX_VALUE)
+            .contentType("application/merge-patch+json")
+            .content("{\"quantity\":1}"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    public void updateStockWithStaleIfMatch() throws Exception {
+        // Initialize the database
+        stockService.save(stock);
+        Stock updatedStock = stockRepository.findById(stock.getId()).get();
+        em.detach(updatedStock);
+        updatedStock.setQuantity(UPDATED_QUANTITY);
+
+        restStockMockMvc.perform(put("/api/stocks")
+            .contentType(APPLICATION_JSON)
+            .header(HttpHeaders.IF_MATCH, "\"" + (stock.getVersion() + 1) + "\"")
+            .content(TestUtil.convertObjectToJsonBytes(updatedStock)))
+            .andExpect(status().isPreconditionFailed());
+
+        restStockMockMvc.perform(put("/api/stocks")
+            .contentType(APPLICATION_JSON)
+            .header(HttpHeaders.IF_MATCH, "\"" + stock.getVersion() + "\"")
+            .content(TestUtil.convertObjectToJsonBytes(updatedStock)))
+            .andExpect(status().isOk());
+
+        assertThat(stockRepository.findById(stock.getId()).get().getQuantity()).isEqualTo(UPDATED_QUANTITY);
+    }
+
     @Test
     @Transactional
     public void updateNonExistingStock() throws Exception {
@@ -366,6 +614,276 @@ public class StockResourceIT {
             .andExpect(jsonPath("$.[*].bookStockStatus").value(hasItem(DEFAULT_BOOK_STOCK_STATUS.toString())));
     }
 
+    @Test
+    @Transactional
+    public void searchStockFromCache() throws Exception {
+        // Initialize the database
+        stockService.save(stock);
+        reset(mockStockSearchRepository);
+        when(mockStockSearchRepository.search(queryStringQuery("name:" + DEFAULT_NAME), PageRequest.of(0, 20)))
+            .thenReturn(new PageImpl<>(Collections.singletonList(stock), PageRequest.of(0, 1), 1));
+
+        // The same search, whitespace apart, is served from the cache
+        restStockMockMvc.perform(get("/api/_search/stocks?query=name:" + DEFAULT_NAME))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(hasItem(stock.getId().intValue())));
+        restStockMockMvc.perform(get("/api/_search/stocks?query= name:" + DEFAULT_NAME + " "))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(hasItem(stock.getId().intValue())))
+            .andExpect(jsonPath("$.[*].quantity").value(hasItem(DEFAULT_QUANTITY)));
+        verify(mockStockSearchRepository, times(1)).search(queryStringQuery("name:" + DEFAULT_NAME), PageRequest.of(0, 20));
+
+        // A borrow changes the quantity only, which the search doesn't depend on: the cached ids are still valid
+        stockService.borrowBook(stock.getId());
+        restStockMockMvc.perform(get("/api/_search/stocks?query=name:" + DEFAULT_NAME))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].quantity").value(hasItem(DEFAULT_QUANTITY - 1)));
+        verify(mockStockSearchRepository, times(1)).search(queryStringQuery("name:" + DEFAULT_NAME), PageRequest.of(0, 20));
+
+        // Renaming a stock invalidates the cached results
+        StockPatch patch = new StockPatch();
+        patch.setName(UPDATED_NAME);
+        stockService.partialUpdate(stock.getId(), patch);
+        restStockMockMvc.perform(get("/api/_search/stocks?query=name:" + DEFAULT_NAME))
+            .andExpect(status().isOk());
+        verify(mockStockSearchRepository, times(2)).search(queryStringQuery("name:" + DEFAULT_NAME), PageRequest.of(0, 20));
+    }
+
+    @Test
+    @Transactional
+    public void searchStockWithCursor() throws Exception {
+        // Initialize the database
+        stockService.save(stock);
+        List<String> sortValues = List.of("1.5", stock.getId().toString());
+        when(mockStockSearchRepository.searchAfter(any(), eq(1), eq(List.of())))
+            .thenReturn(new SearchAfterPage(Collections.singletonList(stock), sortValues));
+        when(mockStockSearchRepository.searchAfter(any(), eq(1), eq(sortValues)))
+            .thenReturn(new SearchAfterPage(Collections.emptyList(), Collections.emptyList()));
+
+        // The first page links to the next one
+        MvcResult first = restStockMockMvc.perform(get("/api/_search/stocks/_cursor?query=id:" + stock.getId() + "&size=1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(hasItem(stock.getId().intValue())))
+            .andExpect(header().string(HttpHeaders.LINK, containsString("rel=\"next\"")))
+            .andReturn();
+        String link = first.getResponse().getHeader(HttpHeaders.LINK);
+        String next = link.substring(link.indexOf("/api/"), link.indexOf('>'));
+
+        // The last page has no next link
+        restStockMockMvc.perform(get(URI.create("http://localhost" + next)))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$").isEmpty())
+            .andExpect(header().doesNotExist(HttpHeaders.LINK));
+    }
+
+    @Test
+    @Transactional
+    public void searchStockWithCursorWhenElasticsearchFails() throws Exception {
+        // Initialize the database
+        stockService.save(stock);
+        when(mockStockSearchRepository.searchAfter(any(), eq(1), any()))
+            .thenThrow(new IllegalStateException("Elasticsearch is down"));
+
+        // The first page is found in the database by name prefix, without a next page
+        restStockMockMvc.perform(get("/api/_search/stocks/_cursor?query=name:" + DEFAULT_NAME.substring(0, 5) + "*&size=1"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(StockResource.SEARCH_DEGRADED_HEADER, "true"))
+            .andExpect(header().doesNotExist(HttpHeaders.LINK))
+            .andExpect(jsonPath("$.[*].id").value(hasItem(stock.getId().intValue())));
+
+        // The next pages can only be searched in Elasticsearch
+        String cursor = Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(("1.5:" + stock.getId()).getBytes(StandardCharsets.UTF_8));
+        restStockMockMvc.perform(get("/api/_search/stocks/_cursor?query=AAA&size=1&cursor=" + cursor))
+            .andExpect(status().isServiceUnavailable());
+        reset(mockStockSearchRepository);
+    }
+
+    @Test
+    public void searchStockWithInvalidCursor() throws Exception {
+        restStockMockMvc.perform(get("/api/_search/stocks/_cursor?query=AAA&cursor=bm9wZQ"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void suggestStockNames() throws Exception {
+        // Committed, as the names are indexed once their transaction is
+        Stock saved = stockService.save(stock);
+        try {
+            restStockMockMvc.perform(get("/api/stocks/_suggest").param("prefix", " " + DEFAULT_NAME.substring(0, 3).toLowerCase()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(jsonPath("$").value(hasItem(DEFAULT_NAME)));
+        } finally {
+            stockService.delete(saved.getId());
+        }
+
+        restStockMockMvc.perform(get("/api/stocks/_suggest?prefix=" + DEFAULT_NAME))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$").isEmpty());
+    }
+
+    @Test
+    public void getStockStats() throws Exception {
+        StockStats before = stockService.getStats();
+
+        // Committed, as the counts are changed once their transaction is
+        Stock saved = stockService.save(stock);
+        try {
+            restStockMockMvc.perform(get("/api/stocks/_stats"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(jsonPath("$.stocksByStatus.AVAILABLE").value(before.getStocksByStatus().get(AVAILABLE) + 1))
+                .andExpect(jsonPath("$.totalStocks").value(before.getTotalStocks() + 1))
+                .andExpect(jsonPath("$.totalQuantity").value(before.getTotalQuantity() + DEFAULT_QUANTITY));
+
+            stockService.borrowBook(saved.getId());
+            assertThat(stockService.getStats().getTotalQuantity()).isEqualTo(before.getTotalQuantity() + DEFAULT_QUANTITY - 1);
+        } finally {
+            stockService.delete(saved.getId());
+        }
+
+        assertThat(stockService.getStats().getTotalStocks()).isEqualTo(before.getTotalStocks());
+        assertThat(stockService.getStats().getTotalQuantity()).isEqualTo(before.getTotalQuantity());
+    }
+
+    @Test
+    public void suggestStockNamesWithInvalidSize() throws Exception {
+        restStockMockMvc.perform(get("/api/stocks/_suggest?prefix=a&size=0"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void searchStockWhenElasticsearchFails() throws Exception {
+        // Initialize the database
+        stockService.save(stock);
+        when(mockStockSearchRepository.search(queryStringQuery("name:" + DEFAULT_NAME.substring(0, 5) + "*"), PageRequest.of(0, 20)))
+            .thenThrow(new IllegalStateException("Elasticsearch is down"));
+
+        // The stocks are found in the database by name prefix
+        restStockMockMvc.perform(get("/api/_search/stocks?query=name:" + DEFAULT_NAME.substring(0, 5) + "*"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(StockResource.SEARCH_DEGRADED_HEADER, "true"))
+            .andExpect(jsonPath("$.[*].id").value(hasItem(stock.getId().intValue())));
+    }
+
+    @Test
+    public void searchStockWithInvalidQuery() throws Exception {
+        when(mockStockSearchRepository.search(queryStringQuery("name:(harry"), PageRequest.of(0, 20)))
+            .thenThrow(new InvalidSearchException("Search of stocks failed: query_shard_exception"));
+
+        // The query is rejected, not answered from the database
+        restStockMockMvc.perform(get("/api/_search/stocks?query=name:(harry"))
+            .andExpect(status().isBadRequest())
+            .andExpect(header().doesNotExist(StockResource.SEARCH_DEGRADED_HEADER));
+    }
+
+    @Test
+    @Transactional
+    public void searchStockWithCriteria() throws Exception {
+        // Initialize the database
+        stockService.save(stock);
+        when(mockStockSearchRepository.searchWithRequestCache(any(), any()))
+            .thenReturn(new PageImpl<>(Collections.singletonList(stock), PageRequest.of(0, 1), 1));
+        // Search the stock
+        restStockMockMvc.perform(get("/api/_search/stocks?name=AAA*&statuses=AVAILABLE,OUT_OF_STOCK&minQuantity=1&maxQuantity=5"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(APPLICATION_JSON_VALUE))
+            .andExpect(jsonPath("$.[*].id").value(hasItem(stock.getId().intValue())))
+            .andExpect(jsonPath("$.[*].name").value(hasItem(DEFAULT_NAME)));
+    }
+
+    @Test
+    public void searchStockWithExpensiveCriteria() throws Exception {
+        // A leading wildcard would scan all the terms of the index
+        restStockMockMvc.perform(get("/api/_search/stocks?name=harry *otter"))
+            .andExpect(status().isBadRequest());
+        // Too many terms
+        restStockMockMvc.perform(get("/api/_search/stocks?name=a b c d e f g h i"))
+            .andExpect(status().isBadRequest());
+        restStockMockMvc.perform(get("/api/_search/stocks?minQuantity=5&maxQuantity=1"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void exportStocks() throws Exception {
+        // Initialize the database, outside of a transaction as the export runs on another thread
+        stockRepository.saveAndFlush(stock);
+        try {
+            // Export the stocks
+            MvcResult ndjson = restStockMockMvc.perform(get("/api/stocks/_export?format=ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+            restStockMockMvc.perform(asyncDispatch(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string(containsString("{\"id\":" + stock.getId() + ",\"name\":\"" + DEFAULT_NAME + "\","
+                    + "\"quantity\":" + DEFAULT_QUANTITY + ",\"bookStockStatus\":\"" + DEFAULT_BOOK_STOCK_STATUS + "\"}\n")));
+
+            MvcResult csv = restStockMockMvc.perform(get("/api/stocks/_export?format=csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+            restStockMockMvc.perform(asyncDispatch(csv))
+                .andExpect(status().isOk())
+                .andExpect(content().string(startsWith("id;name;quantity;book_stock_status\n")))
+                .andExpect(content().string(containsString(
+                    "\n" + stock.getId() + ";" + DEFAULT_NAME + ";" + DEFAULT_QUANTITY + ";" + DEFAULT_BOOK_STOCK_STATUS + "\n")));
+        } finally {
+            stockRepository.deleteById(stock.getId());
+        }
+    }
+
+    @Test
+    public void exportStocksWithUnknownFormat() throws Exception {
+        restStockMockMvc.perform(get("/api/stocks/_export?format=xml"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void importStocks() throws Exception {
+        int databaseSizeBeforeImport = stockRepository.findAll().size();
+
+        // Import two valid rows and an invalid one
+        String csv = "id;name;quantity;book_stock_status\n"
+            + ";" + DEFAULT_NAME + ";" + DEFAULT_QUANTITY + ";" + DEFAULT_BOOK_STOCK_STATUS + "\n"
+            + ";\"" + UPDATED_NAME + ";\";" + UPDATED_QUANTITY + ";" + UPDATED_BOOK_STOCK_STATUS + "\n"
+            + ";" + DEFAULT_NAME + ";-1;" + DEFAULT_BOOK_STOCK_STATUS + "\n";
+        restStockMockMvc.perform(post("/api/stocks/_import")
+            .contentType("text/csv")
+            .content(csv))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.imported").value(2))
+            .andExpect(jsonPath("$.rejected").value(1))
+            .andExpect(jsonPath("$.errors[0].line").value(4))
+            .andExpect(jsonPath("$.errors[0].message").value(containsString("quantity")));
+
+        String ndjson = "{\"name\":\"" + DEFAULT_NAME + "\",\"quantity\":" + DEFAULT_QUANTITY
+            + ",\"bookStockStatus\":\"" + DEFAULT_BOOK_STOCK_STATUS + "\"}\n"
+            + "{\"id\":1,\"name\":\"" + DEFAULT_NAME + "\",\"quantity\":" + DEFAULT_QUANTITY
+            + ",\"bookStockStatus\":\"" + DEFAULT_BOOK_STOCK_STATUS + "\"}\n";
+        restStockMockMvc.perform(post("/api/stocks/_import")
+            .contentType("application/x-ndjson")
+            .content(ndjson))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.imported").value(1))
+            .andExpect(jsonPath("$.rejected").value(1))
+            .andExpect(jsonPath("$.errors[0].line").value(2));
+
+        List<Stock> stockList = stockRepository.findAll();
+        assertThat(stockList).hasSize(databaseSizeBeforeImport + 3);
+        assertThat(stockList).extracting(Stock::getName).contains(UPDATED_NAME + ";");
+    }
+
+    @Test
+    public void importStocksWithUnknownFormat() throws Exception {
+        restStockMockMvc.perform(post("/api/stocks/_import")
+            .contentType(APPLICATION_JSON_VALUE)
+            .content("[]"))
+            .andExpect(status().isBadRequest());
+    }
+
     @Test
     @Transactional
     public void borrowBook() throws Exception {
@@ -385,6 +903,26 @@ public class StockResourceIT {
         assertThat(actualStock.getBookStockStatus()).isEqualTo(AVAILABLE);
     }
 
+    @Test
+    @Transactional
+    public void borrowBookWithIfMatch() throws Exception {
+        // Initialize the database
+        stockService.save(stock);
+
+        // A stale ETag doesn't borrow the book
+        restStockMockMvc.perform(patch("/api/stocks/{id}/borrow", stock.getId())
+            .header(HttpHeaders.IF_MATCH, "\"" + (stock.getVersion() + 1) + "\"")
+            .accept(APPLICATION_JSON))
+            .andExpect(status().isPreconditionFailed());
+        assertThat(stockService.findOne(stock.getId()).get().getQuantity()).isEqualTo(DEFAULT_QUANTITY);
+
+        restStockMockMvc.perform(patch("/api/stocks/{id}/borrow", stock.getId())
+            .header(HttpHeaders.IF_MATCH, "\"" + stock.getVersion() + "\"")
+            .accept(APPLICATION_JSON))
+            .andExpect(status().isAccepted());
+        assertThat(stockService.findOne(stock.getId()).get().getQuantity()).isEqualTo(DEFAULT_QUANTITY - 1);
+    }
+
     @Test
     @Transactional
     public void borrowBookWhichNotExist() throws Exception {